@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+package play.db.ebean.orm;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import play.Environment;
+import play.db.DBApi;
+import play.db.Database;
+import play.db.Databases;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Shared fixtures of the benchmarks. Each benchmark server maps to an
+ * H2 in-memory database and to some of the generated model packages
+ * {@code bench.models.p0} to {@code bench.models.p3}.
+ *
+ * @since 21.03.10
+ */
+final class BenchmarkSupport {
+
+    /**
+     * Number of generated model packages.
+     *
+     * @since 21.03.10
+     */
+    static final int MODEL_PACKAGES = 4;
+
+    /**
+     * @since 21.03.10
+     */
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Build the configuration of the given servers.
+     *
+     * @param servers  The number of servers, the first one being named {@code default}
+     * @param packages The number of model packages per server
+     * @return The configuration
+     * @since 21.03.10
+     */
+    static Config configuration(final int servers, final int packages) {
+        final Map<String, Object> values = new HashMap<>();
+        final List<String> enhancement = IntStream.range(0, Math.min(packages, MODEL_PACKAGES))
+            .mapToObj(idx -> "bench.models.p" + idx + ".*")
+            .collect(Collectors.toList());
+        BenchmarkSupport.serverNames(servers).forEach(name ->
+            values.put("ebean.servers." + name + ".enhancement", enhancement)
+        );
+        return ConfigFactory.parseMap(values).withFallback(ConfigFactory.load());
+    }
+
+    /**
+     * Get the names of the given number of servers.
+     *
+     * @param servers The number of servers
+     * @return The server names
+     * @since 21.03.10
+     */
+    static List<String> serverNames(final int servers) {
+        return IntStream.range(0, servers)
+            .mapToObj(idx -> idx == 0 ? "default" : "server" + idx)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Build an in-memory database API for the given servers.
+     *
+     * @param serverNames The server names
+     * @return The database API
+     * @since 21.03.10
+     */
+    static DBApi dbApi(final List<String> serverNames) {
+        final Map<String, Database> databases = new LinkedHashMap<>();
+        serverNames.forEach(name -> databases.put(name, Databases.inMemory(name + "-" + UUID.randomUUID())));
+        return new DBApi() {
+
+            @Override
+            public List<Database> getDatabases() {
+                return new ArrayList<>(databases.values());
+            }
+
+            @Override
+            public Database getDatabase(final String name) {
+                return databases.get(name);
+            }
+
+            @Override
+            public void shutdown() {
+                databases.values().forEach(Database::shutdown);
+            }
+        };
+    }
+
+    /**
+     * Parse the Ebean configuration of the given servers.
+     *
+     * @param configuration The configuration
+     * @param dbApi         The database API
+     * @return The Ebean configuration
+     * @since 21.03.10
+     */
+    static EbeanConfig parse(final Config configuration, final DBApi dbApi) {
+        return new DefaultEbeanConfig.EbeanConfigParser(configuration, Environment.simple(), dbApi).parse();
+    }
+}
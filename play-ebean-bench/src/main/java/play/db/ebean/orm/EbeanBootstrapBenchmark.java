@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+package play.db.ebean.orm;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.*;
+import play.Environment;
+import play.api.inject.DefaultApplicationLifecycle;
+import play.db.DBApi;
+import scala.concurrent.Await;
+import scala.concurrent.duration.Duration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure the creation of the Ebean servers on application startup.
+ *
+ * @since 21.03.10
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class EbeanBootstrapBenchmark {
+
+    /**
+     * @since 21.03.10
+     */
+    @Param({"1", "4"})
+    public int servers;
+
+    /**
+     * @since 21.03.10
+     */
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    /**
+     * @since 21.03.10
+     */
+    private Config configuration;
+
+    /**
+     * @since 21.03.10
+     */
+    private DBApi dbApi;
+
+    /**
+     * @since 21.03.10
+     */
+    private EbeanConfig ebeanConfig;
+
+    /**
+     * @since 21.03.10
+     */
+    private DefaultApplicationLifecycle lifecycle;
+
+    /**
+     * @since 21.03.10
+     */
+    @Setup(Level.Iteration)
+    public void setup() {
+        this.configuration = ConfigFactory.parseString("ebean.bootstrap.parallel = " + this.parallel)
+            .withFallback(BenchmarkSupport.configuration(this.servers, BenchmarkSupport.MODEL_PACKAGES));
+        this.dbApi = BenchmarkSupport.dbApi(BenchmarkSupport.serverNames(this.servers));
+        this.ebeanConfig = BenchmarkSupport.parse(this.configuration, this.dbApi);
+        this.lifecycle = new DefaultApplicationLifecycle();
+    }
+
+    /**
+     * @throws Exception If the servers can't be stopped
+     * @since 21.03.10
+     */
+    @TearDown(Level.Iteration)
+    public void tearDown() throws Exception {
+        Await.result(this.lifecycle.stop(), Duration.Inf());
+        this.dbApi.shutdown();
+    }
+
+    /**
+     * @return The started servers
+     * @since 21.03.10
+     */
+    @Benchmark
+    public EbeanDynamicEvolutions start() {
+        return new EbeanDynamicEvolutions(this.ebeanConfig, Environment.simple(), this.configuration, this.lifecycle.asJava());
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+package play.db.ebean.orm;
+
+import com.typesafe.config.Config;
+import org.openjdk.jmh.annotations.*;
+import play.db.DBApi;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure the parsing of the Ebean configuration, model classes lookup
+ * included.
+ *
+ * @since 21.03.10
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class EbeanConfigParserBenchmark {
+
+    /**
+     * @since 21.03.10
+     */
+    @Param({"1", "4"})
+    public int servers;
+
+    /**
+     * @since 21.03.10
+     */
+    @Param({"1", "4"})
+    public int packages;
+
+    /**
+     * @since 21.03.10
+     */
+    private Config configuration;
+
+    /**
+     * @since 21.03.10
+     */
+    private DBApi dbApi;
+
+    /**
+     * @since 21.03.10
+     */
+    @Setup
+    public void setup() {
+        this.configuration = BenchmarkSupport.configuration(this.servers, this.packages);
+        this.dbApi = BenchmarkSupport.dbApi(BenchmarkSupport.serverNames(this.servers));
+    }
+
+    /**
+     * @since 21.03.10
+     */
+    @TearDown
+    public void tearDown() {
+        this.dbApi.shutdown();
+    }
+
+    /**
+     * @return The parsed configuration
+     * @since 21.03.10
+     */
+    @Benchmark
+    public EbeanConfig parse() {
+        return BenchmarkSupport.parse(this.configuration, this.dbApi);
+    }
+}
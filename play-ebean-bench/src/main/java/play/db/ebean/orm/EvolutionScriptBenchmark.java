@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+package play.db.ebean.orm;
+
+import io.ebean.Database;
+import io.ebean.DatabaseFactory;
+import io.ebean.config.DatabaseConfig;
+import org.openjdk.jmh.annotations.*;
+import play.db.DBApi;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure the generation of the evolution script of a server.
+ *
+ * @since 21.03.10
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class EvolutionScriptBenchmark {
+
+    /**
+     * Number of model packages, of 25 entities each.
+     *
+     * @since 21.03.10
+     */
+    @Param({"1", "4"})
+    public int packages;
+
+    /**
+     * @since 21.03.10
+     */
+    private DBApi dbApi;
+
+    /**
+     * @since 21.03.10
+     */
+    private Database server;
+
+    /**
+     * @since 21.03.10
+     */
+    @Setup
+    public void setup() {
+        this.dbApi = BenchmarkSupport.dbApi(BenchmarkSupport.serverNames(1));
+        final EbeanConfig ebeanConfig = BenchmarkSupport.parse(
+            BenchmarkSupport.configuration(1, this.packages),
+            this.dbApi
+        );
+        final DatabaseConfig serverConfig = ebeanConfig.serverConfigs().get(ebeanConfig.defaultServer());
+        serverConfig.setRegister(false);
+        serverConfig.setDefaultServer(false);
+        this.server = DatabaseFactory.create(serverConfig);
+    }
+
+    /**
+     * @since 21.03.10
+     */
+    @TearDown
+    public void tearDown() {
+        this.server.shutdown(false, false);
+        this.dbApi.shutdown();
+    }
+
+    /**
+     * @return The evolution script
+     * @since 21.03.10
+     */
+    @Benchmark
+    public String generateEvolutionScript() {
+        return EbeanDynamicEvolutions.generateEvolutionScript(this.server);
+    }
+
+    /**
+     * @return The model fingerprint
+     * @since 21.03.14
+     */
+    @Benchmark
+    public String modelFingerprint() {
+        return EbeanDynamicEvolutions.modelFingerprint(this.server);
+    }
+}
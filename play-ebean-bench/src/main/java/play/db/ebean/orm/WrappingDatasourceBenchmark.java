@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+package play.db.ebean.orm;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure the overhead of the datasource wrapper on a pooled connection
+ * retrieval.
+ *
+ * @since 21.03.10
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class WrappingDatasourceBenchmark {
+
+    /**
+     * @since 21.03.10
+     */
+    private JdbcConnectionPool pool;
+
+    /**
+     * @since 21.03.10
+     */
+    private DataSource wrapped;
+
+    /**
+     * @since 21.03.21
+     */
+    private DataSource wrappedWithMetrics;
+
+    /**
+     * @since 21.03.10
+     */
+    @Setup
+    public void setup() {
+        this.pool = JdbcConnectionPool.create("jdbc:h2:mem:wrapping;DB_CLOSE_DELAY=-1", "sa", "");
+        this.wrapped = new DefaultEbeanConfig.EbeanConfigParser.WrappingDatasource(this.pool, false);
+        this.wrappedWithMetrics = new DefaultEbeanConfig.EbeanConfigParser.WrappingDatasource(
+            this.pool,
+            false,
+            new ConnectionMetrics(Duration.ZERO)
+        );
+    }
+
+    /**
+     * @since 21.03.10
+     */
+    @TearDown
+    public void tearDown() {
+        this.pool.dispose();
+    }
+
+    /**
+     * @return The auto-commit mode of the connection
+     * @throws SQLException If the connection can't be retrieved
+     * @since 21.03.10
+     */
+    @Benchmark
+    public boolean baseline() throws SQLException {
+        try (final Connection connection = this.pool.getConnection()) {
+            return connection.getAutoCommit();
+        }
+    }
+
+    /**
+     * @return The auto-commit mode of the connection
+     * @throws SQLException If the connection can't be retrieved
+     * @since 21.03.10
+     */
+    @Benchmark
+    public boolean wrapped() throws SQLException {
+        try (final Connection connection = this.wrapped.getConnection()) {
+            return connection.getAutoCommit();
+        }
+    }
+
+    /**
+     * @return The auto-commit mode of the connection
+     * @throws SQLException If the connection can't be retrieved
+     * @since 21.03.21
+     */
+    @Benchmark
+    public boolean wrappedWithMetrics() throws SQLException {
+        try (final Connection connection = this.wrappedWithMetrics.getConnection()) {
+            return connection.getAutoCommit();
+        }
+    }
+}
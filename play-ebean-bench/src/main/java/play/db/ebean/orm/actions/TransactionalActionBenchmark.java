@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+package play.db.ebean.orm.actions;
+
+import akka.actor.ActorSystem;
+import bench.models.p0.Entity0;
+import com.typesafe.config.ConfigFactory;
+import io.ebean.DB;
+import io.ebean.Database;
+import io.ebean.DatabaseFactory;
+import io.ebean.config.DatabaseConfig;
+import org.h2.jdbcx.JdbcDataSource;
+import org.openjdk.jmh.annotations.*;
+import play.mvc.Action;
+import play.mvc.Http;
+import play.mvc.Result;
+import play.mvc.Results;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure the per-request overhead of {@code @Transactional} against an
+ * H2 in-memory database. The wrapped action runs a single query.
+ *
+ * @since 21.03.10
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TransactionalActionBenchmark {
+
+    /**
+     * @since 21.03.10
+     */
+    private ActorSystem actorSystem;
+
+    /**
+     * @since 21.03.10
+     */
+    private Database server;
+
+    /**
+     * @since 21.03.10
+     */
+    private Http.Request request;
+
+    /**
+     * @since 21.03.10
+     */
+    private Action<?> query;
+
+    /**
+     * @since 21.03.10
+     */
+    private TransactionalAction transactional;
+
+    /**
+     * @since 21.03.10
+     */
+    private TransactionalAction transactionalReadOnly;
+
+    /**
+     * @since 21.03.10
+     */
+    private TransactionalAction transactionalAsync;
+
+    /**
+     * @throws NoSuchMethodException If an annotated method is missing
+     * @since 21.03.10
+     */
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        final JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:transactional;DB_CLOSE_DELAY=-1");
+        final DatabaseConfig serverConfig = new DatabaseConfig();
+        serverConfig.setName("default");
+        serverConfig.setDefaultServer(true);
+        serverConfig.setDataSource(dataSource);
+        serverConfig.addClass(Entity0.class);
+        serverConfig.setDdlGenerate(true);
+        serverConfig.setDdlRun(true);
+        this.server = DatabaseFactory.create(serverConfig);
+
+        this.actorSystem = ActorSystem.create("bench", ConfigFactory.load());
+        final TransactionalExecutionContext executionContext = new TransactionalExecutionContext(this.actorSystem);
+        this.request = new Http.RequestBuilder().build();
+        this.query = new Action.Simple() {
+            @Override
+            public CompletionStage<Result> call(final Http.Request req) {
+                DB.find(Entity0.class).setMaxRows(1).findList();
+                return CompletableFuture.completedFuture(Results.ok());
+            }
+        };
+        this.transactional = this.action(executionContext, "readWrite");
+        this.transactionalReadOnly = this.action(executionContext, "readOnly");
+        this.transactionalAsync = this.action(executionContext, "async");
+    }
+
+    /**
+     * @since 21.03.10
+     */
+    @TearDown
+    public void tearDown() {
+        this.server.shutdown(false, false);
+        this.actorSystem.terminate();
+    }
+
+    /**
+     * @return The result
+     * @since 21.03.10
+     */
+    @Benchmark
+    public Result baseline() {
+        return this.query.call(this.request).toCompletableFuture().join();
+    }
+
+    /**
+     * @return The result
+     * @since 21.03.10
+     */
+    @Benchmark
+    public Result transactional() {
+        return this.transactional.call(this.request).toCompletableFuture().join();
+    }
+
+    /**
+     * @return The result
+     * @since 21.03.10
+     */
+    @Benchmark
+    public Result transactionalReadOnly() {
+        return this.transactionalReadOnly.call(this.request).toCompletableFuture().join();
+    }
+
+    /**
+     * @return The result
+     * @since 21.03.10
+     */
+    @Benchmark
+    public Result transactionalAsync() {
+        return this.transactionalAsync.call(this.request).toCompletableFuture().join();
+    }
+
+    /**
+     * Build an action configured from an annotated method of this class.
+     *
+     * @param executionContext The execution context
+     * @param methodName       The annotated method
+     * @return The action
+     * @throws NoSuchMethodException If the method does not exist
+     * @since 21.03.10
+     */
+    private TransactionalAction action(final TransactionalExecutionContext executionContext,
+                                       final String methodName) throws NoSuchMethodException {
+        final TransactionalAction action = new TransactionalAction(executionContext);
+        action.configuration = TransactionalActionBenchmark.class
+            .getDeclaredMethod(methodName)
+            .getAnnotation(Transactional.class);
+        action.delegate = this.query;
+        return action;
+    }
+
+    /**
+     * @since 21.03.10
+     */
+    @Transactional
+    private void readWrite() {
+    }
+
+    /**
+     * @since 21.03.10
+     */
+    @Transactional(readOnly = true)
+    private void readOnly() {
+    }
+
+    /**
+     * @since 21.03.10
+     */
+    @Transactional(async = true)
+    private void async() {
+    }
+}
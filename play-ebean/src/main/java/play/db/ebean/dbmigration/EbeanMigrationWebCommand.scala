@@ -29,6 +29,13 @@ class EbeanMigrationWebCommand(configuration: Configuration, environment: Enviro
     "ebean.dbmigration.platformName"
   ).orNull
 
+  /**
+    * @since 21.03.16
+    */
+  private val metaTable: String = configuration.getOptional[String](
+    "ebean.dbmigration.metaTable"
+  ).getOrElse(EbeanToolbox.DefaultMetaTable)
+
   /**
     * @since 17.01.29
     */
@@ -51,7 +58,8 @@ class EbeanMigrationWebCommand(configuration: Configuration, environment: Enviro
           this.environment,
           serverName,
           this.getForceMigrationFrom(request),
-          this.allowAlreadyProcessedFiles
+          this.allowAlreadyProcessedFiles,
+          this.metaTable
         )
         sbtLink.forceReload()
         Some(Redirect(this.getRedirectUrlFromRequest(request)))
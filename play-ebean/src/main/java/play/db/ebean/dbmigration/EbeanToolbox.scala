@@ -5,8 +5,14 @@ import io.ebean.migration.{MigrationConfig, MigrationRunner}
 import io.ebean.{DB, Ebean}
 import play.api.{Environment, Mode}
 
+import java.io.{File, IOException}
+import java.net.JarURLConnection
+import java.nio.charset.StandardCharsets
+import java.nio.file.{Files, LinkOption, StandardCopyOption}
+import java.security.MessageDigest
 import java.sql.SQLException
 import javax.persistence.PersistenceException
+import javax.sql.DataSource
 import scala.collection.JavaConverters._
 
 /**
@@ -27,16 +33,18 @@ object EbeanToolbox {
     * @param serverName                 The Ebean server name
     * @param forceKey                   The script key from which force migration
     * @param allowAlreadyProcessedFiles Is processing already processed files is allowed?
+    * @param metaTable                  The migration table name
     * @throws MigrationRunnerError If something goes wrong during migration
     */
   def migrateEbeanServer(platformName: String, migrationPath: String, environment: Environment,
-                         serverName: String, forceKey: String, allowAlreadyProcessedFiles: Boolean): Unit = {
+                         serverName: String, forceKey: String, allowAlreadyProcessedFiles: Boolean,
+                         metaTable: String = DefaultMetaTable): Unit = {
     val ebeanServer = DB.byName(serverName)
 
     if (forceKey != null && forceKey.trim.nonEmpty && allowAlreadyProcessedFiles) { //TODO: Remove?
       try {
         ebeanServer
-          .sqlUpdate(s"DELETE FROM db_migration WHERE id >= (SELECT MAX(id) FROM db_migration WHERE mversion LIKE '${forceKey.trim.replace("%", "")}')")
+          .sqlUpdate(s"DELETE FROM $metaTable WHERE id >= (SELECT MAX(id) FROM $metaTable WHERE mversion LIKE '${forceKey.trim.replace("%", "")}')")
           .execute()
       } catch {
         case ex@(_: PersistenceException | _: SQLException) =>
@@ -56,6 +64,8 @@ object EbeanToolbox {
     if (folder.isDefined) {
       val migrationConfig: MigrationConfig = new MigrationConfig
       migrationConfig.setMigrationPath(folder.get)
+      migrationConfig.setMetaTable(metaTable)
+      migrationConfig.setClassLoader(environment.classLoader)
       if (platformName != null && platformName.nonEmpty) {
         migrationConfig.setPlatformName(platformName)
       }
@@ -83,10 +93,11 @@ object EbeanToolbox {
     * @param migrationPath   Migration files root path
     * @param playEnvironment The current Play environment
     * @param serverName      The Ebean server name
+    * @param metaTable       The migration table name
     * @throws MigrationRunnerError If something goes wrong during migration
     */
   def checkEbeanServerState(platformName: String, migrationPath: String, playEnvironment: Environment,
-                            serverName: String): Iterable[LocalMigrationResource] = {
+                            serverName: String, metaTable: String = DefaultMetaTable): Iterable[LocalMigrationResource] = {
     val ebeanServer = Ebean.getServer(serverName)
     val folder = guessMigrationFolderToUse(
       migrationPath,
@@ -96,29 +107,212 @@ object EbeanToolbox {
       ebeanServer.getPluginApi.getPluginApi.getDatabasePlatform.getPlatform.name.toLowerCase
     )
     if (folder.isDefined) {
-      val migrationConfig: MigrationConfig = new MigrationConfig
-      migrationConfig.setMigrationPath(folder.get)
-      if (platformName != null && platformName.nonEmpty) {
-        migrationConfig.setPlatformName(platformName)
-      }
-      val migrationRunner = new MigrationRunner(migrationConfig)
-      try {
-        migrationRunner.checkState(
-          ebeanServer
-            .getPluginApi
-            .getDataSource
-        ).asScala
-      } catch {
-        case e: SQLException =>
-          throw MigrationRunnerError(serverName, e)
-        case e: RuntimeException =>
-          throw MigrationRunnerError(serverName, e.getCause.asInstanceOf[SQLException])
+      val dataSource = ebeanServer.getPluginApi.getDataSource
+      val fingerprint = resourcesFingerprint(playEnvironment.classLoader, folder.get)
+      val tableState = migrationTableState(dataSource, metaTable)
+      val stateFile = for {
+        (url, _) <- tableState
+      } yield upToDateFile(playEnvironment, serverName, folder.get, url, metaTable)
+      val state = for {
+        resources <- fingerprint
+        (_, table) <- tableState
+      } yield s"$resources\n$table"
+      if (state.isDefined && stateFile.exists(file => readState(file).contains(state.get))) {
+        Iterable[LocalMigrationResource]()
+      } else {
+        val migrationConfig: MigrationConfig = new MigrationConfig
+        migrationConfig.setMigrationPath(folder.get)
+        migrationConfig.setMetaTable(metaTable)
+        migrationConfig.setClassLoader(playEnvironment.classLoader)
+        if (platformName != null && platformName.nonEmpty) {
+          migrationConfig.setPlatformName(platformName)
+        }
+        val migrationRunner = new MigrationRunner(migrationConfig)
+        val changedMigrationResource = try {
+          migrationRunner.checkState(dataSource).asScala
+        } catch {
+          case e: SQLException =>
+            throw MigrationRunnerError(serverName, e)
+          case e: RuntimeException =>
+            throw MigrationRunnerError(serverName, e.getCause.asInstanceOf[SQLException])
+        }
+        if (changedMigrationResource.isEmpty && state.isDefined) {
+          stateFile.foreach(file => writeState(file, state.get))
+        }
+        changedMigrationResource
       }
     } else {
       Iterable[LocalMigrationResource]()
     }
   }
 
+  /**
+    * Default name of the migration table.
+    *
+    * @since 21.03.16
+    */
+  val DefaultMetaTable: String = "db_migration"
+
+  /**
+    * Format of a recorded state: the fingerprint of the migration
+    * resources, then the state of the migration table.
+    *
+    * @since 21.03.16
+    */
+  private[this] val StatePattern = "[0-9a-f]{64}\n-?[0-9]+:-?[0-9]+:-?[0-9]+".r
+
+  /**
+    * Get the file recording the last state found up to date for a
+    * migration folder and a database. The state is kept across restarts
+    * in the `target` directory of the application, the migration
+    * resources are only read and checksummed again when they or the
+    * migration table change.
+    *
+    * @param environment The current Play environment
+    * @param serverName  The Ebean server name
+    * @param folder      The migration folder
+    * @param url         The database URL
+    * @param metaTable   The migration table name
+    * @return The state file
+    * @since 21.03.16
+    */
+  private[this] def upToDateFile(environment: Environment, serverName: String, folder: String, url: String,
+                                 metaTable: String): File = {
+    val key = sha256(Seq(serverName, folder, url, metaTable).mkString("\u0000"))
+    new File(new File(environment.rootPath, "target/play-ebean-dbmigration"), key)
+  }
+
+  /**
+    * Read a recorded state. Anything else than a regular file holding a
+    * well-formed state is ignored.
+    *
+    * @param file The state file
+    * @return The recorded state, if any
+    * @since 21.03.16
+    */
+  private[this] def readState(file: File): Option[String] = {
+    try {
+      if (Files.isRegularFile(file.toPath, LinkOption.NOFOLLOW_LINKS) && file.length < 256) {
+        Some(new String(Files.readAllBytes(file.toPath), StandardCharsets.UTF_8))
+          .filter(state => StatePattern.pattern.matcher(state).matches)
+      } else {
+        None
+      }
+    } catch {
+      case _: IOException => None
+    }
+  }
+
+  /**
+    * Record a state. A state that can't be recorded only disables the
+    * shortcut on the next start.
+    *
+    * @param file  The state file
+    * @param state The state to record
+    * @since 21.03.16
+    */
+  private[this] def writeState(file: File, state: String): Unit = {
+    try {
+      Files.createDirectories(file.getParentFile.toPath)
+      val tempFile = Files.createTempFile(file.getParentFile.toPath, file.getName, ".tmp")
+      Files.write(tempFile, state.getBytes(StandardCharsets.UTF_8))
+      Files.move(tempFile, file.toPath, StandardCopyOption.REPLACE_EXISTING)
+    } catch {
+      case _: IOException =>
+    }
+  }
+
+  /**
+    * Compute a fingerprint of the migration resources found on the
+    * classpath, from their path, size and last modification time, or
+    * their CRC when they are packaged in a jar.
+    *
+    * @param classLoader The application class loader
+    * @param folder      The migration folder
+    * @return The fingerprint, or nothing if a resource location is not supported
+    * @since 21.03.16
+    */
+  private[this] def resourcesFingerprint(classLoader: ClassLoader, folder: String): Option[String] = {
+    def list(file: File, path: String): Seq[String] = {
+      if (file.isDirectory) {
+        Option(file.listFiles).map(_.toSeq).getOrElse(Seq.empty).flatMap(child => list(child, s"$path/${child.getName}"))
+      } else {
+        Seq(s"$path:${file.length}:${file.lastModified}")
+      }
+    }
+
+    val entries = classLoader.getResources(folder).asScala.toSeq.map { url =>
+      url.getProtocol match {
+        case "file" =>
+          Some(url.toString +: list(new File(url.toURI), ""))
+        case "jar" =>
+          val connection = url.openConnection().asInstanceOf[JarURLConnection]
+          connection.setUseCaches(false)
+          val jarFile = connection.getJarFile
+          try {
+            val prefix = connection.getEntryName.stripSuffix("/") + "/"
+            Some(url.toString +: jarFile.entries.asScala
+              .filter(entry => !entry.isDirectory && entry.getName.startsWith(prefix))
+              .map(entry => s"${entry.getName}:${entry.getSize}:${entry.getCrc}")
+              .toSeq)
+          } finally {
+            jarFile.close()
+          }
+        case _ =>
+          None
+      }
+    }
+    if (entries.isEmpty || entries.exists(_.isEmpty)) {
+      None
+    } else {
+      Some(sha256(entries.flatten.flatten.sorted.mkString("\n")))
+    }
+  }
+
+  /**
+    * @param value The value to hash
+    * @return The SHA-256 hash of the value, hex encoded
+    * @since 21.03.16
+    */
+  private[this] def sha256(value: String): String = {
+    MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8)).map("%02x".format(_)).mkString
+  }
+
+  /**
+    * Read the state of the migration table: number of rows, last id and
+    * sum of the checksums.
+    *
+    * @param dataSource The datasource of the server
+    * @param metaTable  The migration table name
+    * @return The database URL and the state, or nothing if the migration table can't be read
+    * @since 21.03.16
+    */
+  private[this] def migrationTableState(dataSource: DataSource, metaTable: String): Option[(String, String)] = {
+    try {
+      val connection = dataSource.getConnection
+      try {
+        val statement = connection.createStatement()
+        try {
+          val resultSet = statement.executeQuery(s"SELECT COUNT(*), MAX(id), SUM(mchecksum) FROM $metaTable")
+          if (resultSet.next()) {
+            Some(connection.getMetaData.getURL -> s"${resultSet.getLong(1)}:${resultSet.getLong(2)}:${resultSet.getLong(3)}")
+          } else {
+            None
+          }
+        } finally {
+          statement.close()
+        }
+      } finally {
+        if (!connection.getAutoCommit) {
+          connection.rollback()
+        }
+        connection.close()
+      }
+    } catch {
+      case _: SQLException => None
+    }
+  }
+
   /**
     * Resolve mode to use. By instance, Play can run in Prod mode
     * but user want run Test migration SQL scripts.
@@ -0,0 +1,214 @@
+package play.db.ebean.dbmigration
+
+import java.sql.{Connection, SQLException}
+import javax.sql.DataSource
+
+/**
+  * Database level lock ensuring that a single node of a cluster applies
+  * the migrations of a server. The lock is a row of the table
+  * `play_ebean_migration_lock`, created on first use, so it works the
+  * same way on every database. The holder renews the lease while it
+  * migrates; a lock not renewed within its lease, according to the
+  * database clock, is considered abandoned by a crashed node and can be
+  * taken over.
+  *
+  * @since 21.03.17
+  */
+object MigrationLock {
+
+  /**
+    * The name of the table holding the locks.
+    *
+    * @since 21.03.17
+    */
+  val LockTable: String = "play_ebean_migration_lock"
+
+  /**
+    * Try to acquire the migration lock of a server.
+    *
+    * @param dataSource The datasource of the server
+    * @param serverName The Ebean server name
+    * @param owner      The identifier of the current node
+    * @param leaseMs    The duration, in milliseconds, after which a lock is considered abandoned
+    * @return `true` if the lock has been acquired
+    * @throws SQLException If the lock table can't be created or read, or if the lock can't be inserted
+    * @since 21.03.17
+    */
+  def tryAcquire(dataSource: DataSource, serverName: String, owner: String, leaseMs: Long): Boolean = {
+    this.withConnection(dataSource) { connection =>
+      this.createTableIfNeeded(connection)
+      // The age of the lock is computed with the database clock, the clocks of the nodes may differ
+      val select = connection.prepareStatement(s"SELECT owner_id, locked_at, CURRENT_TIMESTAMP FROM $LockTable WHERE server_name = ?")
+      val staleOwner = try {
+        select.setString(1, serverName)
+        val resultSet = select.executeQuery()
+        if (resultSet.next() && resultSet.getTimestamp(3).getTime - resultSet.getTimestamp(2).getTime >= leaseMs) {
+          Some(resultSet.getString(1))
+        } else {
+          None
+        }
+      } finally {
+        select.close()
+      }
+      staleOwner.foreach { staleOwnerId =>
+        val deleteStale = connection.prepareStatement(s"DELETE FROM $LockTable WHERE server_name = ? AND owner_id = ?")
+        try {
+          deleteStale.setString(1, serverName)
+          deleteStale.setString(2, staleOwnerId)
+          deleteStale.executeUpdate()
+        } finally {
+          deleteStale.close()
+        }
+        connection.commit()
+      }
+      val insert = connection.prepareStatement(
+        s"INSERT INTO $LockTable (server_name, owner_id, locked_at) VALUES (?, ?, CURRENT_TIMESTAMP)"
+      )
+      try {
+        insert.setString(1, serverName)
+        insert.setString(2, owner)
+        insert.executeUpdate()
+        connection.commit()
+        true
+      } catch {
+        case e: SQLException if Option(e.getSQLState).exists(_.startsWith("23")) =>
+          // Integrity constraint violation: the lock is held by another node
+          connection.rollback()
+          false
+      } finally {
+        insert.close()
+      }
+    }
+  }
+
+  /**
+    * Renew the lease of the migration lock of a server, if it is held by
+    * the given node. Called periodically while the migrations run so that
+    * a long migration is not taken over by another node.
+    *
+    * @param dataSource The datasource of the server
+    * @param serverName The Ebean server name
+    * @param owner      The identifier of the current node
+    * @return `false` if the lock is not held anymore by the given node
+    * @throws SQLException If the lock can't be updated
+    * @since 21.03.17
+    */
+  def renew(dataSource: DataSource, serverName: String, owner: String): Boolean = {
+    this.withConnection(dataSource) { connection =>
+      val update = connection.prepareStatement(
+        s"UPDATE $LockTable SET locked_at = CURRENT_TIMESTAMP WHERE server_name = ? AND owner_id = ?"
+      )
+      try {
+        update.setString(1, serverName)
+        update.setString(2, owner)
+        val renewed = update.executeUpdate() > 0
+        connection.commit()
+        renewed
+      } finally {
+        update.close()
+      }
+    }
+  }
+
+  /**
+    * Release the migration lock of a server, if it is held by the given
+    * node.
+    *
+    * @param dataSource The datasource of the server
+    * @param serverName The Ebean server name
+    * @param owner      The identifier of the current node
+    * @since 21.03.17
+    */
+  def release(dataSource: DataSource, serverName: String, owner: String): Unit = {
+    this.withConnection(dataSource) { connection =>
+      val delete = connection.prepareStatement(s"DELETE FROM $LockTable WHERE server_name = ? AND owner_id = ?")
+      try {
+        delete.setString(1, serverName)
+        delete.setString(2, owner)
+        delete.executeUpdate()
+      } finally {
+        delete.close()
+      }
+      connection.commit()
+    }
+  }
+
+  /**
+    * Check whether a migration version has been applied on a server.
+    *
+    * @param dataSource The datasource of the server
+    * @param version    The migration version (ie: "1.2")
+    * @param metaTable  The migration table name
+    * @return `true` if the version is present in the migration table
+    * @since 21.03.17
+    */
+  def isApplied(dataSource: DataSource, version: String, metaTable: String): Boolean = {
+    try {
+      this.withConnection(dataSource) { connection =>
+        val select = connection.prepareStatement(s"SELECT COUNT(*) FROM $metaTable WHERE mversion = ?")
+        try {
+          select.setString(1, version)
+          val resultSet = select.executeQuery()
+          resultSet.next() && resultSet.getLong(1) > 0
+        } finally {
+          select.close()
+        }
+      }
+    } catch {
+      case _: SQLException => false
+    }
+  }
+
+  /**
+    * Create the lock table, unless it already exists.
+    *
+    * @param connection The connection to use
+    * @since 21.03.17
+    */
+  private[this] def createTableIfNeeded(connection: Connection): Unit = {
+    val statement = connection.createStatement()
+    try {
+      statement.executeQuery(s"SELECT COUNT(*) FROM $LockTable").close()
+    } catch {
+      case _: SQLException =>
+        connection.rollback()
+        try {
+          statement.executeUpdate(
+            s"""CREATE TABLE $LockTable (
+               |  server_name VARCHAR(255) NOT NULL,
+               |  owner_id VARCHAR(255) NOT NULL,
+               |  locked_at TIMESTAMP NOT NULL,
+               |  PRIMARY KEY (server_name)
+               |)""".stripMargin
+          )
+          connection.commit()
+        } catch {
+          case _: SQLException =>
+            // Created concurrently by another node
+            connection.rollback()
+        }
+    } finally {
+      statement.close()
+    }
+  }
+
+  /**
+    * Run a block with a connection in manual commit mode. Anything not
+    * committed by the block is rolled back.
+    *
+    * @param dataSource The datasource to use
+    * @param block      The block to run
+    * @return The result of the block
+    * @since 21.03.17
+    */
+  private[this] def withConnection[T](dataSource: DataSource)(block: Connection => T): T = {
+    val connection = dataSource.getConnection
+    try {
+      connection.setAutoCommit(false)
+      block(connection)
+    } finally {
+      connection.rollback()
+      connection.close()
+    }
+  }
+}
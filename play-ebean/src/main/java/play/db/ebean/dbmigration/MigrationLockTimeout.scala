@@ -0,0 +1,29 @@
+package play.db.ebean.dbmigration
+
+import play.api.PlayException
+
+import scala.concurrent.duration.FiniteDuration
+
+/**
+  * MigrationLockTimeout.
+  *
+  * @param db      The database name
+  * @param timeout The time waited for the migrations
+  * @since 21.03.17
+  */
+case class MigrationLockTimeout(db: String, timeout: FiniteDuration) extends PlayException.RichDescription(
+  "Timeout while waiting for the migration of database '" + db + "'", "Ebean DB Migration") {
+
+  def subTitle: String = "Another node holds the migration lock, please check its logs or increase the timeout"
+
+  def content: String =
+    s"""ebean {
+       |    dbmigration {
+       |        lock {
+       |            timeout = "${timeout.toString}"
+       |        }
+       |    }
+       |}""".stripMargin
+
+  def htmlDescription: String = s"<span>Migrations were not applied within $timeout</span>"
+}
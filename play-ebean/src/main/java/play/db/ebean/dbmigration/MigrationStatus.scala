@@ -0,0 +1,150 @@
+package play.db.ebean.dbmigration
+
+import java.time.{Duration, Instant}
+import java.util.Collections
+import java.util.concurrent.{CompletableFuture, CompletionStage}
+import javax.inject.Singleton
+
+/**
+  * Progress of the Ebean DB migrations. It can be injected (ie: in a
+  * health check controller) to hold traffic until the migrations are
+  * applied when they run in background.
+  *
+  * @since 21.03.18
+  */
+@Singleton
+class MigrationStatus {
+
+  /**
+    * @since 21.03.18
+    */
+  @volatile private var ready: Boolean = false
+
+  /**
+    * @since 21.03.18
+    */
+  @volatile private var server: String = _
+
+  /**
+    * @since 21.03.18
+    */
+  @volatile private var scripts: java.util.List[String] = Collections.emptyList()
+
+  /**
+    * @since 21.03.18
+    */
+  @volatile private var startedAt: Instant = _
+
+  /**
+    * @since 21.03.18
+    */
+  @volatile private var finishedAt: Instant = _
+
+  /**
+    * @since 21.03.18
+    */
+  @volatile private var failure: Throwable = _
+
+  /**
+    * @since 21.03.19
+    */
+  private val completion = new CompletableFuture[MigrationStatus]()
+
+  /**
+    * Are the migrations applied? It stays `false` if they failed.
+    *
+    * @return `true` once the migrations are applied
+    * @since 21.03.18
+    */
+  def isReady: Boolean = this.ready
+
+  /**
+    * Get the server being migrated.
+    *
+    * @return The server name, or `null` if no migration is running
+    * @since 21.03.18
+    */
+  def getServer: String = this.server
+
+  /**
+    * Get the scripts being applied on the server being migrated. They
+    * are applied in a single transaction by the migration runner.
+    *
+    * @return The script names
+    * @since 21.03.18
+    */
+  def getScripts: java.util.List[String] = this.scripts
+
+  /**
+    * Get the time spent applying the migrations.
+    *
+    * @return The elapsed time, zero if the migrations have not started
+    * @since 21.03.18
+    */
+  def getElapsed: Duration = {
+    val started = this.startedAt
+    if (started == null) {
+      Duration.ZERO
+    } else {
+      Duration.between(started, Option(this.finishedAt).getOrElse(Instant.now))
+    }
+  }
+
+  /**
+    * Get the error which stopped the migrations.
+    *
+    * @return The error, or `null` if the migrations did not fail
+    * @since 21.03.18
+    */
+  def getFailure: Throwable = this.failure
+
+  /**
+    * Get a stage completed once the migrations are over, whether they
+    * succeeded or failed. It is already completed when the migrations
+    * are not run in background.
+    *
+    * @return The stage, completed with this status
+    * @since 21.03.19
+    */
+  def whenFinished: CompletionStage[MigrationStatus] = this.completion
+
+  /**
+    * @since 21.03.18
+    */
+  private[dbmigration] def started(): Unit = {
+    this.startedAt = Instant.now
+  }
+
+  /**
+    * @param server  The server being migrated
+    * @param scripts The scripts being applied
+    * @since 21.03.18
+    */
+  private[dbmigration] def migrating(server: String, scripts: java.util.List[String]): Unit = {
+    this.scripts = Collections.unmodifiableList(scripts)
+    this.server = server
+  }
+
+  /**
+    * @param failure The error which stopped the migrations, if any
+    * @since 21.03.18
+    */
+  private[dbmigration] def finished(failure: Option[Throwable]): Unit = {
+    this.finishedAt = Instant.now
+    this.server = null
+    this.scripts = Collections.emptyList()
+    this.failure = failure.orNull
+    this.ready = failure.isEmpty
+    this.completion.complete(this)
+  }
+
+  override def toString: String = {
+    if (this.ready) {
+      s"MigrationStatus(ready, elapsed=$getElapsed)"
+    } else if (this.failure != null) {
+      s"MigrationStatus(failed: ${this.failure.getMessage}, elapsed=$getElapsed)"
+    } else {
+      s"MigrationStatus(running, server=${this.server}, scripts=${this.scripts}, elapsed=$getElapsed)"
+    }
+  }
+}
@@ -1,10 +1,26 @@
 package play.db.ebean.dbmigration
 
+import io.ebean.DB
+import io.ebean.migration.runner.LocalMigrationResource
+
+import java.net.{InetAddress, UnknownHostException}
+import java.sql.SQLException
+import java.util.UUID
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.{Callable, ExecutionException, Executors, ScheduledExecutorService, ThreadFactory, TimeUnit}
+import javax.sql.DataSource
 import javax.inject.{Inject, Singleton}
 import org.slf4j.{Logger, LoggerFactory}
 import play.api.db.evolutions.ApplicationEvolutions
+import play.api.inject.ApplicationLifecycle
 import play.api.{Configuration, Environment, Mode}
 import play.core.WebCommands
+import play.db.ebean.orm.EbeanStartupReport
+
+import scala.collection.JavaConverters._
+import scala.concurrent.Future
+import scala.concurrent.duration._
+import scala.util.control.NonFatal
 
 /**
   * PlayInitializer.
@@ -14,7 +30,8 @@ import play.core.WebCommands
   */
 @Singleton
 class PlayInitializer @Inject()
-(configuration: Configuration, environment: Environment, webCommands: WebCommands, applicationEvolutions: ApplicationEvolutions) {
+(configuration: Configuration, environment: Environment, webCommands: WebCommands, applicationEvolutions: ApplicationEvolutions,
+ applicationLifecycle: ApplicationLifecycle, migrationStatus: MigrationStatus, startupReport: EbeanStartupReport) {
 
   /**
     * @since 20.02.25
@@ -49,6 +66,69 @@ class PlayInitializer @Inject()
     "ebean.dbmigration.platformName"
   ).orNull
 
+  /**
+    * @since 21.03.16
+    */
+  private val metaTable: String = configuration.getOptional[String](
+    "ebean.dbmigration.metaTable"
+  ).getOrElse(EbeanToolbox.DefaultMetaTable)
+
+  /**
+    * @since 21.03.18
+    */
+  private val background: Boolean = configuration.getOptional[String](
+    "ebean.dbmigration.mode"
+  ).exists(_.equalsIgnoreCase("background"))
+
+  /**
+    * @since 21.03.18
+    */
+  private val stopTimeout: FiniteDuration = configuration.getOptional[FiniteDuration](
+    "ebean.dbmigration.stopTimeout"
+  ).getOrElse(30.seconds)
+
+  /**
+    * @since 21.03.17
+    */
+  private val lockEnabled: Boolean = configuration.getOptional[Boolean](
+    "ebean.dbmigration.lock.enabled"
+  ).getOrElse(false)
+
+  /**
+    * @since 21.03.17
+    */
+  private val lockTimeout: FiniteDuration = configuration.getOptional[FiniteDuration](
+    "ebean.dbmigration.lock.timeout"
+  ).getOrElse(5.minutes)
+
+  /**
+    * @since 21.03.17
+    */
+  private val lockLease: FiniteDuration = configuration.getOptional[FiniteDuration](
+    "ebean.dbmigration.lock.lease"
+  ).getOrElse(1.minute)
+
+  /**
+    * @since 21.03.17
+    */
+  private val lockPollInterval: FiniteDuration = configuration.getOptional[FiniteDuration](
+    "ebean.dbmigration.lock.pollInterval"
+  ).getOrElse(1.second)
+
+  /**
+    * Identifier of this node, used as owner of the migration locks.
+    *
+    * @since 21.03.17
+    */
+  private lazy val lockOwner: String = {
+    val hostName = try {
+      InetAddress.getLocalHost.getHostName
+    } catch {
+      case _: UnknownHostException => "unknown"
+    }
+    s"$hostName/${UUID.randomUUID}"
+  }
+
   /**
     * @since 17.01.29
     */
@@ -60,56 +140,299 @@ class PlayInitializer @Inject()
     * @since 17.01.29
     */
   def onStart(): Unit = {
+    this.migrationStatus.started()
+    if (this.isEnabled && this.background) {
+      if (this.autoApply) {
+        this.startInBackground()
+        return
+      }
+      logger.warn("Background db-migration requires 'ebean.dbmigration.autoApply', migrating synchronously")
+    }
+    try {
+      this.migrateServers()
+      this.migrationStatus.finished(None)
+    } catch {
+      case e: Throwable =>
+        this.migrationStatus.finished(Some(e))
+        throw e
+    } finally {
+      if (this.isEnabled) {
+        this.startupReport.complete()
+      }
+    }
+  }
+
+  /**
+    * Apply the migrations on a dedicated thread. When the application
+    * stops, the thread is interrupted and the stop waits for it to exit,
+    * up to the stop timeout, so that the servers are not shut down under
+    * a running migration.
+    *
+    * @since 21.03.18
+    */
+  private def startInBackground(): Unit = {
+    val thread = new Thread(new Runnable {
+      override def run(): Unit = {
+        try {
+          migrateServers()
+          migrationStatus.finished(None)
+          logger.info(s"Background db-migration done in ${migrationStatus.getElapsed.toMillis}ms")
+        } catch {
+          case e: InterruptedException =>
+            migrationStatus.finished(Some(e))
+          case NonFatal(e) =>
+            logger.error("Background db-migration failed", e)
+            migrationStatus.finished(Some(e))
+        } finally {
+          startupReport.complete()
+        }
+      }
+    }, "ebean-dbmigration-background")
+    thread.setDaemon(true)
+    thread.setContextClassLoader(this.environment.classLoader)
+    this.applicationLifecycle.addStopHook(() => {
+      thread.interrupt()
+      thread.join(this.stopTimeout.toMillis)
+      if (thread.isAlive) {
+        logger.warn(s"Background db-migration still running after ${this.stopTimeout}, stopping anyway")
+      }
+      Future.successful(())
+    })
+    thread.start()
+  }
+
+  /**
+    * Check the migration state of the servers and apply the migrations.
+    *
+    * @since 21.03.18
+    */
+  private def migrateServers(): Unit = {
     if (this.isEnabled) {
       if (!applicationEvolutions.upToDate) {
         logger.warn("Database is not up to date. Skipping db-migration")
         return
       }
       val maybeSubKeys = configuration.getOptional[Configuration]("ebean.servers")
-      if (maybeSubKeys.isDefined) maybeSubKeys.get.subKeys.foreach(key => {
-        val changedMigrationResource = EbeanToolbox.checkEbeanServerState(
-          this.platformName,
-          this.migrationPath,
-          this.environment,
-          key
-        )
-        if (changedMigrationResource.nonEmpty) {
-          var data = ""
-          for (res <- changedMigrationResource) {
-            data = data.concat(
-              s"""▅▆▇█ ${res.getLocation.split("/").takeRight(1).apply(0)} █▇▆▅
-                 |${res.getContent}
-                 |
-                 |
-                 |""".stripMargin
-            )
-          }
-          if (data.nonEmpty) {
+      // The lazy servers are refused by the servers initialisation when the
+      // migrations are enabled
+      val keys = maybeSubKeys.map(_.subKeys.toSeq).getOrElse(Seq.empty)
+      this.checkServersState(keys).foreach({
+        case (key, changedMigrationResource) =>
+          if (changedMigrationResource.nonEmpty) {
             val ebeanMigrationWC = new EbeanMigrationWebCommand(this.configuration, this.environment)
             webCommands.addHandler(ebeanMigrationWC)
             val forceFrom = changedMigrationResource.toStream.find(k => !k.isRepeatable).map(k => k.key())
             if (this.autoApply) {
-              logger.info(s"Applying migration on database '$key'")
-              EbeanToolbox.migrateEbeanServer(
-                this.platformName,
-                this.migrationPath,
-                this.environment,
+              this.migrationStatus.migrating(
                 key,
-                if (this.allowAlreadyProcessedFiles) forceFrom.orNull else null,
-                this.allowAlreadyProcessedFiles
+                changedMigrationResource.map(res => res.getLocation.split("/").last).toSeq.asJava
               )
+              val startedAt = System.nanoTime
+              try {
+                if (this.lockEnabled) {
+                  this.migrateWithLock(key, changedMigrationResource, forceFrom)
+                } else {
+                  this.migrate(key, forceFrom)
+                }
+              } finally {
+                this.startupReport.record(key, EbeanStartupReport.Phase.MIGRATION_APPLY, System.nanoTime - startedAt)
+              }
             } else {
               if (this.environment.mode == Mode.Prod) {
                 throw InvalidDatabaseStateProduction(key)
               }
-              throw InvalidDatabaseState(key, data, if (this.allowAlreadyProcessedFiles) forceFrom.orNull else null)
+              throw InvalidDatabaseState(
+                key,
+                this.describe(changedMigrationResource),
+                if (this.allowAlreadyProcessedFiles) forceFrom.orNull else null
+              )
             }
           }
-        }
       })
     }
   }
 
+  /**
+    * Apply the migrations of a server.
+    *
+    * @param key       The server name
+    * @param forceFrom The script key from which force migration
+    * @since 21.03.17
+    */
+  private def migrate(key: String, forceFrom: Option[String]): Unit = {
+    logger.info(s"Applying migration on database '$key'")
+    EbeanToolbox.migrateEbeanServer(
+      this.platformName,
+      this.migrationPath,
+      this.environment,
+      key,
+      if (this.allowAlreadyProcessedFiles) forceFrom.orNull else null,
+      this.allowAlreadyProcessedFiles,
+      this.metaTable
+    )
+  }
+
+  /**
+    * Apply the migrations of a server from a single node. The node
+    * holding the migration lock applies the migrations, the others wait
+    * until the last expected version is present in the migration table
+    * or until the lock is released.
+    *
+    * @param key                      The server name
+    * @param changedMigrationResource The migration resources to run
+    * @param forceFrom                The script key from which force migration
+    * @throws MigrationLockTimeout If the migrations are not applied in time
+    * @since 21.03.17
+    */
+  private def migrateWithLock(key: String, changedMigrationResource: Iterable[LocalMigrationResource],
+                              forceFrom: Option[String]): Unit = {
+    val dataSource = DB.byName(key).getPluginApi.getDataSource
+    val expectedVersion = changedMigrationResource.filterNot(_.isRepeatable).lastOption.map(_.key())
+    val deadline = this.lockTimeout.fromNow
+    var done = false
+    while (!done) {
+      val acquired = try {
+        MigrationLock.tryAcquire(dataSource, key, this.lockOwner, this.lockLease.toMillis)
+      } catch {
+        case e: SQLException => throw MigrationRunnerError(key, e)
+      }
+      if (acquired) {
+        val heartbeat = this.startHeartbeat(dataSource, key)
+        try {
+          // Another node may have applied the migrations meanwhile
+          if (EbeanToolbox.checkEbeanServerState(
+            this.platformName,
+            this.migrationPath,
+            this.environment,
+            key,
+            this.metaTable
+          ).nonEmpty) {
+            this.migrate(key, forceFrom)
+          }
+        } finally {
+          heartbeat.shutdownNow()
+          MigrationLock.release(dataSource, key, this.lockOwner)
+        }
+        done = true
+      } else if (expectedVersion.exists(version => MigrationLock.isApplied(dataSource, version, this.metaTable))) {
+        logger.info(s"Migration of database '$key' applied by another node")
+        done = true
+      } else if (deadline.isOverdue()) {
+        throw MigrationLockTimeout(key, this.lockTimeout)
+      } else {
+        logger.debug(s"Waiting for the migration of database '$key' by another node")
+        Thread.sleep(this.lockPollInterval.toMillis)
+      }
+    }
+  }
+
+  /**
+    * Renew the migration lock of a server every third of its lease, until
+    * the returned executor is shut down.
+    *
+    * @param dataSource The datasource of the server
+    * @param key        The server name
+    * @return The executor running the renewals
+    * @since 21.03.17
+    */
+  private def startHeartbeat(dataSource: DataSource, key: String): ScheduledExecutorService = {
+    val executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory {
+      override def newThread(runnable: Runnable): Thread = {
+        val thread = new Thread(runnable, s"ebean-dbmigration-lock-$key")
+        thread.setDaemon(true)
+        thread
+      }
+    })
+    val period = math.max(this.lockLease.toMillis / 3, 1L)
+    executor.scheduleAtFixedRate(() => {
+      try {
+        if (!MigrationLock.renew(dataSource, key, this.lockOwner)) {
+          logger.warn(s"Migration lock of database '$key' lost, another node may take it over")
+        }
+      } catch {
+        case e: SQLException => logger.warn(s"Can't renew the migration lock of database '$key'", e)
+      }
+    }, period, period, TimeUnit.MILLISECONDS)
+    executor
+  }
+
+  /**
+    * Check the migration state of the servers. When there is more than
+    * one server, they are checked concurrently on a bounded pool.
+    *
+    * @param keys The servers to check
+    * @return The migration resources to run, by server, in the order of the given servers
+    * @since 21.03.16
+    */
+  private def checkServersState(keys: Seq[String]): Seq[(String, Iterable[LocalMigrationResource])] = {
+    val check = (key: String) => {
+      val startedAt = System.nanoTime
+      try {
+        EbeanToolbox.checkEbeanServerState(
+          this.platformName,
+          this.migrationPath,
+          this.environment,
+          key,
+          this.metaTable
+        )
+      } finally {
+        this.startupReport.record(key, EbeanStartupReport.Phase.MIGRATION_CHECK, System.nanoTime - startedAt)
+      }
+    }
+    if (keys.size < 2) {
+      keys.map(key => key -> check(key))
+    } else {
+      val contextClassLoader = Thread.currentThread.getContextClassLoader
+      val threadCount = new AtomicInteger()
+      val executor = Executors.newFixedThreadPool(
+        math.min(keys.size, Runtime.getRuntime.availableProcessors),
+        new ThreadFactory {
+          override def newThread(runnable: Runnable): Thread = {
+            val thread = new Thread(runnable, s"ebean-dbmigration-${threadCount.incrementAndGet()}")
+            thread.setDaemon(true)
+            thread.setContextClassLoader(contextClassLoader)
+            thread
+          }
+        }
+      )
+      try {
+        keys
+          .map(key => key -> executor.submit(new Callable[Iterable[LocalMigrationResource]] {
+            override def call(): Iterable[LocalMigrationResource] = check(key)
+          }))
+          .map({
+            case (key, future) =>
+              try {
+                key -> future.get()
+              } catch {
+                case e: ExecutionException => throw e.getCause
+              }
+          })
+      } finally {
+        executor.shutdownNow()
+      }
+    }
+  }
+
+  /**
+    * Build the content displayed when the database needs migration.
+    *
+    * @param changedMigrationResource The migration resources to run
+    * @return The migration scripts
+    * @since 21.03.16
+    */
+  private def describe(changedMigrationResource: Iterable[LocalMigrationResource]): String = {
+    val sb = new StringBuilder
+    changedMigrationResource.foreach(res =>
+      sb.append(s"""▅▆▇█ ${res.getLocation.split("/").last} █▇▆▅
+                   |${res.getContent}
+                   |
+                   |
+                   |""".stripMargin)
+    )
+    sb.toString
+  }
+
   /**
     * Run.
     *
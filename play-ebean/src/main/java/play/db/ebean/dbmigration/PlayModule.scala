@@ -17,9 +17,10 @@ class PlayModule extends Module {
     */
   private val logger: Logger = LoggerFactory.getLogger(this.getClass);
 
-  def bindings(environment: Environment, configuration: Configuration): Seq[Binding[PlayInitializer]] = {
+  def bindings(environment: Environment, configuration: Configuration): Seq[Binding[_]] = {
     this.logger.trace("Loading module DBMigration")
     Seq(
+      bind[MigrationStatus].toSelf,
       bind[PlayInitializer].toSelf.eagerly
     )
   }
@@ -0,0 +1,438 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+package play.db.ebean.orm;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of the connections retrieved by an Ebean server from its Play
+ * datasource: time spent waiting for the pool, time the connections are
+ * held, concurrent checkouts and connections held longer than the leak
+ * threshold. Times are expressed in microseconds.
+ *
+ * @since 21.03.21
+ */
+public class ConnectionMetrics {
+
+    /**
+     * @since 21.03.21
+     */
+    private final Histogram acquireTime = new Histogram();
+
+    /**
+     * @since 21.03.21
+     */
+    private final Histogram holdTime = new Histogram();
+
+    /**
+     * @since 21.03.21
+     */
+    private final AtomicInteger active = new AtomicInteger();
+
+    /**
+     * @since 21.03.21
+     */
+    private final AtomicInteger peakActive = new AtomicInteger();
+
+    /**
+     * @since 21.03.21
+     */
+    private final LongAdder acquireErrors = new LongAdder();
+
+    /**
+     * Leak threshold in nanoseconds, zero if the leak detection is disabled.
+     *
+     * @since 21.03.21
+     */
+    private final long leakThreshold;
+
+    /**
+     * Connections currently held, only tracked when the leak detection is
+     * enabled.
+     *
+     * @since 21.03.21
+     */
+    private final Set<Checkout> checkouts = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Build a new instance.
+     *
+     * @param leakThreshold The time after which a held connection is suspected to leak, zero to disable
+     * @since 21.03.21
+     */
+    public ConnectionMetrics(final Duration leakThreshold) {
+        this.leakThreshold = leakThreshold.toNanos();
+    }
+
+    /**
+     * Get the time spent waiting for a connection.
+     *
+     * @return The histogram of the acquire times
+     * @since 21.03.21
+     */
+    public Histogram getAcquireTime() {
+        return this.acquireTime;
+    }
+
+    /**
+     * Get the time the connections are held, from checkout to close.
+     *
+     * @return The histogram of the hold times
+     * @since 21.03.21
+     */
+    public Histogram getHoldTime() {
+        return this.holdTime;
+    }
+
+    /**
+     * @return The number of connections currently held
+     * @since 21.03.21
+     */
+    public int getActive() {
+        return this.active.get();
+    }
+
+    /**
+     * @return The max number of connections held at the same time since the last reset
+     * @since 21.03.21
+     */
+    public int getPeakActive() {
+        return this.peakActive.get();
+    }
+
+    /**
+     * @return The number of connections the pool failed to provide since the last reset
+     * @since 21.03.21
+     */
+    public long getAcquireErrors() {
+        return this.acquireErrors.sum();
+    }
+
+    /**
+     * Get the connections held for longer than the leak threshold, longest
+     * first, with the stack of the code that retrieved them.
+     *
+     * @return The leak suspects, always empty if the leak detection is disabled
+     * @since 21.03.21
+     */
+    public List<LeakSuspect> getLeakSuspects() {
+        final long now = System.nanoTime();
+        final List<LeakSuspect> suspects = new ArrayList<>();
+        for (final Checkout checkout : this.checkouts) {
+            final long heldFor = now - checkout.startedAt;
+            if (heldFor > this.leakThreshold) {
+                suspects.add(new LeakSuspect(checkout.threadName, Duration.ofNanos(heldFor), checkout.stack));
+            }
+        }
+        suspects.sort(Comparator.comparing(LeakSuspect::getHeldFor).reversed());
+        return suspects;
+    }
+
+    /**
+     * Reset the metrics. The connections currently held are still tracked.
+     *
+     * @since 21.03.21
+     */
+    public void reset() {
+        this.acquireTime.reset();
+        this.holdTime.reset();
+        this.acquireErrors.reset();
+        this.peakActive.set(this.active.get());
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+            "active=%d peak=%d errors=%d acquire(us)[%s] hold(us)[%s] leakSuspects=%d",
+            this.getActive(),
+            this.getPeakActive(),
+            this.getAcquireErrors(),
+            this.acquireTime,
+            this.holdTime,
+            this.leakThreshold > 0 ? this.getLeakSuspects().size() : 0
+        );
+    }
+
+    /**
+     * Record a connection checkout.
+     *
+     * @param acquireNanos The time spent waiting for the connection, in nanoseconds
+     * @return The checkout, to give back when the connection is closed
+     * @since 21.03.21
+     */
+    Checkout checkout(final long acquireNanos) {
+        this.acquireTime.record(acquireNanos);
+        this.peakActive.accumulateAndGet(this.active.incrementAndGet(), Math::max);
+        final Checkout checkout = new Checkout(this.leakThreshold > 0);
+        if (this.leakThreshold > 0) {
+            this.checkouts.add(checkout);
+        }
+        return checkout;
+    }
+
+    /**
+     * Record a connection the pool failed to provide.
+     *
+     * @since 21.03.21
+     */
+    void acquireError() {
+        this.acquireErrors.increment();
+    }
+
+    /**
+     * Record the close of a connection.
+     *
+     * @param checkout The checkout of the connection
+     * @since 21.03.21
+     */
+    void checkin(final Checkout checkout) {
+        this.holdTime.record(System.nanoTime() - checkout.startedAt);
+        this.active.decrementAndGet();
+        if (this.leakThreshold > 0) {
+            this.checkouts.remove(checkout);
+        }
+    }
+
+    /**
+     * A connection checkout.
+     *
+     * @since 21.03.21
+     */
+    static final class Checkout {
+
+        /**
+         * @since 21.03.21
+         */
+        private final long startedAt = System.nanoTime();
+
+        /**
+         * @since 21.03.21
+         */
+        private final String threadName;
+
+        /**
+         * @since 21.03.21
+         */
+        private final StackTraceElement[] stack;
+
+        /**
+         * @param trace Capture the thread and the stack of the checkout
+         * @since 21.03.21
+         */
+        private Checkout(final boolean trace) {
+            this.threadName = trace ? Thread.currentThread().getName() : null;
+            this.stack = trace ? new Throwable().getStackTrace() : null;
+        }
+    }
+
+    /**
+     * A connection held for longer than the leak threshold.
+     *
+     * @since 21.03.21
+     */
+    public static final class LeakSuspect {
+
+        /**
+         * @since 21.03.21
+         */
+        private final String threadName;
+
+        /**
+         * @since 21.03.21
+         */
+        private final Duration heldFor;
+
+        /**
+         * @since 21.03.21
+         */
+        private final StackTraceElement[] stack;
+
+        /**
+         * @param threadName The thread which retrieved the connection
+         * @param heldFor    The time the connection has been held
+         * @param stack      The stack of the code which retrieved the connection
+         * @since 21.03.21
+         */
+        LeakSuspect(final String threadName, final Duration heldFor, final StackTraceElement[] stack) {
+            this.threadName = threadName;
+            this.heldFor = heldFor;
+            this.stack = stack;
+        }
+
+        /**
+         * @return The thread which retrieved the connection
+         * @since 21.03.21
+         */
+        public String getThreadName() {
+            return this.threadName;
+        }
+
+        /**
+         * @return The time the connection has been held
+         * @since 21.03.21
+         */
+        public Duration getHeldFor() {
+            return this.heldFor;
+        }
+
+        /**
+         * @return The stack of the code which retrieved the connection
+         * @since 21.03.21
+         */
+        public StackTraceElement[] getStack() {
+            return this.stack.clone();
+        }
+    }
+
+    /**
+     * Histogram of durations with fixed buckets, from 50 microseconds to
+     * 1 second.
+     *
+     * @since 21.03.21
+     */
+    public static final class Histogram {
+
+        /**
+         * Upper bounds of the buckets, in microseconds. The last bucket has
+         * no upper bound.
+         *
+         * @since 21.03.21
+         */
+        private static final long[] BOUNDS = {
+            50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000, 250_000, 500_000, 1_000_000
+        };
+
+        /**
+         * @since 21.03.21
+         */
+        private final AtomicLongArray counts = new AtomicLongArray(BOUNDS.length + 1);
+
+        /**
+         * @since 21.03.21
+         */
+        private final LongAdder total = new LongAdder();
+
+        /**
+         * @since 21.03.21
+         */
+        private final AtomicLong max = new AtomicLong();
+
+        /**
+         * @param nanos The duration to record, in nanoseconds
+         * @since 21.03.21
+         */
+        void record(final long nanos) {
+            final long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+            int bucket = 0;
+            while (bucket < BOUNDS.length && micros > BOUNDS[bucket]) {
+                bucket += 1;
+            }
+            this.counts.incrementAndGet(bucket);
+            this.total.add(micros);
+            this.max.accumulateAndGet(micros, Math::max);
+        }
+
+        /**
+         * @since 21.03.21
+         */
+        void reset() {
+            for (int i = 0; i < this.counts.length(); ++i) {
+                this.counts.set(i, 0);
+            }
+            this.total.reset();
+            this.max.set(0);
+        }
+
+        /**
+         * @return The upper bounds of the buckets, in microseconds, the last bucket has no upper bound
+         * @since 21.03.21
+         */
+        public static long[] getBounds() {
+            return BOUNDS.clone();
+        }
+
+        /**
+         * @return The number of durations recorded in each bucket
+         * @since 21.03.21
+         */
+        public long[] getCounts() {
+            final long[] copy = new long[this.counts.length()];
+            for (int i = 0; i < copy.length; ++i) {
+                copy[i] = this.counts.get(i);
+            }
+            return copy;
+        }
+
+        /**
+         * @return The number of durations recorded
+         * @since 21.03.21
+         */
+        public long getCount() {
+            long count = 0;
+            for (int i = 0; i < this.counts.length(); ++i) {
+                count += this.counts.get(i);
+            }
+            return count;
+        }
+
+        /**
+         * @return The sum of the durations recorded
+         * @since 21.03.21
+         */
+        public long getTotal() {
+            return this.total.sum();
+        }
+
+        /**
+         * @return The longest duration recorded
+         * @since 21.03.21
+         */
+        public long getMax() {
+            return this.max.get();
+        }
+
+        /**
+         * Get the upper bound of the bucket holding a percentile.
+         *
+         * @param percentile The percentile, between 0 and 100
+         * @return The upper bound of the bucket, or the max for the last bucket
+         * @since 21.03.21
+         */
+        public long getPercentile(final double percentile) {
+            final long[] snapshot = this.getCounts();
+            final long count = Arrays.stream(snapshot).sum();
+            final long rank = (long) Math.ceil(count * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BOUNDS.length; ++i) {
+                seen += snapshot[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(BOUNDS[i], this.getMax());
+                }
+            }
+            return this.getMax();
+        }
+
+        @Override
+        public String toString() {
+            final long count = this.getCount();
+            return String.format(
+                "count=%d mean=%d p50=%d p99=%d max=%d",
+                count,
+                count == 0 ? 0 : this.getTotal() / count,
+                this.getPercentile(50),
+                this.getPercentile(99),
+                this.getMax()
+            );
+        }
+    }
+}
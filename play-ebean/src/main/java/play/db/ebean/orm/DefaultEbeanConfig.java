@@ -5,7 +5,10 @@ package play.db.ebean.orm;
 
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigOrigin;
+import com.typesafe.config.ConfigUtil;
 import io.ebean.DatabaseFactory;
+import io.ebean.annotation.PersistBatch;
+import io.ebean.cache.ServerCacheOptions;
 import io.ebean.config.*;
 import org.reflections.Reflections;
 import org.reflections.scanners.SubTypesScanner;
@@ -14,15 +17,27 @@ import org.reflections.scanners.TypeElementsScanner;
 import org.reflections.util.ClasspathHelper;
 import org.reflections.util.ConfigurationBuilder;
 import org.reflections.util.FilterBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import play.Environment;
 import play.api.PlayException;
 import play.db.DBApi;
+import play.db.ebean.orm.cache.CaffeineServerCachePlugin;
+import play.db.ebean.orm.cluster.CoalescingClusterBroadcastFactory;
 import scala.Option;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.inject.Singleton;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static java.lang.Class.forName;
@@ -79,6 +94,18 @@ public class DefaultEbeanConfig implements EbeanConfig {
     @Singleton
     public static class EbeanConfigParser implements Provider<EbeanConfig> {
 
+        /**
+         * Location of the models index generated by the sbt plugin.
+         *
+         * @since 21.03.01
+         */
+        private static final String MODELS_INDEX_RESOURCE = "play-ebean/models/%s.idx";
+
+        /**
+         * @since 21.03.01
+         */
+        private static final Logger LOGGER = LoggerFactory.getLogger(EbeanConfigParser.class);
+
         /**
          * @since 14.11.27
          */
@@ -94,6 +121,11 @@ public class DefaultEbeanConfig implements EbeanConfig {
          */
         private final DBApi dbApi;
 
+        /**
+         * @since 21.03.20
+         */
+        private final EbeanStartupReport startupReport;
+
         /**
          * Build a pre-configured configuration parser.
          *
@@ -102,11 +134,26 @@ public class DefaultEbeanConfig implements EbeanConfig {
          * @param dbApi         DB API for managing application databases
          * @since 14.11.27
          */
-        @Inject
         public EbeanConfigParser(final Config configuration, final Environment environment, final DBApi dbApi) {
+            this(configuration, environment, dbApi, new EbeanStartupReport());
+        }
+
+        /**
+         * Build a pre-configured configuration parser.
+         *
+         * @param configuration The current Play configuration
+         * @param environment   The current Play environment
+         * @param dbApi         DB API for managing application databases
+         * @param startupReport The startup report to record the parsing time into
+         * @since 21.03.20
+         */
+        @Inject
+        public EbeanConfigParser(final Config configuration, final Environment environment, final DBApi dbApi,
+                                 final EbeanStartupReport startupReport) {
             this.configuration = configuration;
             this.environment = environment;
             this.dbApi = dbApi;
+            this.startupReport = startupReport;
         }
 
         @Override
@@ -170,6 +217,7 @@ public class DefaultEbeanConfig implements EbeanConfig {
         EbeanConfig parse() {
             final Map<String, DatabaseConfig> serverConfigs = new HashMap<>();
 
+            final long clusteringStartedAt = System.nanoTime();
             if (this.configuration.hasPathOrNull("ebean.clustering")) {
                 final Config playEbeanClusteringCfg = this.configuration.getConfig("ebean.clustering");
                 if (playEbeanClusteringCfg.hasPath("isActive") && playEbeanClusteringCfg.getBoolean("isActive")) {
@@ -192,13 +240,35 @@ public class DefaultEbeanConfig implements EbeanConfig {
                     }
                     containerConfig.setActive(true);
                     containerConfig.setProperties(properties);
+                    if (playEbeanClusteringCfg.hasPath("coalescing.enabled")
+                        && playEbeanClusteringCfg.getBoolean("coalescing.enabled")) {
+                        this.applySetting(playEbeanClusteringCfg, "coalescing.flushInterval", key ->
+                            properties.setProperty(
+                                CoalescingClusterBroadcastFactory.FLUSH_INTERVAL,
+                                String.valueOf(playEbeanClusteringCfg.getDuration(key, TimeUnit.MILLISECONDS))
+                            )
+                        );
+                        this.applySetting(playEbeanClusteringCfg, "coalescing.maxBatchSize", key ->
+                            properties.setProperty(
+                                CoalescingClusterBroadcastFactory.MAX_BATCH_SIZE,
+                                String.valueOf(EbeanConfigParser.getPositiveInt(playEbeanClusteringCfg, key))
+                            )
+                        );
+                        properties.setProperty(CoalescingClusterBroadcastFactory.ENABLED, "true");
+                    }
                     DatabaseFactory.initialiseContainer(containerConfig);
                 }
             }
+            this.startupReport.record(
+                EbeanStartupReport.ALL_SERVERS,
+                EbeanStartupReport.Phase.CLUSTERING,
+                System.nanoTime() - clusteringStartedAt
+            );
 
             if (this.configuration.hasPathOrNull("ebean.servers")) {
                 final Config playEbeanSrvCfg = this.configuration.getConfig("ebean.servers");
                 playEbeanSrvCfg.root().keySet().forEach(serverName -> {
+                    long phaseStartedAt = System.nanoTime();
                     final Config ebeanServerConfig = playEbeanSrvCfg.getConfig(serverName);
                     final DatabaseConfig serverConfig = new DatabaseConfig();
                     serverConfig.setName(serverName);
@@ -222,6 +292,13 @@ public class DefaultEbeanConfig implements EbeanConfig {
                             } else {
                                 this.setServerConfigDataSource(serverName, serverConfig);
                             }
+                            if (playEbeanSrvSettingsCfg.hasPath("readOnlyDatasource") && serverConfig.getDataSource() != null) {
+                                this.setServerConfigReadOnlyDataSource(
+                                    serverName,
+                                    playEbeanSrvSettingsCfg.getString("readOnlyDatasource"),
+                                    serverConfig
+                                );
+                            }
                             if (playEbeanSrvSettingsCfg.hasPath("allQuotedIdentifiers")) {
                                 serverConfig.setAllQuotedIdentifiers(
                                     playEbeanSrvSettingsCfg.getBoolean("allQuotedIdentifiers")
@@ -250,6 +327,10 @@ public class DefaultEbeanConfig implements EbeanConfig {
                                     playEbeanSrvSettingsCfg.getBoolean("disableL2Cache")
                                 );
                             }
+                            this.applyThroughputSettings(playEbeanSrvSettingsCfg, serverConfig);
+                            this.applyConnectionMetricsSettings(playEbeanSrvSettingsCfg, serverConfig);
+                        } catch (final PlayException ex) {
+                            throw ex;
                         } catch (final Exception ex) {
                             final Option<ConfigOrigin> origin = this.configuration.hasPath("ebean.servers" + serverName + ".settings") ?
                                 Option.apply(this.configuration.getValue("ebean.servers" + serverName + ".settings").origin()) :
@@ -261,28 +342,23 @@ public class DefaultEbeanConfig implements EbeanConfig {
                         this.setServerConfigDataSource(serverName, serverConfig);
                     }
 
+                    if (ebeanServerConfig.hasPath("cache")) {
+                        this.setServerConfigCache(ebeanServerConfig.getConfig("cache"), serverConfig);
+                    }
+
                     if (ebeanServerConfig.hasPath("enhancement")) {
-                        final Set<String> classes = new HashSet<>();
-                        ebeanServerConfig.getStringList("enhancement").stream().map(String::trim).forEach(load -> {
-                            if (load.endsWith(".*")) {
-                                final String packageName = load.substring(0, load.length() - 2);
-                                final Reflections reflections = new Reflections(
-                                    new ConfigurationBuilder()
-                                        .addUrls(ClasspathHelper.forPackage(packageName, this.environment.classLoader()))
-                                        .filterInputsBy(new FilterBuilder().include(FilterBuilder.prefix(packageName + ".")))
-                                        .setScanners(new TypeElementsScanner(), new TypeAnnotationsScanner(), new SubTypesScanner())
-                                );
-                                classes.addAll(
-                                    reflections
-                                        .getStore()
-                                        .get(TypeElementsScanner.class.getSimpleName())
-                                        .keySet()
-                                );
-                            } else {
-                                classes.add(load);
-                            }
-                        });
+                        phaseStartedAt = this.recordPhase(serverName, EbeanStartupReport.Phase.CONFIG_PARSE, phaseStartedAt);
+                        final List<String> enhancement = ebeanServerConfig.getStringList("enhancement")
+                            .stream()
+                            .map(String::trim)
+                            .collect(Collectors.toList());
+                        final Set<String> classes = EbeanConfigParser.resolveModelClasses(
+                            this.environment.classLoader(),
+                            serverName,
+                            enhancement
+                        );
                         this.addModelClassesToServerConfig(serverName, serverConfig, classes);
+                        phaseStartedAt = this.recordPhase(serverName, EbeanStartupReport.Phase.MODEL_CLASSES, phaseStartedAt);
                     }
 
                     if (ebeanServerConfig.hasPath("docstore")) {
@@ -333,6 +409,7 @@ public class DefaultEbeanConfig implements EbeanConfig {
                         }
                     }
 
+                    phaseStartedAt = this.recordPhase(serverName, EbeanStartupReport.Phase.CONFIG_PARSE, phaseStartedAt);
                     if (ebeanServerConfig.hasPath("extra-config")) {
                         ebeanServerConfig.getStringList("extra-config").forEach(className -> {
                             try {
@@ -348,6 +425,7 @@ public class DefaultEbeanConfig implements EbeanConfig {
                         });
                     }
 
+                    this.recordPhase(serverName, EbeanStartupReport.Phase.EXTRA_CONFIG, phaseStartedAt);
                     serverConfigs.put(serverName, serverConfig);
                 });
             } else {
@@ -357,6 +435,21 @@ public class DefaultEbeanConfig implements EbeanConfig {
             return new DefaultEbeanConfig("default", serverConfigs);
         }
 
+        /**
+         * Record the time spent by a server in a startup phase.
+         *
+         * @param serverName     The server name
+         * @param phase          The phase
+         * @param phaseStartedAt The start time of the phase, as returned by {@link System#nanoTime()}
+         * @return The end time of the phase, start time of the next one
+         * @since 21.03.20
+         */
+        private long recordPhase(final String serverName, final EbeanStartupReport.Phase phase, final long phaseStartedAt) {
+            final long now = System.nanoTime();
+            this.startupReport.record(serverName, phase, now - phaseStartedAt);
+            return now;
+        }
+
         /**
          * Set the datasource from DB API to the ebean server configuration.
          *
@@ -370,7 +463,8 @@ public class DefaultEbeanConfig implements EbeanConfig {
                     new WrappingDatasource(
                         this.dbApi
                             .getDatabase(key)
-                            .getDataSource()
+                            .getDataSource(),
+                        false
                     )
                 );
             } catch (final Exception ex) {
@@ -381,6 +475,316 @@ public class DefaultEbeanConfig implements EbeanConfig {
             }
         }
 
+        /**
+         * Apply the batching, fetching and timeout settings to the
+         * server configuration.
+         *
+         * @param settings     The server settings
+         * @param serverConfig The server configuration to apply
+         * @since 21.03.06
+         */
+        private void applyThroughputSettings(final Config settings, final DatabaseConfig serverConfig) {
+            this.applySetting(settings, "persistBatch", key ->
+                serverConfig.setPersistBatch(PersistBatch.valueOf(settings.getString(key).trim().toUpperCase()))
+            );
+            this.applySetting(settings, "persistBatchOnCascade", key ->
+                serverConfig.setPersistBatchOnCascade(PersistBatch.valueOf(settings.getString(key).trim().toUpperCase()))
+            );
+            this.applySetting(settings, "persistBatchSize", key ->
+                serverConfig.setPersistBatchSize(EbeanConfigParser.getPositiveInt(settings, key))
+            );
+            this.applySetting(settings, "lazyLoadBatchSize", key ->
+                serverConfig.setLazyLoadBatchSize(EbeanConfigParser.getPositiveInt(settings, key))
+            );
+            this.applySetting(settings, "queryBatchSize", key ->
+                serverConfig.setQueryBatchSize(EbeanConfigParser.getPositiveInt(settings, key))
+            );
+            this.applySetting(settings, "jdbcFetchSizeFindList", key ->
+                serverConfig.setJdbcFetchSizeFindList(EbeanConfigParser.getPositiveInt(settings, key))
+            );
+            this.applySetting(settings, "jdbcFetchSizeFindEach", key ->
+                serverConfig.setJdbcFetchSizeFindEach(EbeanConfigParser.getPositiveInt(settings, key))
+            );
+            this.applySetting(settings, "queryTimeout", key ->
+                serverConfig.add(new QueryTimeoutAdapter(EbeanConfigParser.getSeconds(settings, key)))
+            );
+            this.applySetting(settings, "slowQueryTime", key ->
+                serverConfig.setSlowQueryMillis(settings.getDuration(key, TimeUnit.MILLISECONDS))
+            );
+        }
+
+        /**
+         * Enable the connection metrics of the server datasources. The
+         * primary and the read-only datasources get their own metrics on
+         * purpose: they are distinct pools, their acquire times and peak
+         * checkouts are reported separately by {@link EbeanMetrics}.
+         *
+         * @param settings     The server settings
+         * @param serverConfig The server configuration to apply
+         * @since 21.03.21
+         */
+        private void applyConnectionMetricsSettings(final Config settings, final DatabaseConfig serverConfig) {
+            final Duration[] leakThreshold = {Duration.ZERO};
+            final boolean[] enabled = {false};
+            this.applySetting(settings, "connectionMetrics", key -> enabled[0] = settings.getBoolean(key));
+            this.applySetting(settings, "connectionLeakThreshold", key -> {
+                leakThreshold[0] = settings.getDuration(key);
+                enabled[0] = true;
+            });
+            if (enabled[0]) {
+                if (serverConfig.getDataSource() instanceof WrappingDatasource) {
+                    final WrappingDatasource dataSource = (WrappingDatasource) serverConfig.getDataSource();
+                    serverConfig.setDataSource(new WrappingDatasource(
+                        dataSource.wrapped,
+                        dataSource.autoCommit,
+                        new ConnectionMetrics(leakThreshold[0])
+                    ));
+                }
+                if (serverConfig.getReadOnlyDataSource() instanceof WrappingDatasource) {
+                    final WrappingDatasource dataSource = (WrappingDatasource) serverConfig.getReadOnlyDataSource();
+                    serverConfig.setReadOnlyDataSource(new WrappingDatasource(
+                        dataSource.wrapped,
+                        dataSource.autoCommit,
+                        new ConnectionMetrics(leakThreshold[0])
+                    ));
+                }
+            }
+        }
+
+        /**
+         * Apply a setting if present. Invalid values are reported with the
+         * location of the setting in the configuration file.
+         *
+         * @param settings The server settings
+         * @param key      The setting key
+         * @param apply    The function applying the setting
+         * @since 21.03.06
+         */
+        private void applySetting(final Config settings, final String key, final Consumer<String> apply) {
+            if (settings.hasPath(key)) {
+                try {
+                    apply.accept(key);
+                } catch (final Exception ex) {
+                    EbeanConfigParser.throwConfigurationException(
+                        Option.apply(settings.getValue(key).origin()),
+                        "Invalid value for setting '" + key + "': " + ex.getMessage(),
+                        ex
+                    );
+                }
+            }
+        }
+
+        /**
+         * Configure the bounded in-process L2 cache backend.
+         *
+         * @param cacheConfig  The server cache configuration
+         * @param serverConfig The server configuration to apply
+         * @since 21.03.07
+         */
+        private void setServerConfigCache(final Config cacheConfig, final DatabaseConfig serverConfig) {
+            this.applySetting(cacheConfig, "maxSize", key ->
+                serverConfig.setCacheMaxSize(EbeanConfigParser.getPositiveInt(cacheConfig, key))
+            );
+            this.applySetting(cacheConfig, "maxIdle", key ->
+                serverConfig.setCacheMaxIdleTime(EbeanConfigParser.getSeconds(cacheConfig, key))
+            );
+            this.applySetting(cacheConfig, "ttl", key ->
+                serverConfig.setCacheMaxTimeToLive(EbeanConfigParser.getSeconds(cacheConfig, key))
+            );
+            this.applySetting(cacheConfig, "query.maxSize", key ->
+                serverConfig.setQueryCacheMaxSize(EbeanConfigParser.getPositiveInt(cacheConfig, key))
+            );
+            this.applySetting(cacheConfig, "query.maxIdle", key ->
+                serverConfig.setQueryCacheMaxIdleTime(EbeanConfigParser.getSeconds(cacheConfig, key))
+            );
+            this.applySetting(cacheConfig, "query.ttl", key ->
+                serverConfig.setQueryCacheMaxTimeToLive(EbeanConfigParser.getSeconds(cacheConfig, key))
+            );
+
+            final Map<String, ServerCacheOptions> beanOptions = new HashMap<>();
+            final Map<String, ServerCacheOptions> queryOptions = new HashMap<>();
+            if (cacheConfig.hasPath("beans")) {
+                final Config beansConfig = cacheConfig.getConfig("beans");
+                beansConfig.root().keySet().forEach(beanName -> {
+                    final Config beanConfig = beansConfig.getConfig(ConfigUtil.joinPath(beanName));
+                    beanOptions.put(beanName, this.readCacheOptions(beanConfig));
+                    if (beanConfig.hasPath("query")) {
+                        queryOptions.put(beanName, this.readCacheOptions(beanConfig.getConfig("query")));
+                    }
+                });
+            }
+
+            final boolean serialized = cacheConfig.hasPath("serialized") && cacheConfig.getBoolean("serialized");
+            serverConfig.setServerCachePlugin(new CaffeineServerCachePlugin(beanOptions, queryOptions, serialized));
+        }
+
+        /**
+         * Read the size and expiration options of a cache.
+         *
+         * @param config The cache configuration
+         * @return The cache options
+         * @since 21.03.07
+         */
+        private ServerCacheOptions readCacheOptions(final Config config) {
+            final ServerCacheOptions options = new ServerCacheOptions();
+            this.applySetting(config, "maxSize", key ->
+                options.setMaxSize(EbeanConfigParser.getPositiveInt(config, key))
+            );
+            this.applySetting(config, "maxIdle", key ->
+                options.setMaxIdleSecs(EbeanConfigParser.getSeconds(config, key))
+            );
+            this.applySetting(config, "ttl", key ->
+                options.setMaxSecsToLive(EbeanConfigParser.getSeconds(config, key))
+            );
+            return options;
+        }
+
+        /**
+         * Get a duration of at least one second from the configuration.
+         *
+         * @param config The configuration
+         * @param key    The key
+         * @return The duration in seconds
+         * @since 21.03.07
+         */
+        private static int getSeconds(final Config config, final String key) {
+            final long value = config.getDuration(key, TimeUnit.SECONDS);
+            if (value < 1 || value > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("must be a duration of at least 1 second");
+            }
+            return (int) value;
+        }
+
+        /**
+         * Get a strictly positive integer from the configuration.
+         *
+         * @param config The configuration
+         * @param key    The key
+         * @return The value
+         * @since 21.03.06
+         */
+        private static int getPositiveInt(final Config config, final String key) {
+            final int value = config.getInt(key);
+            if (value < 1) {
+                throw new IllegalArgumentException("must be greater than 0");
+            }
+            return value;
+        }
+
+        /**
+         * Set the read-only datasource from DB API to the ebean server
+         * configuration. Connections of the read-only datasource are used
+         * in auto-commit mode, as expected by Ebean.
+         *
+         * @param key          The server name
+         * @param dbName       The name of the read-only database (ie: "replica")
+         * @param serverConfig The server configuration to apply
+         * @since 21.03.05
+         */
+        private void setServerConfigReadOnlyDataSource(final String key, final String dbName,
+                                                       final DatabaseConfig serverConfig) {
+            try {
+                serverConfig.setReadOnlyDataSource(
+                    new WrappingDatasource(
+                        this.dbApi
+                            .getDatabase(dbName)
+                            .getDataSource(),
+                        true
+                    )
+                );
+            } catch (final Exception ex) {
+                final Option<ConfigOrigin> origin = this.configuration.hasPath("ebean.servers." + key + ".settings.readOnlyDatasource") ?
+                    Option.apply(this.configuration.getValue("ebean.servers." + key + ".settings.readOnlyDatasource").origin()) :
+                    Option.apply(this.configuration.root().origin());
+                EbeanConfigParser.throwConfigurationException(origin, ex.getMessage(), ex);
+            }
+        }
+
+        /**
+         * Resolve the model classes of a server, from the index generated by
+         * the sbt plugin or by scanning the classpath.
+         *
+         * @param classLoader The class loader holding the model classes
+         * @param key         The server name
+         * @param enhancement The enhancement patterns (ie: "models.*")
+         * @return The model classes
+         * @since 21.03.15
+         */
+        static Set<String> resolveModelClasses(final ClassLoader classLoader, final String key,
+                                               final List<String> enhancement) {
+            return EbeanConfigParser.loadModelsIndex(classLoader, key, enhancement)
+                .orElseGet(() -> EbeanConfigParser.scanModelClasses(classLoader, enhancement));
+        }
+
+        /**
+         * Load the model classes from the index generated by the sbt plugin
+         * at compile time. The index is only used if it has been generated
+         * for the same enhancement patterns than the current configuration.
+         *
+         * @param classLoader The class loader holding the index
+         * @param key         The server name
+         * @param enhancement The enhancement patterns (ie: "models.*")
+         * @return The model classes, or nothing if no usable index exists
+         * @since 21.03.01
+         */
+        private static Optional<Set<String>> loadModelsIndex(final ClassLoader classLoader, final String key,
+                                                             final List<String> enhancement) {
+            final URL indexUrl = classLoader.getResource(
+                String.format(MODELS_INDEX_RESOURCE, key)
+            );
+            if (indexUrl == null) {
+                return Optional.empty();
+            }
+            try (final BufferedReader reader = new BufferedReader(
+                new InputStreamReader(indexUrl.openStream(), StandardCharsets.UTF_8))) {
+                final List<String> lines = reader.lines()
+                    .map(String::trim)
+                    .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                    .collect(Collectors.toList());
+                final String header = "enhancement=" + String.join(",", enhancement);
+                if (lines.isEmpty() || !lines.get(0).equals(header)) {
+                    LOGGER.debug("Models index of server '{}' is outdated, falling back to classpath scanning", key);
+                    return Optional.empty();
+                }
+                return Optional.of(new HashSet<>(lines.subList(1, lines.size())));
+            } catch (final IOException ex) {
+                LOGGER.warn("Can't read models index of server '{}'", key, ex);
+                return Optional.empty();
+            }
+        }
+
+        /**
+         * Scan the classpath to resolve the model classes.
+         *
+         * @param classLoader The class loader to scan
+         * @param enhancement The enhancement patterns (ie: "models.*")
+         * @return The model classes
+         * @since 21.03.01
+         */
+        private static Set<String> scanModelClasses(final ClassLoader classLoader, final List<String> enhancement) {
+            final Set<String> classes = new HashSet<>();
+            enhancement.forEach(load -> {
+                if (load.endsWith(".*")) {
+                    final String packageName = load.substring(0, load.length() - 2);
+                    final Reflections reflections = new Reflections(
+                        new ConfigurationBuilder()
+                            .addUrls(ClasspathHelper.forPackage(packageName, classLoader))
+                            .filterInputsBy(new FilterBuilder().include(FilterBuilder.prefix(packageName + ".")))
+                            .setScanners(new TypeElementsScanner(), new TypeAnnotationsScanner(), new SubTypesScanner())
+                    );
+                    classes.addAll(
+                        reflections
+                            .getStore()
+                            .get(TypeElementsScanner.class.getSimpleName())
+                            .keySet()
+                    );
+                } else {
+                    classes.add(load);
+                }
+            });
+            return classes;
+        }
+
         /**
          * Add model classes to server configuration.
          *
@@ -409,7 +813,7 @@ public class DefaultEbeanConfig implements EbeanConfig {
 
         /**
          * <code>DataSource</code> wrapper to ensure that every retrieved
-         * connection has auto-commit disabled.
+         * connection has the expected auto-commit mode.
          *
          * @since 14.11.27
          */
@@ -420,38 +824,100 @@ public class DefaultEbeanConfig implements EbeanConfig {
              */
             final javax.sql.DataSource wrapped;
 
+            /**
+             * @since 21.03.05
+             */
+            final boolean autoCommit;
+
+            /**
+             * Metrics of the retrieved connections, {@code null} if disabled.
+             *
+             * @since 21.03.21
+             */
+            final ConnectionMetrics metrics;
+
             /**
              * Build a default instance.
              *
-             * @param wrapped The {@code DataSource} object to wrap
+             * @param wrapped    The {@code DataSource} object to wrap
+             * @param autoCommit The auto-commit mode of the retrieved connections
              * @since 14.11.27
              */
-            WrappingDatasource(final javax.sql.DataSource wrapped) {
+            WrappingDatasource(final javax.sql.DataSource wrapped, final boolean autoCommit) {
+                this(wrapped, autoCommit, null);
+            }
+
+            /**
+             * Build a default instance.
+             *
+             * @param wrapped    The {@code DataSource} object to wrap
+             * @param autoCommit The auto-commit mode of the retrieved connections
+             * @param metrics    The metrics of the retrieved connections, {@code null} to disable them
+             * @since 21.03.21
+             */
+            WrappingDatasource(final javax.sql.DataSource wrapped, final boolean autoCommit,
+                               final ConnectionMetrics metrics) {
                 this.wrapped = wrapped;
+                this.autoCommit = autoCommit;
+                this.metrics = metrics;
             }
 
             /**
              * Wrap the connection. This method ensure that the given
-             * connection have 'auto-commit' set to {@code false}.
+             * connection have 'auto-commit' set to the expected value.
+             * Pools usually track the auto-commit mode of their connections,
+             * so checking it first avoids a round trip to the database when
+             * the connection is already in the expected mode.
              *
              * @param connection The SQL connection
-             * @return The SQL connection with 'auto-commit' set to {@code false}
+             * @return The SQL connection with 'auto-commit' set to the expected value
              * @throws java.sql.SQLException If a database connection error occurs
              * @since 14.11.27
              */
-            static java.sql.Connection wrap(final java.sql.Connection connection) throws java.sql.SQLException {
-                connection.setAutoCommit(false);
+            java.sql.Connection wrap(final java.sql.Connection connection) throws java.sql.SQLException {
+                if (connection.getAutoCommit() != this.autoCommit) {
+                    connection.setAutoCommit(this.autoCommit);
+                }
                 return connection;
             }
 
+            /**
+             * Retrieve a connection, recording the metrics if enabled.
+             *
+             * @param supplier The connection supplier
+             * @return The SQL connection with 'auto-commit' set to the expected value
+             * @throws java.sql.SQLException If a database connection error occurs
+             * @since 21.03.21
+             */
+            private java.sql.Connection acquire(final ConnectionSupplier supplier) throws java.sql.SQLException {
+                if (this.metrics == null) {
+                    return this.wrap(supplier.get());
+                }
+                final long startedAt = System.nanoTime();
+                final java.sql.Connection connection;
+                try {
+                    connection = supplier.get();
+                } catch (final java.sql.SQLException ex) {
+                    this.metrics.acquireError();
+                    throw ex;
+                }
+                final ConnectionMetrics.Checkout checkout = this.metrics.checkout(System.nanoTime() - startedAt);
+                try {
+                    return new TrackedConnection(this.wrap(connection), this.metrics, checkout);
+                } catch (final java.sql.SQLException | RuntimeException ex) {
+                    this.metrics.checkin(checkout);
+                    throw ex;
+                }
+            }
+
             @Override
             public java.sql.Connection getConnection() throws java.sql.SQLException {
-                return WrappingDatasource.wrap(this.wrapped.getConnection());
+                return this.acquire(this.wrapped::getConnection);
             }
 
             @Override
             public java.sql.Connection getConnection(final String username, final String password) throws java.sql.SQLException {
-                return WrappingDatasource.wrap(this.wrapped.getConnection(username, password));
+                return this.acquire(() -> this.wrapped.getConnection(username, password));
             }
 
             @Override
@@ -488,6 +954,22 @@ public class DefaultEbeanConfig implements EbeanConfig {
             public java.util.logging.Logger getParentLogger() {
                 return null;
             }
+
+            /**
+             * Supplier of connections.
+             *
+             * @since 21.03.21
+             */
+            @FunctionalInterface
+            private interface ConnectionSupplier {
+
+                /**
+                 * @return A connection
+                 * @throws java.sql.SQLException If a database connection error occurs
+                 * @since 21.03.21
+                 */
+                java.sql.Connection get() throws java.sql.SQLException;
+            }
         }
     }
 }
@@ -0,0 +1,1266 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+package play.db.ebean.orm;
+
+import com.typesafe.config.Config;
+import io.ebean.Database;
+import io.ebean.Transaction;
+import io.ebean.TxScope;
+import io.ebean.annotation.Platform;
+import io.ebean.bean.EntityBean;
+import io.ebean.config.dbplatform.IdType;
+import io.ebeaninternal.api.SpiEbeanServer;
+import io.ebeaninternal.server.core.timezone.DataTimeZone;
+import io.ebeaninternal.server.deploy.BeanDescriptor;
+import io.ebeaninternal.server.deploy.BeanProperty;
+import io.ebeaninternal.server.deploy.BeanPropertyAssocOne;
+import io.ebeaninternal.server.deploy.generatedproperty.GeneratedProperty;
+import io.ebeaninternal.server.deploy.id.ImportedId;
+import io.ebeaninternal.server.type.DataBind;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.persistence.PersistenceException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.*;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Load large amounts of beans (ie: imports) much faster than saving them
+ * one by one. The beans are written in JDBC batches, inside a transaction
+ * per chunk of rows, and the L2 cache of the bean type is invalidated
+ * once per load instead of once per row.
+ * <ul>
+ * <li>{@link Mode#INSERT}: the beans are inserted by Ebean in batch mode.
+ * On PostgreSQL, when the driver is available, the chunks are sent with
+ * {@code COPY ... FROM STDIN} instead if no key has to be read back: the
+ * beans all have an id, or the id is a database identity and the
+ * generated keys are disabled.</li>
+ * <li>{@link Mode#UPSERT}: the beans are inserted, or updated if their id
+ * already exists, with the statement of the platform ({@code MERGE} on H2,
+ * {@code ON CONFLICT} on PostgreSQL, {@code ON DUPLICATE KEY} on MySQL and
+ * MariaDB). The {@code @Version} of the updated rows is incremented and
+ * their {@code @WhenCreated} is kept.</li>
+ * </ul>
+ * The values are bound with the scalar types of Ebean, so enums,
+ * converters, JSON and encrypted properties are written as Ebean does.
+ * The calls are blocking, run them on the {@link EbeanExecutionContext}
+ * of the server:
+ * <pre>
+ * ebeanExecutionContext.supplyAsync(database -&gt; bulkLoader.loadCsv(
+ *     database, reader, ',', true, row -&gt; new Task(row[0], row[1]),
+ *     bulkLoader.options(database.getName()).progress(report -&gt; LOGGER.info(report.toString()))
+ * ));
+ * </pre>
+ *
+ * @since 21.03.25
+ */
+@Singleton
+public class EbeanBulkLoader {
+
+    /**
+     * @since 21.03.25
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(EbeanBulkLoader.class);
+
+    /**
+     * @since 21.03.25
+     */
+    private static final String PG_BASE_CONNECTION = "org.postgresql.core.BaseConnection";
+
+    /**
+     * @since 21.03.25
+     */
+    private static final String PG_COPY_MANAGER = "org.postgresql.copy.CopyManager";
+
+    /**
+     * How the beans are written.
+     *
+     * @since 21.03.25
+     */
+    public enum Mode {
+
+        /**
+         * Insert the beans.
+         */
+        INSERT,
+
+        /**
+         * Insert the beans, or update them if their id already exists.
+         */
+        UPSERT
+    }
+
+    /**
+     * @since 21.03.25
+     */
+    private final Config configuration;
+
+    /**
+     * Build a new instance.
+     *
+     * @param configuration The current Play configuration
+     * @since 21.03.25
+     */
+    @Inject
+    public EbeanBulkLoader(final Config configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * Get the load options of a server, from its {@code bulk} block.
+     *
+     * @param serverName The server name
+     * @return New options, to adjust before the load
+     * @since 21.03.25
+     */
+    public Options options(final String serverName) {
+        final Options options = new Options();
+        final String path = "ebean.servers." + serverName + ".bulk";
+        if (this.configuration.hasPath(path)) {
+            final Config bulk = this.configuration.getConfig(path);
+            if (bulk.hasPath("batchSize")) {
+                options.batchSize(bulk.getInt("batchSize"));
+            }
+            if (bulk.hasPath("chunkSize")) {
+                options.chunkSize(bulk.getInt("chunkSize"));
+            }
+            if (bulk.hasPath("copy")) {
+                options.copy(bulk.getBoolean("copy"));
+            }
+            if (bulk.hasPath("generatedKeys")) {
+                options.generatedKeys(bulk.getBoolean("generatedKeys"));
+            }
+        }
+        return options;
+    }
+
+    /**
+     * Insert beans with the options of the server.
+     *
+     * @param database The server
+     * @param beans    The beans
+     * @param <T>      The type of the beans
+     * @return The report of the load
+     * @since 21.03.25
+     */
+    public <T> Report insert(final Database database, final Iterator<T> beans) {
+        return this.load(database, beans, this.options(database.getName()));
+    }
+
+    /**
+     * Insert or update beans with the options of the server.
+     *
+     * @param database The server
+     * @param beans    The beans, their id must be set
+     * @param <T>      The type of the beans
+     * @return The report of the load
+     * @since 21.03.25
+     */
+    public <T> Report upsert(final Database database, final Iterator<T> beans) {
+        return this.load(database, beans, this.options(database.getName()).mode(Mode.UPSERT));
+    }
+
+    /**
+     * Load a stream of beans. The stream is not closed.
+     *
+     * @param database The server
+     * @param beans    The beans
+     * @param options  The load options
+     * @param <T>      The type of the beans
+     * @return The report of the load
+     * @since 21.03.25
+     */
+    public <T> Report load(final Database database, final Stream<T> beans, final Options options) {
+        return this.load(database, beans.iterator(), options);
+    }
+
+    /**
+     * Load the rows of a CSV file (RFC 4180: fields may be enclosed in
+     * double quotes, and then contain separators, line breaks and doubled
+     * double quotes), each row being mapped to a bean.
+     *
+     * @param database  The server
+     * @param reader    The CSV content, not closed
+     * @param separator The field separator
+     * @param header    Skip the first row
+     * @param mapper    Map the fields of a row to a bean
+     * @param options   The load options
+     * @param <T>       The type of the beans
+     * @return The report of the load
+     * @since 21.03.25
+     */
+    public <T> Report loadCsv(final Database database, final Reader reader, final char separator,
+                              final boolean header, final Function<String[], T> mapper, final Options options) {
+        final CsvIterator rows = new CsvIterator(reader, separator);
+        if (header && rows.hasNext()) {
+            rows.next();
+        }
+        return this.load(database, new Iterator<T>() {
+
+            @Override
+            public boolean hasNext() {
+                return rows.hasNext();
+            }
+
+            @Override
+            public T next() {
+                return mapper.apply(rows.next());
+            }
+        }, options);
+    }
+
+    /**
+     * Load beans.
+     *
+     * @param database The server
+     * @param beans    The beans, all of the same entity type
+     * @param options  The load options
+     * @param <T>      The type of the beans
+     * @return The report of the load
+     * @since 21.03.25
+     */
+    public <T> Report load(final Database database, final Iterator<T> beans, final Options options) {
+        final Load<T> load = new Load<>(database, options);
+        try {
+            final List<T> chunk = new ArrayList<>(Math.min(options.chunkSize, 10_000));
+            while (beans.hasNext()) {
+                chunk.add(beans.next());
+                if (chunk.size() == options.chunkSize) {
+                    load.write(chunk);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                load.write(chunk);
+            }
+        } finally {
+            load.finish();
+        }
+        LOGGER.info(load.report.toString());
+        return load.report;
+    }
+
+    /**
+     * Options of a load.
+     *
+     * @since 21.03.25
+     */
+    public static final class Options {
+
+        /**
+         * @since 21.03.25
+         */
+        private Mode mode = Mode.INSERT;
+
+        /**
+         * @since 21.03.25
+         */
+        private int batchSize = 1000;
+
+        /**
+         * @since 21.03.25
+         */
+        private int chunkSize = 10_000;
+
+        /**
+         * @since 21.03.25
+         */
+        private boolean copy = true;
+
+        /**
+         * @since 21.03.25
+         */
+        private boolean generatedKeys = true;
+
+        /**
+         * @since 21.03.25
+         */
+        private Consumer<Report> progress = report -> {
+        };
+
+        /**
+         * @param mode How the beans are written
+         * @return The options
+         * @since 21.03.25
+         */
+        public Options mode(final Mode mode) {
+            this.mode = Objects.requireNonNull(mode);
+            return this;
+        }
+
+        /**
+         * @param batchSize The number of rows per JDBC batch
+         * @return The options
+         * @since 21.03.25
+         */
+        public Options batchSize(final int batchSize) {
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("batchSize must be greater than 0");
+            }
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * @param chunkSize The number of rows per transaction
+         * @return The options
+         * @since 21.03.25
+         */
+        public Options chunkSize(final int chunkSize) {
+            if (chunkSize < 1) {
+                throw new IllegalArgumentException("chunkSize must be greater than 0");
+            }
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * @param copy Use {@code COPY} to insert the rows on PostgreSQL, when the beans all have an id or
+         *             their id is a database identity and {@link #generatedKeys(boolean)} is disabled
+         * @return The options
+         * @since 21.03.25
+         */
+        public Options copy(final boolean copy) {
+            this.copy = copy;
+            return this;
+        }
+
+        /**
+         * @param generatedKeys Set the generated ids on the inserted beans, disable it to speed up the batches
+         * @return The options
+         * @since 21.03.25
+         */
+        public Options generatedKeys(final boolean generatedKeys) {
+            this.generatedKeys = generatedKeys;
+            return this;
+        }
+
+        /**
+         * @param progress Called with the report after each chunk
+         * @return The options
+         * @since 21.03.25
+         */
+        public Options progress(final Consumer<Report> progress) {
+            this.progress = Objects.requireNonNull(progress);
+            return this;
+        }
+    }
+
+    /**
+     * Progress of a load. It is updated after each chunk, and can be read
+     * from another thread.
+     *
+     * @since 21.03.25
+     */
+    public static final class Report {
+
+        /**
+         * @since 21.03.25
+         */
+        private final String serverName;
+
+        /**
+         * @since 21.03.25
+         */
+        private final Mode mode;
+
+        /**
+         * @since 21.03.25
+         */
+        private final long startedAt = System.nanoTime();
+
+        /**
+         * @since 21.03.25
+         */
+        private volatile String beanType;
+
+        /**
+         * @since 21.03.25
+         */
+        private volatile long rows;
+
+        /**
+         * @since 21.03.25
+         */
+        private volatile long copiedRows;
+
+        /**
+         * @since 21.03.25
+         */
+        private volatile int chunks;
+
+        /**
+         * @since 21.03.25
+         */
+        private volatile long elapsed;
+
+        /**
+         * @since 21.03.25
+         */
+        private volatile boolean done;
+
+        /**
+         * @param serverName The server name
+         * @param mode       How the beans are written
+         * @since 21.03.25
+         */
+        private Report(final String serverName, final Mode mode) {
+            this.serverName = serverName;
+            this.mode = mode;
+        }
+
+        /**
+         * @return The server name
+         * @since 21.03.25
+         */
+        public String getServerName() {
+            return this.serverName;
+        }
+
+        /**
+         * @return The class name of the beans, {@code null} until the first chunk is written
+         * @since 21.03.25
+         */
+        public String getBeanType() {
+            return this.beanType;
+        }
+
+        /**
+         * @return How the beans are written
+         * @since 21.03.25
+         */
+        public Mode getMode() {
+            return this.mode;
+        }
+
+        /**
+         * @return The number of rows written and committed
+         * @since 21.03.25
+         */
+        public long getRows() {
+            return this.rows;
+        }
+
+        /**
+         * @return The number of rows written with {@code COPY}
+         * @since 21.03.25
+         */
+        public long getCopiedRows() {
+            return this.copiedRows;
+        }
+
+        /**
+         * @return The number of chunks committed
+         * @since 21.03.25
+         */
+        public int getChunks() {
+            return this.chunks;
+        }
+
+        /**
+         * @return The time spent, until the last chunk or the end of the load
+         * @since 21.03.25
+         */
+        public Duration getElapsed() {
+            return Duration.ofNanos(this.elapsed);
+        }
+
+        /**
+         * @return The number of rows written per second
+         * @since 21.03.25
+         */
+        public double getRowsPerSecond() {
+            final long nanos = this.elapsed;
+            return nanos == 0 ? 0 : this.rows * 1_000_000_000d / nanos;
+        }
+
+        /**
+         * @return {@code true} once the load is over
+         * @since 21.03.25
+         */
+        public boolean isDone() {
+            return this.done;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                "ebean.bulk server=%s bean=%s mode=%s rows=%d copied=%d chunks=%d elapsed_ms=%d rows_per_s=%d done=%s",
+                this.serverName,
+                this.beanType,
+                this.mode,
+                this.rows,
+                this.copiedRows,
+                this.chunks,
+                this.getElapsed().toMillis(),
+                Math.round(this.getRowsPerSecond()),
+                this.done
+            );
+        }
+    }
+
+    /**
+     * A running load.
+     *
+     * @param <T> The type of the beans
+     * @since 21.03.25
+     */
+    private static final class Load<T> {
+
+        /**
+         * @since 21.03.25
+         */
+        private final Database database;
+
+        /**
+         * @since 21.03.25
+         */
+        private final Options options;
+
+        /**
+         * @since 21.03.25
+         */
+        private final Platform platform;
+
+        /**
+         * @since 21.03.25
+         */
+        private final Report report;
+
+        /**
+         * @since 21.03.25
+         */
+        private final DataTimeZone dataTimeZone;
+
+        /**
+         * @since 21.03.25
+         */
+        private Table table;
+
+        /**
+         * Cleared once the PostgreSQL driver is known to be unavailable.
+         *
+         * @since 21.03.25
+         */
+        private boolean useCopy;
+
+        /**
+         * @param database The server
+         * @param options  The load options
+         * @since 21.03.25
+         */
+        Load(final Database database, final Options options) {
+            this.database = database;
+            this.options = options;
+            this.platform = database.getPlatform().base();
+            this.report = new Report(database.getName(), options.mode);
+            this.dataTimeZone = ((SpiEbeanServer) database.getPluginApi()).getDataTimeZone();
+            this.useCopy = options.copy && this.platform == Platform.POSTGRES;
+        }
+
+        /**
+         * Write a chunk of beans in its own transaction.
+         *
+         * @param chunk The beans
+         * @since 21.03.25
+         */
+        void write(final List<T> chunk) {
+            if (this.table == null) {
+                this.table = Table.of(this.database, chunk.get(0));
+                this.report.beanType = this.table.descriptor.getFullName();
+            }
+            long copied = 0;
+            try (Transaction transaction = this.database.beginTransaction(TxScope.requiresNew())) {
+                transaction.setSkipCache(true);
+                if (this.options.mode == Mode.UPSERT) {
+                    this.executeBatch(transaction, this.table.upsertSql(this.platform), chunk);
+                } else if (this.useCopy && this.copy(transaction, chunk)) {
+                    copied = chunk.size();
+                } else {
+                    transaction.setBatchMode(true);
+                    transaction.setBatchSize(this.options.batchSize);
+                    transaction.setGetGeneratedKeys(this.options.generatedKeys);
+                    this.database.insertAll(chunk, transaction);
+                }
+                transaction.commit();
+            }
+            this.report.rows += chunk.size();
+            this.report.copiedRows += copied;
+            this.report.chunks += 1;
+            this.report.elapsed = System.nanoTime() - this.report.startedAt;
+            this.options.progress.accept(this.report);
+        }
+
+        /**
+         * Write the beans with a batched statement, binding the values
+         * with the scalar types of their properties.
+         *
+         * @param transaction The transaction
+         * @param sql         The statement
+         * @param chunk       The beans
+         * @since 21.03.25
+         */
+        private void executeBatch(final Transaction transaction, final String sql, final List<T> chunk) {
+            final Connection connection = transaction.getConnection();
+            final long now = System.currentTimeMillis();
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                int pending = 0;
+                for (final T bean : chunk) {
+                    final EntityBean entityBean = Table.entityBean(bean);
+                    final DataBind binder = new DataBind(this.dataTimeZone, statement, connection);
+                    for (final Column column : this.table.columns) {
+                        final Object value = column.value(entityBean, now);
+                        if (value == null) {
+                            if (column.id) {
+                                throw new IllegalArgumentException("The id of the beans must be set to upsert them");
+                            }
+                            binder.setNull(column.jdbcType());
+                        } else {
+                            column.bind(binder, value);
+                        }
+                    }
+                    statement.addBatch();
+                    pending += 1;
+                    if (pending == this.options.batchSize) {
+                        statement.executeBatch();
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    statement.executeBatch();
+                }
+            } catch (final SQLException ex) {
+                throw new PersistenceException("Upsert into " + this.table.name + " failed", ex);
+            }
+        }
+
+        /**
+         * Insert the beans with {@code COPY}.
+         *
+         * @param transaction The transaction
+         * @param chunk       The beans
+         * @return {@code false} if the beans can't be copied and must be inserted in batches
+         * @since 21.03.25
+         */
+        private boolean copy(final Transaction transaction, final List<T> chunk) {
+            final String unsupported = this.table.unsupported != null ? this.table.unsupported : this.table.uncopyable;
+            if (unsupported != null) {
+                LOGGER.debug("{}: no COPY, {}", this.report.beanType, unsupported);
+                this.useCopy = false;
+                return false;
+            }
+            // The id column is copied if all the beans have an id. It is left
+            // to the database if none has one, only when it is an identity and
+            // the generated keys are not wanted: COPY can't return them.
+            final boolean withId = this.table.columns.get(0).value(Table.entityBean(chunk.get(0)), 0) != null;
+            if (!withId && (!this.table.identity || this.options.generatedKeys)) {
+                return false;
+            }
+            final long now = System.currentTimeMillis();
+            final String data = this.table.copyData(chunk, withId, now);
+            if (data == null) {
+                return false;
+            }
+            try {
+                final ClassLoader classLoader = Optional
+                    .ofNullable(Thread.currentThread().getContextClassLoader())
+                    .orElse(EbeanBulkLoader.class.getClassLoader());
+                final Class<?> baseConnection = Class.forName(PG_BASE_CONNECTION, false, classLoader);
+                final Class<?> copyManager = Class.forName(PG_COPY_MANAGER, true, classLoader);
+                final Connection connection = transaction.getConnection();
+                copyManager
+                    .getMethod("copyIn", String.class, Reader.class)
+                    .invoke(
+                        copyManager.getConstructor(baseConnection).newInstance(connection.unwrap(baseConnection)),
+                        this.table.copySql(withId),
+                        new StringReader(data)
+                    );
+                this.table.copied(chunk, now);
+                return true;
+            } catch (final ClassNotFoundException | NoSuchMethodException ex) {
+                LOGGER.debug("{}: no COPY, the PostgreSQL driver is not available", this.report.beanType);
+                this.useCopy = false;
+                return false;
+            } catch (final InvocationTargetException ex) {
+                throw new PersistenceException("COPY into " + this.table.name + " failed", ex.getCause());
+            } catch (final ReflectiveOperationException | SQLException ex) {
+                throw new PersistenceException("COPY into " + this.table.name + " failed", ex);
+            }
+        }
+
+        /**
+         * End the load: invalidate the caches of the table once, and
+         * notify the other nodes of the cluster.
+         *
+         * @since 21.03.25
+         */
+        void finish() {
+            this.report.elapsed = System.nanoTime() - this.report.startedAt;
+            this.report.done = true;
+            if (this.report.rows > 0) {
+                this.database.externalModification(this.table.name, true, this.options.mode == Mode.UPSERT, false);
+            }
+        }
+    }
+
+    /**
+     * Table of an entity, and the columns written by the statements built
+     * by the loader.
+     *
+     * @since 21.03.25
+     */
+    private static final class Table {
+
+        /**
+         * @since 21.03.25
+         */
+        private final BeanDescriptor<?> descriptor;
+
+        /**
+         * @since 21.03.25
+         */
+        private final String name;
+
+        /**
+         * @since 21.03.25
+         */
+        private final List<Column> columns;
+
+        /**
+         * Why the columns can't be written by a statement built by the
+         * loader, {@code null} if they can.
+         *
+         * @since 21.03.25
+         */
+        private final String unsupported;
+
+        /**
+         * Why the columns can't be written with {@code COPY}, {@code null}
+         * if they can.
+         *
+         * @since 21.03.25
+         */
+        private final String uncopyable;
+
+        /**
+         * The id is generated by the database.
+         *
+         * @since 21.03.25
+         */
+        private final boolean identity;
+
+        /**
+         * @param descriptor  The descriptor of the entity
+         * @param columns     The columns, the id column first
+         * @param unsupported Why the columns can't be written, or {@code null}
+         * @param uncopyable  Why the columns can't be written with {@code COPY}, or {@code null}
+         * @since 21.03.25
+         */
+        private Table(final BeanDescriptor<?> descriptor, final List<Column> columns, final String unsupported,
+                      final String uncopyable) {
+            this.descriptor = descriptor;
+            this.name = descriptor.getBaseTable();
+            this.columns = columns;
+            this.unsupported = unsupported;
+            this.uncopyable = uncopyable;
+            this.identity = descriptor.getIdType() == IdType.IDENTITY;
+        }
+
+        /**
+         * Resolve the table of a bean.
+         *
+         * @param database The server
+         * @param bean     The bean
+         * @return The table
+         * @since 21.03.25
+         */
+        static Table of(final Database database, final Object bean) {
+            Table.entityBean(bean);
+            final BeanDescriptor<?> descriptor = (BeanDescriptor<?>) database.getPluginApi().getBeanType(bean.getClass());
+            if (descriptor == null || descriptor.getBaseTable() == null) {
+                throw new IllegalArgumentException(
+                    bean.getClass().getName() + " is not an entity of the Ebean server '" + database.getName() + "'"
+                );
+            }
+            final List<Column> columns = new ArrayList<>();
+            String unsupported = null;
+            String uncopyable = null;
+            final BeanProperty id = descriptor.getIdProperty();
+            if (id == null || id.isEmbedded()) {
+                unsupported = "no single id column";
+            } else if (descriptor.hasInheritance()) {
+                unsupported = "inheritance";
+            } else if (descriptor.propertiesEmbedded().length > 0) {
+                unsupported = "embedded properties";
+            } else {
+                columns.add(new Column(id.getDbColumn(), id, null, true));
+                for (final BeanProperty property : descriptor.propertiesBaseScalar()) {
+                    if (property.isDbInsertable() && !property.isTransient() && !property.isFormula()
+                        && !property.isSecondaryTable()) {
+                        if (property.isDbEncrypted()) {
+                            // Encrypted by a function of the database, with the key bound by Ebean
+                            unsupported = "database encrypted property " + property.getName();
+                            break;
+                        }
+                        if (property.isLocalEncrypted()) {
+                            uncopyable = "encrypted property " + property.getName();
+                        }
+                        columns.add(new Column(property.getDbColumn(), property, null, false));
+                    }
+                }
+                for (final BeanPropertyAssocOne<?> property : descriptor.propertiesOneImported()) {
+                    if (unsupported == null && property.isDbInsertable()) {
+                        final ImportedId importedId = property.getImportedId();
+                        if (importedId == null || !importedId.isScalar()) {
+                            unsupported = "composite foreign key " + property.getName();
+                            break;
+                        }
+                        columns.add(new Column(
+                            importedId.getDbColumn(),
+                            property,
+                            property.getTargetDescriptor().getIdProperty(),
+                            false
+                        ));
+                    }
+                }
+            }
+            return new Table(descriptor, columns, unsupported, uncopyable);
+        }
+
+        /**
+         * @param bean The bean
+         * @return The bean, as an enhanced entity bean
+         * @since 21.03.25
+         */
+        static EntityBean entityBean(final Object bean) {
+            if (bean instanceof EntityBean) {
+                return (EntityBean) bean;
+            }
+            throw new IllegalArgumentException(bean.getClass().getName() + " is not an enhanced entity bean");
+        }
+
+        /**
+         * Build the upsert statement of the platform.
+         *
+         * @param platform The base platform of the server
+         * @return The statement
+         * @since 21.03.25
+         */
+        String upsertSql(final Platform platform) {
+            if (this.unsupported != null) {
+                throw new UnsupportedOperationException(
+                    "Can't upsert " + this.descriptor.getFullName() + ": " + this.unsupported
+                );
+            }
+            final String id = this.columns.get(0).name;
+            final List<String> updated = this.columns.stream()
+                .filter(column -> column.updatable)
+                .map(column -> column.name)
+                .collect(Collectors.toList());
+            final Optional<String> version = this.columns.stream()
+                .filter(column -> column.version)
+                .map(column -> column.name)
+                .findFirst();
+            final String insert = this.columns(true) + " values (" + this.placeholders() + ")";
+            switch (platform) {
+                case H2: {
+                    // The source columns of a VALUES table are named C1, C2...
+                    final List<String> assignments = new ArrayList<>();
+                    for (int idx = 0; idx < this.columns.size(); ++idx) {
+                        if (this.columns.get(idx).updatable) {
+                            assignments.add("t." + this.columns.get(idx).name + " = s.C" + (idx + 1));
+                        }
+                    }
+                    version.ifPresent(column -> assignments.add("t." + column + " = t." + column + " + 1"));
+                    return "merge into " + this.name + " t using (values (" + this.placeholders() + ")) s"
+                        + " on (t." + id + " = s.C1)"
+                        + (assignments.isEmpty() ? "" : " when matched then update set " + String.join(", ", assignments))
+                        + " when not matched then insert " + this.columns(true) + " values ("
+                        + IntStream.rangeClosed(1, this.columns.size())
+                        .mapToObj(idx -> "s.C" + idx)
+                        .collect(Collectors.joining(", "))
+                        + ")";
+                }
+                case POSTGRES: {
+                    final List<String> assignments = updated.stream()
+                        .map(column -> column + " = excluded." + column)
+                        .collect(Collectors.toList());
+                    version.ifPresent(column -> assignments.add(column + " = " + this.name + "." + column + " + 1"));
+                    return "insert into " + this.name + " " + insert + " on conflict (" + id + ") " + (assignments.isEmpty()
+                        ? "do nothing"
+                        : "do update set " + String.join(", ", assignments));
+                }
+                case MYSQL:
+                case MARIADB: {
+                    final List<String> assignments = updated.stream()
+                        .map(column -> column + " = values(" + column + ")")
+                        .collect(Collectors.toList());
+                    version.ifPresent(column -> assignments.add(column + " = " + column + " + 1"));
+                    return "insert into " + this.name + " " + insert + " on duplicate key update " + (assignments.isEmpty()
+                        ? id + " = " + id
+                        : String.join(", ", assignments));
+                }
+                default:
+                    throw new UnsupportedOperationException("Upsert is not supported on " + platform);
+            }
+        }
+
+        /**
+         * Build the {@code COPY} statement.
+         *
+         * @param withId Copy the id column
+         * @return The statement
+         * @since 21.03.25
+         */
+        String copySql(final boolean withId) {
+            return "copy " + this.name + " " + this.columns(withId) + " from stdin with (format csv)";
+        }
+
+        /**
+         * Render the beans in the CSV format of {@code COPY}.
+         *
+         * @param chunk  The beans
+         * @param withId Render the id column
+         * @param now    The current time
+         * @return The data, or {@code null} if a value can't be copied
+         * @since 21.03.25
+         */
+        String copyData(final List<?> chunk, final boolean withId, final long now) {
+            final StringBuilder sb = new StringBuilder(chunk.size() * this.columns.size() * 16);
+            for (final Object bean : chunk) {
+                final EntityBean entityBean = Table.entityBean(bean);
+                if ((this.columns.get(0).value(entityBean, now) != null) != withId) {
+                    return null;
+                }
+                for (int i = withId ? 0 : 1; i < this.columns.size(); ++i) {
+                    final Object value = this.columns.get(i).value(entityBean, now);
+                    if (value != null) {
+                        final String text = Table.copyText(this.columns.get(i).toJdbcType(value));
+                        if (text == null) {
+                            return null;
+                        }
+                        sb.append('"').append(text.replace("\"", "\"\"")).append('"');
+                    }
+                    sb.append(i + 1 < this.columns.size() ? ',' : '\n');
+                }
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Set the generated values on the copied beans and mark them as
+         * loaded, as an insert by Ebean does.
+         *
+         * @param chunk The copied beans
+         * @param now   The current time used by {@link #copyData(List, boolean, long)}
+         * @since 21.03.25
+         */
+        void copied(final List<?> chunk, final long now) {
+            for (final Object bean : chunk) {
+                final EntityBean entityBean = Table.entityBean(bean);
+                for (final Column column : this.columns) {
+                    column.generate(entityBean, now);
+                }
+                entityBean._ebean_getIntercept().setLoaded();
+            }
+        }
+
+        /**
+         * @param value The JDBC value of a column
+         * @return The value in the text format of PostgreSQL, or {@code null} if it must be bound by Ebean
+         * @since 21.03.25
+         */
+        private static String copyText(final Object value) {
+            if (value instanceof CharSequence || value instanceof Number || value instanceof Boolean
+                || value instanceof Character || value instanceof UUID || value instanceof java.sql.Date
+                || value instanceof java.sql.Time || value instanceof Timestamp || value instanceof LocalDate
+                || value instanceof LocalTime || value instanceof LocalDateTime || value instanceof OffsetDateTime
+                || value instanceof Instant) {
+                return value.toString();
+            }
+            if (value instanceof java.util.Date) {
+                return new Timestamp(((java.util.Date) value).getTime()).toString();
+            }
+            return null;
+        }
+
+        /**
+         * @param withId Include the id column
+         * @return The list of the columns, in parentheses
+         * @since 21.03.25
+         */
+        private String columns(final boolean withId) {
+            return this.columns.stream()
+                .skip(withId ? 0 : 1)
+                .map(column -> column.name)
+                .collect(Collectors.joining(", ", "(", ")"));
+        }
+
+        /**
+         * @return The placeholders of the columns
+         * @since 21.03.25
+         */
+        private String placeholders() {
+            return String.join(", ", Collections.nCopies(this.columns.size(), "?"));
+        }
+    }
+
+    /**
+     * A column of a table.
+     *
+     * @since 21.03.25
+     */
+    private static final class Column {
+
+        /**
+         * @since 21.03.25
+         */
+        private final String name;
+
+        /**
+         * @since 21.03.25
+         */
+        private final BeanProperty property;
+
+        /**
+         * Id of the referenced bean, for a foreign key column.
+         *
+         * @since 21.03.25
+         */
+        private final BeanProperty targetId;
+
+        /**
+         * @since 21.03.25
+         */
+        private final boolean id;
+
+        /**
+         * @since 21.03.25
+         */
+        private final boolean version;
+
+        /**
+         * Set by the update part of an upsert ({@code @WhenCreated} columns
+         * are not, {@code @Version} columns are incremented).
+         *
+         * @since 21.03.25
+         */
+        private final boolean updatable;
+
+        /**
+         * @param name     The column name
+         * @param property The property mapped to the column
+         * @param targetId The id of the referenced bean for a foreign key, or {@code null}
+         * @param id       {@code true} for the id column
+         * @since 21.03.25
+         */
+        Column(final String name, final BeanProperty property, final BeanProperty targetId, final boolean id) {
+            this.name = name;
+            this.property = property;
+            this.targetId = targetId;
+            this.id = id;
+            this.version = targetId == null && property.isVersion();
+            final GeneratedProperty generated = property.getGeneratedProperty();
+            this.updatable = !id && !this.version && property.isDbUpdatable()
+                && (generated == null || generated.includeInUpdate());
+        }
+
+        /**
+         * Get the value of the column, generating it for the {@code @Version},
+         * {@code @WhenCreated} and {@code @WhenModified} properties not set.
+         *
+         * @param bean The bean
+         * @param now  The current time
+         * @return The value
+         * @since 21.03.25
+         */
+        Object value(final EntityBean bean, final long now) {
+            final Object value = this.property.getValue(bean);
+            if (this.targetId != null) {
+                return value == null ? null : this.targetId.getValue((EntityBean) value);
+            }
+            final GeneratedProperty generated = this.property.getGeneratedProperty();
+            if (value == null && generated != null && generated.includeInInsert()) {
+                return generated.getInsertValue(this.property, bean, now);
+            }
+            return value;
+        }
+
+        /**
+         * Set the generated value of the {@code @Version}, {@code @WhenCreated}
+         * and {@code @WhenModified} properties not set.
+         *
+         * @param bean The bean
+         * @param now  The current time
+         * @since 21.03.25
+         */
+        void generate(final EntityBean bean, final long now) {
+            if (this.targetId == null && this.property.getGeneratedProperty() != null
+                && this.property.getValue(bean) == null) {
+                final Object value = this.value(bean, now);
+                if (value != null) {
+                    this.property.setValue(bean, value);
+                }
+            }
+        }
+
+        /**
+         * Bind a value with the scalar type of the column.
+         *
+         * @param binder The binder of the statement
+         * @param value  The value, not {@code null}
+         * @throws SQLException If the value can't be bound
+         * @since 21.03.25
+         */
+        void bind(final DataBind binder, final Object value) throws SQLException {
+            this.scalarProperty().bind(binder, value);
+        }
+
+        /**
+         * @param value The value, not {@code null}
+         * @return The value converted by the scalar type of the column, as sent to the driver
+         * @since 21.03.25
+         */
+        Object toJdbcType(final Object value) {
+            return this.scalarProperty().getScalarType().toJdbcType(value);
+        }
+
+        /**
+         * @return The JDBC type of the column
+         * @since 21.03.25
+         */
+        int jdbcType() {
+            return this.scalarProperty().getDbType(false);
+        }
+
+        /**
+         * @return The property holding the scalar type of the column
+         * @since 21.03.25
+         */
+        private BeanProperty scalarProperty() {
+            return this.targetId == null ? this.property : this.targetId;
+        }
+    }
+
+    /**
+     * Iterator over the rows of a CSV content.
+     *
+     * @since 21.03.25
+     */
+    private static final class CsvIterator implements Iterator<String[]> {
+
+        /**
+         * @since 21.03.25
+         */
+        private final Reader reader;
+
+        /**
+         * @since 21.03.25
+         */
+        private final char separator;
+
+        /**
+         * @since 21.03.25
+         */
+        private String[] next;
+
+        /**
+         * @since 21.03.25
+         */
+        private boolean read;
+
+        /**
+         * @param reader    The CSV content
+         * @param separator The field separator
+         * @since 21.03.25
+         */
+        CsvIterator(final Reader reader, final char separator) {
+            this.reader = reader instanceof BufferedReader ? reader : new BufferedReader(reader);
+            this.separator = separator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!this.read) {
+                try {
+                    do {
+                        this.next = this.readRow();
+                    } while (this.next != null && this.next.length == 1 && this.next[0].isEmpty());
+                } catch (final IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                this.read = true;
+            }
+            return this.next != null;
+        }
+
+        @Override
+        public String[] next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            this.read = false;
+            return this.next;
+        }
+
+        /**
+         * @return The fields of the next row, or {@code null} at the end of the content
+         * @throws IOException If the content can't be read or a quoted field is not closed
+         * @since 21.03.25
+         */
+        private String[] readRow() throws IOException {
+            int c = this.reader.read();
+            if (c == -1) {
+                return null;
+            }
+            final List<String> fields = new ArrayList<>();
+            final StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c == -1) {
+                        throw new IOException("Unterminated quoted field: " + field);
+                    } else if (c == '"') {
+                        c = this.reader.read();
+                        if (c != '"') {
+                            quoted = false;
+                            continue;
+                        }
+                    }
+                    field.append((char) c);
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == this.separator) {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\n' || c == -1) {
+                    fields.add(field.toString());
+                    return fields.toArray(new String[0]);
+                } else if (c != '\r') {
+                    field.append((char) c);
+                }
+                c = this.reader.read();
+            }
+        }
+    }
+}
@@ -6,21 +6,34 @@ package play.db.ebean.orm;
 import com.typesafe.config.Config;
 import io.ebean.Database;
 import io.ebean.DatabaseFactory;
+import io.ebean.config.DatabaseConfig;
 import io.ebeaninternal.api.SpiEbeanServer;
-import io.ebeaninternal.dbmigration.model.CurrentModel;
+import io.ebeaninternal.dbmigration.migration.Column;
+import io.ebeaninternal.dbmigration.migration.CreateIndex;
+import io.ebeaninternal.dbmigration.migration.ForeignKey;
+import io.ebeaninternal.dbmigration.migration.UniqueConstraint;
+import io.ebeaninternal.dbmigration.model.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import play.Environment;
+import play.api.Configuration;
 import play.api.db.evolutions.DynamicEvolutions;
 import play.inject.ApplicationLifecycle;
+import scala.Option;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.CompletableFuture;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * A Play module that automatically manages Ebean configuration.
@@ -30,6 +43,26 @@ import java.util.concurrent.CompletableFuture;
 @Singleton
 public class EbeanDynamicEvolutions extends DynamicEvolutions {
 
+    /**
+     * @since 21.03.02
+     */
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * First line of the evolution scripts generated from the model.
+     *
+     * @since 21.03.14
+     */
+    private static final String GENERATED_HEADER = "# --- Created by Ebean DDL";
+
+    /**
+     * Header line of the generated evolution scripts holding the
+     * fingerprint of the model.
+     *
+     * @since 21.03.14
+     */
+    private static final String FINGERPRINT_HEADER = "# Model fingerprint: ";
+
     /**
      * @since 14.11.27
      */
@@ -50,6 +83,11 @@ public class EbeanDynamicEvolutions extends DynamicEvolutions {
      */
     private final Map<String, Database> servers = new HashMap<>();
 
+    /**
+     * @since 21.03.20
+     */
+    private final EbeanStartupReport startupReport;
+
     /**
      * Build a default instance.
      *
@@ -59,10 +97,27 @@ public class EbeanDynamicEvolutions extends DynamicEvolutions {
      * @param lifecycle     The current Play lifecycle instance
      * @since 14.11.27
      */
-    @Inject
     public EbeanDynamicEvolutions(final EbeanConfig ebeanConfig, final Environment environment,
                                   final Config configuration, final ApplicationLifecycle lifecycle) {
+        this(ebeanConfig, environment, configuration, lifecycle, new EbeanStartupReport());
+    }
+
+    /**
+     * Build a default instance.
+     *
+     * @param ebeanConfig   The current Ebean servers configuration
+     * @param configuration The current Play configuration
+     * @param environment   The current Play environment
+     * @param lifecycle     The current Play lifecycle instance
+     * @param startupReport The startup report to record the servers creation and DDL generation time into
+     * @since 21.03.20
+     */
+    @Inject
+    public EbeanDynamicEvolutions(final EbeanConfig ebeanConfig, final Environment environment,
+                                  final Config configuration, final ApplicationLifecycle lifecycle,
+                                  final EbeanStartupReport startupReport) {
         this.ebeanConfig = ebeanConfig;
+        this.startupReport = startupReport;
         this.configuration = configuration;
         this.environment = environment;
         this.start();
@@ -86,6 +141,20 @@ public class EbeanDynamicEvolutions extends DynamicEvolutions {
      * @since 14.11.27
      */
     public static String generateEvolutionScript(final Database server) {
+        return EbeanDynamicEvolutions.generateEvolutionScript(server, EbeanDynamicEvolutions.modelFingerprint(server));
+    }
+
+    /**
+     * Helper method that generates the required evolution
+     * to properly run Ebean.
+     *
+     * @param server      The EbeanServer
+     * @param fingerprint The fingerprint of the model, written in the header of the script
+     * @return The complete migration script generated by Ebean
+     * @see #modelFingerprint(Database)
+     * @since 21.03.14
+     */
+    public static String generateEvolutionScript(final Database server, final String fingerprint) {
         try {
             final SpiEbeanServer spiServer = (SpiEbeanServer) server.getPluginApi();
             final CurrentModel ddl = new CurrentModel(spiServer);
@@ -96,8 +165,9 @@ public class EbeanDynamicEvolutions extends DynamicEvolutions {
             }
 
             return (
-                "# --- Created by Ebean DDL\r\n" +
+                GENERATED_HEADER + "\r\n" +
                     "# To stop Ebean DDL generation, remove this comment and start using Evolutions\r\n" +
+                    FINGERPRINT_HEADER + fingerprint + "\r\n" +
                     "\r\n" +
                     "# --- !Ups\r\n" +
                     "\r\n" +
@@ -112,71 +182,518 @@ public class EbeanDynamicEvolutions extends DynamicEvolutions {
         }
     }
 
+    /**
+     * Compute a fingerprint of the model deployed on a server, without
+     * rendering the DDL. The fingerprint covers the Ebean version, the
+     * database platform and the mapping read from the bean descriptors,
+     * as used to generate the DDL: tables, columns with their type and
+     * constraints, foreign keys, unique constraints and indexes. Changes
+     * in the model classes that don't alter the mapping keep the same
+     * fingerprint.
+     *
+     * @param server The EbeanServer
+     * @return The fingerprint, as an hexadecimal string
+     * @since 21.03.14
+     */
+    public static String modelFingerprint(final Database server) {
+        final SpiEbeanServer spiServer = (SpiEbeanServer) server.getPluginApi();
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+        final Consumer<Object[]> update = values -> {
+            for (final Object value : values) {
+                digest.update((String.valueOf(value) + ':').getBytes(StandardCharsets.UTF_8));
+            }
+            digest.update((byte) '\n');
+        };
+        update.accept(new Object[]{Database.class.getPackage().getImplementationVersion()});
+        update.accept(new Object[]{spiServer.getDatabasePlatform().getName()});
+        final ModelContainer model = new CurrentModel(spiServer).read();
+        model.getTables()
+            .values()
+            .stream()
+            .sorted(Comparator.comparing(MTable::getName))
+            .forEach(table -> {
+                update.accept(new Object[]{
+                    "table", table.getSchema(), table.getName(), table.getPkName(), table.getComment(),
+                    table.isWithHistory(), table.isDraft(), table.isPartitioned(),
+                    table.getTablespace(), table.getIndexTablespace()
+                });
+                for (final MColumn mColumn : table.allColumns()) {
+                    final Column column = mColumn.createColumn();
+                    update.accept(new Object[]{
+                        "column", column.getName(), column.getType(), column.isNotnull(), column.isPrimaryKey(),
+                        column.isIdentity(), column.getDefaultValue(), column.getCheckConstraint(),
+                        column.getCheckConstraintName(), column.getUnique(), column.getUniqueOneToOne(),
+                        column.getReferences(), column.getForeignKeyName(), column.getForeignKeyIndex(),
+                        column.getForeignKeyOnDelete(), column.getForeignKeyOnUpdate(), column.getComment(),
+                        column.isHistoryExclude()
+                    });
+                }
+                for (final MCompoundUniqueConstraint mConstraint : table.getUniqueConstraints()) {
+                    final UniqueConstraint constraint = mConstraint.getUniqueConstraint();
+                    update.accept(new Object[]{
+                        "unique", constraint.getName(), constraint.getColumnNames(), constraint.isOneToOne(),
+                        constraint.getNullableColumns(), constraint.getPlatforms()
+                    });
+                }
+                for (final MCompoundForeignKey mForeignKey : table.getCompoundKeys()) {
+                    final ForeignKey foreignKey = mForeignKey.createForeignKey();
+                    update.accept(new Object[]{
+                        "foreignKey", foreignKey.getName(), foreignKey.getColumnNames(), foreignKey.getRefTableName(),
+                        foreignKey.getRefColumnNames(), foreignKey.getIndexName(), foreignKey.getOnDelete(),
+                        foreignKey.getOnUpdate()
+                    });
+                }
+            });
+        model.allIndexes()
+            .stream()
+            .map(MIndex::createIndex)
+            .sorted(Comparator.comparing(CreateIndex::getIndexName))
+            .forEach(index -> update.accept(new Object[]{
+                "index", index.getIndexName(), index.getTableName(), index.getColumns(), index.isUnique(),
+                index.isConcurrent(), index.getDefinition(), index.getPlatforms()
+            }));
+        final StringBuilder sb = new StringBuilder(64);
+        for (final byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
     /**
      * Initialise the Ebean servers.
      *
      * @since 14.11.27
      */
     public void start() {
-        this.ebeanConfig
-            .serverConfigs()
-            .forEach((key, serverConfig) ->
-                this.servers
-                    .put(
-                        key,
-                        DatabaseFactory.create(serverConfig)
-                    )
+        final Map<String, DatabaseConfig> serverConfigs = new HashMap<>();
+        final Map<String, LazyDatabase> lazyServers = new HashMap<>();
+        this.ebeanConfig.serverConfigs().forEach((key, serverConfig) -> {
+            if (this.configuration.hasPath("ebean.servers." + key + ".lazy")
+                && this.configuration.getBoolean("ebean.servers." + key + ".lazy")) {
+                if (this.migrationsEnabled()) {
+                    // The migrations run on startup, they would never be
+                    // applied to a server created later
+                    throw new Configuration(this.configuration).reportError(
+                        "ebean.servers." + key + ".lazy",
+                        "Ebean server '" + key + "' is lazy, its db-migration can't be applied:"
+                            + " disable 'ebean.dbmigration.enabled' or the lazy creation of the server",
+                        Option.empty()
+                    );
+                }
+                lazyServers.put(key, new LazyDatabase(serverConfig));
+            } else {
+                serverConfigs.put(key, serverConfig);
+            }
+        });
+        if (serverConfigs.size() > 1
+            && this.configuration.hasPath("ebean.bootstrap.parallel")
+            && this.configuration.getBoolean("ebean.bootstrap.parallel")) {
+            this.startConcurrently(serverConfigs);
+        } else {
+            serverConfigs.forEach((key, serverConfig) ->
+                this.servers.put(key, this.createServer(key, serverConfig, System.nanoTime()))
             );
+        }
+        // The lazy servers are registered once the Ebean registry has been
+        // initialised by the creation of the other servers. The proxy will
+        // create the server on first use and ignores the shutdown if it has
+        // never been used
+        lazyServers.forEach((key, lazyDatabase) -> {
+            lazyDatabase.register();
+            this.servers.put(key, lazyDatabase.proxy());
+        });
+    }
+
+    /**
+     * Initialise the Ebean servers on a bounded pool. Ebean serializes the
+     * creation of the servers, so the pool runs concurrently the work done
+     * before it: model classes initialisation and first connection to the
+     * database. The default server is prepared and created first on the
+     * calling thread, the other servers are created as soon as both it and
+     * their own preparation are done, so no pool thread ever waits for
+     * another task. If a server can't be created, the bootstrap is aborted
+     * and the error is thrown immediately.
+     *
+     * @param serverConfigs The servers configuration
+     * @since 21.03.02
+     */
+    private void startConcurrently(final Map<String, DatabaseConfig> serverConfigs) {
+        final int poolSize = Math.min(
+            serverConfigs.size(),
+            this.configuration.hasPath("ebean.bootstrap.poolSize")
+                ? this.configuration.getInt("ebean.bootstrap.poolSize")
+                : Runtime.getRuntime().availableProcessors()
+        );
+        final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, poolSize), runnable -> {
+            final Thread thread = new Thread(runnable, "ebean-bootstrap-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setContextClassLoader(contextClassLoader);
+            return thread;
+        });
+        final AtomicBoolean aborted = new AtomicBoolean();
+        // Each preparation gives the time it took, the build time of a server
+        // is the time of its own preparation and creation, without the wait
+        // for the default server
+        final Map<String, CompletableFuture<Long>> preparations = new HashMap<>();
+        final Map<String, CompletableFuture<Database>> creations = new HashMap<>();
+        try {
+            serverConfigs.forEach((key, serverConfig) -> {
+                if (!serverConfig.isDefaultServer()) {
+                    preparations.put(key, CompletableFuture.supplyAsync(() -> {
+                        final long preparedFrom = System.nanoTime();
+                        this.prepareServer(serverConfig);
+                        return System.nanoTime() - preparedFrom;
+                    }, executor));
+                }
+            });
+            serverConfigs.forEach((key, serverConfig) -> {
+                if (serverConfig.isDefaultServer()) {
+                    final long startedAt = System.nanoTime();
+                    this.prepareServer(serverConfig);
+                    this.servers.put(key, this.createServer(key, serverConfig, startedAt));
+                }
+            });
+            preparations.forEach((key, preparation) -> creations.put(key, preparation.thenApplyAsync(prepareTime -> {
+                if (aborted.get()) {
+                    throw new CancellationException("Ebean servers bootstrap has been aborted");
+                }
+                return this.createServer(key, serverConfigs.get(key), System.nanoTime() - prepareTime);
+            }, executor)));
+
+            // Wait for all the servers, or for the first failure
+            final CompletableFuture<Void> failure = new CompletableFuture<>();
+            creations.values().forEach(creation -> creation.whenComplete((server, ex) -> {
+                if (ex != null) {
+                    failure.completeExceptionally(ex);
+                }
+            }));
+            CompletableFuture.anyOf(
+                CompletableFuture.allOf(creations.values().toArray(new CompletableFuture<?>[0])),
+                failure
+            ).get();
+            creations.forEach((key, creation) -> this.servers.put(key, creation.join()));
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            this.abortStart(executor, aborted, creations.values());
+            throw new RuntimeException("Ebean servers bootstrap has been interrupted", ex);
+        } catch (final ExecutionException ex) {
+            this.abortStart(executor, aborted, creations.values());
+            Throwable cause = ex.getCause();
+            if (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        } catch (final RuntimeException ex) {
+            this.abortStart(executor, aborted, creations.values());
+            throw ex;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Create a server and record its creation time.
+     *
+     * @param key          The server name
+     * @param serverConfig The server configuration
+     * @param startedAt    The time, from {@link System#nanoTime()}, at which the creation of the server started
+     * @return The server
+     * @since 21.03.02
+     */
+    private Database createServer(final String key, final DatabaseConfig serverConfig, final long startedAt) {
+        final Database server = DatabaseFactory.create(serverConfig);
+        final long elapsed = System.nanoTime() - startedAt;
+        this.startupReport.record(key, EbeanStartupReport.Phase.SERVER_CREATE, elapsed);
+        this.logger.info("Ebean server '{}' built in {} ms", key, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        return server;
+    }
+
+    /**
+     * Do the work that can be done before the creation of the server:
+     * initialise model classes and open a first connection to the database.
+     *
+     * @param serverConfig The server configuration
+     * @since 21.03.02
+     */
+    private void prepareServer(final DatabaseConfig serverConfig) {
+        try {
+            for (final Class<?> clazz : serverConfig.getClasses()) {
+                Class.forName(clazz.getName(), true, clazz.getClassLoader());
+            }
+            if (serverConfig.getDataSource() != null) {
+                serverConfig.getDataSource().getConnection().close();
+            }
+        } catch (final ClassNotFoundException | SQLException ex) {
+            throw new RuntimeException("Can't prepare Ebean server '" + serverConfig.getName() + "'", ex);
+        }
     }
 
     /**
-     * Generate evolutions.
+     * Stop the bootstrap of the servers and shut down the servers already
+     * created. The creations in progress can't be interrupted: they are
+     * awaited, then the servers they have created are shut down too.
+     *
+     * @param executor  The bootstrap executor
+     * @param aborted   The flag preventing the creations not yet started
+     * @param creations The creations submitted to the executor
+     * @since 21.03.02
+     */
+    private void abortStart(final ExecutorService executor, final AtomicBoolean aborted,
+                            final Collection<CompletableFuture<Database>> creations) {
+        aborted.set(true);
+        executor.shutdownNow();
+        boolean interrupted = false;
+        while (!executor.isTerminated()) {
+            try {
+                executor.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (final InterruptedException ignore) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        for (final CompletableFuture<Database> creation : creations) {
+            if (creation.isDone() && !creation.isCompletedExceptionally()) {
+                creation.join().shutdown(false, false);
+            }
+        }
+        this.servers.forEach((key, server) -> server.shutdown(false, false));
+        this.servers.clear();
+    }
+
+    /**
+     * Generate evolutions. The DDL of a server is only rendered when the
+     * fingerprint of its model differs from the one recorded in the
+     * generated script, the servers whose model has changed are processed
+     * concurrently. Unless the migrations are enabled, the startup is then
+     * complete and its report is logged.
      *
      * @since 14.11.27
      */
     @Override
     public void create() {
         if (!this.environment.isProd()) {
+            final Map<String, String> changed = new HashMap<>();
             this.ebeanConfig
                 .serverConfigs()
                 .forEach((key, serverConfig) -> {
-                    final String evolutionScript;
                     if (!this.configuration.hasPath("play.evolutions.db." + key + ".enabled")
                         || this.configuration.getBoolean("play.evolutions.db." + key + ".enabled")) {
-                        evolutionScript = EbeanDynamicEvolutions.generateEvolutionScript(this.servers.get(key));
-                    } else {
-                        evolutionScript = null;
-                    }
-                    if (evolutionScript != null) {
-                        final File evolutions = this.environment.getFile("conf/evolutions/" + key + "/1.sql");
-                        try {
-                            String content = "";
-                            if (evolutions.exists()) {
-                                content = new String(
-                                    Files.readAllBytes(evolutions.toPath()),
-                                    StandardCharsets.UTF_8
-                                );
-                            }
-
-                            if (content.isEmpty() || content.startsWith("# --- Created by Ebean DDL")) {
-                                final File dirToCreate = this.environment.getFile("conf/evolutions/" + key);
-                                if (!dirToCreate.exists()) {
-                                    if (!this.environment.getFile("conf/evolutions/" + key).mkdirs()) {
-                                        throw new RuntimeException("Can't create 'Evolution' directory");
-                                    }
-                                }
-                                if (!content.equals(evolutionScript)) {
-                                    Files.write(
-                                        evolutions.toPath(),
-                                        evolutionScript.getBytes(StandardCharsets.UTF_8)
-                                    );
-                                }
+                        if (LazyDatabase.isPending(this.servers.get(key))) {
+                            this.logger.debug("Ebean server '{}' is lazy, DDL generation skipped", key);
+                            return;
+                        }
+                        final long startedAt = System.nanoTime();
+                        final List<String> header = this.readHeader(this.evolutionsFile(key));
+                        if (header.isEmpty() || header.get(0).startsWith(GENERATED_HEADER)) {
+                            final String fingerprint = EbeanDynamicEvolutions.modelFingerprint(this.servers.get(key));
+                            if (header.contains(FINGERPRINT_HEADER + fingerprint)) {
+                                this.logger.debug("Ebean server '{}' model unchanged, DDL generation skipped", key);
+                            } else {
+                                changed.put(key, fingerprint);
                             }
-                        } catch (final IOException e) {
-                            throw new RuntimeException(e);
                         }
+                        this.startupReport.record(
+                            key,
+                            EbeanStartupReport.Phase.DDL_GENERATION,
+                            System.nanoTime() - startedAt
+                        );
                     }
                 });
+            if (changed.size() > 1) {
+                this.writeConcurrently(changed);
+            } else {
+                changed.forEach(this::writeEvolutionScript);
+            }
+        }
+        if (!this.migrationsEnabled()) {
+            this.startupReport.complete();
+        }
+    }
+
+    /**
+     * Check whether the Ebean DB migrations run after the evolutions, in
+     * which case the startup is complete once they are applied.
+     *
+     * @return {@code true} if the migrations are enabled
+     * @since 21.03.20
+     */
+    private boolean migrationsEnabled() {
+        return EbeanDynamicEvolutions.migrationsEnabled(this.configuration);
+    }
+
+    /**
+     * Check whether the Ebean DB migrations are enabled: the setting
+     * {@code ebean.dbmigration.enabled} is set and the module is loaded.
+     *
+     * @param configuration The current Play configuration
+     * @return {@code true} if the migrations are enabled
+     * @since 21.03.20
+     */
+    static boolean migrationsEnabled(final Config configuration) {
+        final String module = "play.db.ebean.dbmigration.PlayModule";
+        return configuration.hasPath("ebean.dbmigration.enabled")
+            && configuration.getBoolean("ebean.dbmigration.enabled")
+            && configuration.hasPath("play.modules.enabled")
+            && configuration.getStringList("play.modules.enabled").contains(module)
+            && !(configuration.hasPath("play.modules.disabled")
+            && configuration.getStringList("play.modules.disabled").contains(module));
+    }
+
+    /**
+     * Generate the evolutions of several servers on a bounded pool.
+     *
+     * @param changed The fingerprint of the model of the servers to process, by server name
+     * @since 21.03.14
+     */
+    private void writeConcurrently(final Map<String, String> changed) {
+        final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(
+            Math.min(changed.size(), Runtime.getRuntime().availableProcessors()),
+            runnable -> {
+                final Thread thread = new Thread(runnable, "ebean-evolutions-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setContextClassLoader(contextClassLoader);
+                return thread;
+            }
+        );
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            changed.forEach((key, fingerprint) -> futures.add(
+                executor.submit(() -> this.writeEvolutionScript(key, fingerprint))
+            ));
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Ebean evolutions generation has been interrupted", ex);
+        } catch (final ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new RuntimeException(ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Render the DDL of a server and write it to its evolution script,
+     * unless the script content is already up to date.
+     *
+     * @param key         The server name
+     * @param fingerprint The fingerprint of the server model
+     * @since 21.03.14
+     */
+    private void writeEvolutionScript(final String key, final String fingerprint) {
+        final long startedAt = System.nanoTime();
+        final String evolutionScript = EbeanDynamicEvolutions.generateEvolutionScript(this.servers.get(key), fingerprint);
+        if (evolutionScript != null) {
+            EbeanDynamicEvolutions.updateEvolutionScript(this.evolutionsFile(key), evolutionScript, true);
+        }
+        final long elapsed = System.nanoTime() - startedAt;
+        this.startupReport.record(key, EbeanStartupReport.Phase.DDL_GENERATION, elapsed);
+        this.logger.info("Ebean server '{}' DDL generated in {} ms", key, TimeUnit.NANOSECONDS.toMillis(elapsed));
+    }
+
+    /**
+     * Update an evolution script, unless it is not generated by Ebean or
+     * its content is already up to date.
+     *
+     * @param evolutions      The evolution script file
+     * @param evolutionScript The content of the evolution script
+     * @param write           Write the file, or only check whether it is up to date
+     * @return {@code true} if the evolution script was out of date
+     * @since 21.03.15
+     */
+    static boolean updateEvolutionScript(final File evolutions, final String evolutionScript, final boolean write) {
+        try {
+            String content = "";
+            if (evolutions.exists()) {
+                content = new String(
+                    Files.readAllBytes(evolutions.toPath()),
+                    StandardCharsets.UTF_8
+                );
+            }
+
+            if ((content.isEmpty() || content.startsWith(GENERATED_HEADER))
+                && !EbeanDynamicEvolutions.normalizeLineEndings(content).equals(
+                EbeanDynamicEvolutions.normalizeLineEndings(evolutionScript))) {
+                if (write) {
+                    final File dirToCreate = evolutions.getParentFile();
+                    if (!dirToCreate.exists()) {
+                        if (!dirToCreate.mkdirs()) {
+                            throw new RuntimeException("Can't create 'Evolution' directory");
+                        }
+                    }
+                    Files.write(
+                        evolutions.toPath(),
+                        evolutionScript.getBytes(StandardCharsets.UTF_8)
+                    );
+                }
+                return true;
+            }
+            return false;
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param key The server name
+     * @return The evolution script of the server
+     * @since 21.03.14
+     */
+    private File evolutionsFile(final String key) {
+        return this.environment.getFile("conf/evolutions/" + key + "/1.sql");
+    }
+
+    /**
+     * Normalize the line endings of a script, the evolution scripts being
+     * possibly checked out with other line endings than the generated ones.
+     *
+     * @param script The script
+     * @return The script with {@code \n} line endings
+     * @since 21.03.14
+     */
+    private static String normalizeLineEndings(final String script) {
+        return script.replace("\r\n", "\n").replace('\r', '\n');
+    }
+
+    /**
+     * Read the comment lines at the beginning of an evolution script.
+     *
+     * @param evolutions The evolution script
+     * @return The first line and the comment lines following it, or an empty list if the file is empty or does not exist
+     * @since 21.03.14
+     */
+    private List<String> readHeader(final File evolutions) {
+        if (!evolutions.exists()) {
+            return Collections.emptyList();
+        }
+        final List<String> header = new ArrayList<>();
+        try (final BufferedReader reader = Files.newBufferedReader(evolutions.toPath(), StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            while (line != null && (header.isEmpty() || line.startsWith("#") && !line.contains("!Ups"))) {
+                header.add(line.trim());
+                line = reader.readLine();
+            }
+        } catch (final IOException ex) {
+            throw new RuntimeException(ex);
         }
+        return header;
     }
 }
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+package play.db.ebean.orm;
+
+import io.ebean.DB;
+import io.ebean.Database;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import scala.concurrent.ExecutionContextExecutor;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Execution context dedicated to the blocking calls of an Ebean server,
+ * so they do not run on the Akka default dispatcher. Its concurrency is
+ * bounded by the size of the connection pool of the server. It runs the
+ * calls on a pool of platform threads, or on virtual threads when enabled
+ * and supported by the JDK.
+ * <p>
+ * The execution context of the default server is injected as is, the
+ * other ones are qualified with the server name:
+ * {@code @Named("secondary") EbeanExecutionContext}.
+ * </p>
+ *
+ * @since 21.03.23
+ */
+public class EbeanExecutionContext implements ExecutionContextExecutor {
+
+    /**
+     * @since 21.03.23
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(EbeanExecutionContext.class);
+
+    /**
+     * @since 21.03.23
+     */
+    private final String serverName;
+
+    /**
+     * @since 21.03.23
+     */
+    private final int concurrency;
+
+    /**
+     * @since 21.03.23
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Bounds the concurrency of the virtual threads, {@code null} on a
+     * pool of platform threads.
+     *
+     * @since 21.03.23
+     */
+    private final Semaphore permits;
+
+    /**
+     * @since 21.03.23
+     */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * @since 21.03.23
+     */
+    private final AtomicInteger peakQueued = new AtomicInteger();
+
+    /**
+     * @since 21.03.23
+     */
+    private final AtomicInteger active = new AtomicInteger();
+
+    /**
+     * @since 21.03.23
+     */
+    private final LongAdder completed = new LongAdder();
+
+    /**
+     * Build a new instance.
+     *
+     * @param serverName     The server name
+     * @param concurrency    The max number of calls running at the same time
+     * @param virtualThreads Run the calls on virtual threads, if supported by the JDK
+     * @since 21.03.23
+     */
+    public EbeanExecutionContext(final String serverName, final int concurrency, final boolean virtualThreads) {
+        this.serverName = serverName;
+        this.concurrency = concurrency;
+        final ExecutorService virtualExecutor = virtualThreads ? EbeanExecutionContext.newVirtualThreadExecutor() : null;
+        if (virtualExecutor != null) {
+            this.executor = virtualExecutor;
+            this.permits = new Semaphore(concurrency);
+        } else {
+            if (virtualThreads) {
+                LOGGER.info("Virtual threads are not available, Ebean server '{}' uses a thread pool", serverName);
+            }
+            final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+            final AtomicInteger threadCount = new AtomicInteger();
+            final ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                concurrency,
+                concurrency,
+                60,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "ebean-" + serverName + "-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setContextClassLoader(contextClassLoader);
+                    return thread;
+                }
+            );
+            pool.allowCoreThreadTimeOut(true);
+            this.executor = pool;
+            this.permits = null;
+        }
+    }
+
+    /**
+     * Create an executor starting a virtual thread per task.
+     *
+     * @return The executor, or {@code null} if the JDK does not support virtual threads
+     * @since 21.03.23
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (final ReflectiveOperationException | RuntimeException ex) {
+            // Not available before JDK 21, or preview features not enabled
+            return null;
+        }
+    }
+
+    /**
+     * Run a call on the server and get its result asynchronously.
+     *
+     * @param call The call to run
+     * @param <T>  The type of the result
+     * @return The result of the call
+     * @since 21.03.23
+     */
+    public <T> CompletionStage<T> supplyAsync(final Function<Database, T> call) {
+        return CompletableFuture.supplyAsync(() -> call.apply(DB.byName(this.serverName)), this);
+    }
+
+    /**
+     * Run a call on the server asynchronously.
+     *
+     * @param call The call to run
+     * @return Completed once the call has run
+     * @since 21.03.23
+     */
+    public CompletionStage<Void> runAsync(final Consumer<Database> call) {
+        return CompletableFuture.runAsync(() -> call.accept(DB.byName(this.serverName)), this);
+    }
+
+    @Override
+    public void execute(final Runnable runnable) {
+        this.peakQueued.accumulateAndGet(this.queued.incrementAndGet(), Math::max);
+        try {
+            this.executor.execute(() -> this.run(runnable));
+        } catch (final RejectedExecutionException ex) {
+            this.queued.decrementAndGet();
+            throw ex;
+        }
+    }
+
+    /**
+     * Run a task, once a permit is available on virtual threads. A task
+     * interrupted while waiting for its permit, on shutdown, still runs
+     * with its interrupt status set so its result is completed instead
+     * of being left pending.
+     *
+     * @param runnable The task
+     * @since 21.03.23
+     */
+    private void run(final Runnable runnable) {
+        boolean acquired = false;
+        if (this.permits != null) {
+            try {
+                this.permits.acquire();
+                acquired = true;
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        this.queued.decrementAndGet();
+        this.active.incrementAndGet();
+        try {
+            runnable.run();
+        } finally {
+            this.active.decrementAndGet();
+            this.completed.increment();
+            if (acquired) {
+                this.permits.release();
+            }
+        }
+    }
+
+    @Override
+    public void reportFailure(final Throwable cause) {
+        LOGGER.error("Ebean server '{}' execution context failure", this.serverName, cause);
+    }
+
+    /**
+     * Stop the execution context. The running calls are interrupted.
+     *
+     * @since 21.03.23
+     */
+    public void shutdown() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * @return The server name
+     * @since 21.03.23
+     */
+    public String getServerName() {
+        return this.serverName;
+    }
+
+    /**
+     * @return The max number of calls running at the same time
+     * @since 21.03.23
+     */
+    public int getConcurrency() {
+        return this.concurrency;
+    }
+
+    /**
+     * @return {@code true} if the calls run on virtual threads
+     * @since 21.03.23
+     */
+    public boolean isVirtual() {
+        return this.permits != null;
+    }
+
+    /**
+     * @return The number of calls waiting to run
+     * @since 21.03.23
+     */
+    public int getQueueDepth() {
+        return this.queued.get();
+    }
+
+    /**
+     * @return The max number of calls waiting to run at the same time
+     * @since 21.03.23
+     */
+    public int getPeakQueueDepth() {
+        return this.peakQueued.get();
+    }
+
+    /**
+     * @return The number of calls running
+     * @since 21.03.23
+     */
+    public int getActive() {
+        return this.active.get();
+    }
+
+    /**
+     * @return The number of calls run
+     * @since 21.03.23
+     */
+    public long getCompleted() {
+        return this.completed.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+            "EbeanExecutionContext(%s, %s, active=%d/%d, queued=%d, peakQueued=%d, completed=%d)",
+            this.serverName,
+            this.isVirtual() ? "virtual" : "pool",
+            this.getActive(),
+            this.concurrency,
+            this.getQueueDepth(),
+            this.getPeakQueueDepth(),
+            this.getCompleted()
+        );
+    }
+}
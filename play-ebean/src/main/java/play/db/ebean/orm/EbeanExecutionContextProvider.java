@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+package play.db.ebean.orm;
+
+import com.typesafe.config.Config;
+import play.inject.ApplicationLifecycle;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Provides the execution context of an Ebean server. Its concurrency is
+ * read from {@code ebean.servers.<server>.executor.poolSize} and defaults
+ * to the max size of the HikariCP pool of the Play database.
+ *
+ * @since 21.03.23
+ */
+final class EbeanExecutionContextProvider implements Provider<EbeanExecutionContext> {
+
+    /**
+     * Default max size of the HikariCP pool of the Play databases.
+     *
+     * @since 21.03.23
+     */
+    private static final int DEFAULT_POOL_SIZE = 10;
+
+    /**
+     * @since 21.03.23
+     */
+    private final String serverName;
+
+    /**
+     * @since 21.03.23
+     */
+    @Inject
+    private Config configuration;
+
+    /**
+     * @since 21.03.23
+     */
+    @Inject
+    private ApplicationLifecycle lifecycle;
+
+    /**
+     * @since 21.03.23
+     */
+    private EbeanExecutionContext executionContext;
+
+    /**
+     * Build a new instance.
+     *
+     * @param serverName The server name
+     * @since 21.03.23
+     */
+    EbeanExecutionContextProvider(final String serverName) {
+        this.serverName = serverName;
+    }
+
+    @Override
+    public synchronized EbeanExecutionContext get() {
+        if (this.executionContext == null) {
+            final String path = "ebean.servers." + this.serverName + ".executor";
+            final int poolSize;
+            if (this.configuration.hasPath(path + ".poolSize")) {
+                poolSize = this.configuration.getInt(path + ".poolSize");
+            } else if (this.configuration.hasPath("db." + this.serverName + ".hikaricp.maximumPoolSize")) {
+                poolSize = this.configuration.getInt("db." + this.serverName + ".hikaricp.maximumPoolSize");
+            } else if (this.configuration.hasPath("play.db.prototype.hikaricp.maximumPoolSize")) {
+                poolSize = this.configuration.getInt("play.db.prototype.hikaricp.maximumPoolSize");
+            } else {
+                poolSize = DEFAULT_POOL_SIZE;
+            }
+            final EbeanExecutionContext created = new EbeanExecutionContext(
+                this.serverName,
+                Math.max(1, poolSize),
+                this.configuration.hasPath(path + ".virtualThreads")
+                    && this.configuration.getBoolean(path + ".virtualThreads")
+            );
+            this.lifecycle.addStopHook(() -> {
+                created.shutdown();
+                return CompletableFuture.completedFuture(null);
+            });
+            this.executionContext = created;
+        }
+        return this.executionContext;
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+package play.db.ebean.orm;
+
+import io.ebean.DB;
+import io.ebean.Database;
+import io.ebean.config.DatabaseConfig;
+import io.ebean.meta.BasicMetricVisitor;
+import io.ebean.meta.MetaQueryMetric;
+import io.ebean.meta.MetaTimedMetric;
+import io.ebean.meta.ServerMetrics;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.sql.DataSource;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Access to the query and transaction metrics collected by the Ebean
+ * servers. Times are expressed in microseconds.
+ *
+ * @since 21.03.09
+ */
+@Singleton
+public class EbeanMetrics {
+
+    /**
+     * Sort the metrics by total execution time, highest first.
+     *
+     * @since 21.03.09
+     */
+    public static final Comparator<MetaTimedMetric> BY_TOTAL_TIME =
+        Comparator.comparingLong(MetaTimedMetric::getTotal).reversed();
+
+    /**
+     * Sort the metrics by mean execution time, highest first.
+     *
+     * @since 21.03.09
+     */
+    public static final Comparator<MetaTimedMetric> BY_MEAN_TIME =
+        Comparator.comparingLong(MetaTimedMetric::getMean).reversed();
+
+    /**
+     * Sort the metrics by max execution time, highest first.
+     *
+     * @since 21.03.09
+     */
+    public static final Comparator<MetaTimedMetric> BY_MAX_TIME =
+        Comparator.comparingLong(MetaTimedMetric::getMax).reversed();
+
+    /**
+     * Sort the metrics by execution count, highest first.
+     *
+     * @since 21.03.09
+     */
+    public static final Comparator<MetaTimedMetric> BY_COUNT =
+        Comparator.comparingLong(MetaTimedMetric::getCount).reversed();
+
+    /**
+     * @since 21.03.09
+     */
+    private final EbeanConfig ebeanConfig;
+
+    /**
+     * Build a new instance.
+     *
+     * @param ebeanConfig The Ebean configuration
+     * @since 21.03.09
+     */
+    @Inject
+    public EbeanMetrics(final EbeanConfig ebeanConfig) {
+        this.ebeanConfig = ebeanConfig;
+    }
+
+    /**
+     * Get the names of the configured servers.
+     *
+     * @return The server names
+     * @since 21.03.09
+     */
+    public Set<String> serverNames() {
+        return new TreeSet<>(this.ebeanConfig.serverConfigs().keySet());
+    }
+
+    /**
+     * Get the metrics collected by a server since the last reset.
+     *
+     * @param serverName The server name
+     * @return The metrics
+     * @since 21.03.09
+     */
+    public ServerMetrics snapshot(final String serverName) {
+        return this.visit(serverName, false);
+    }
+
+    /**
+     * Get the metrics collected by a server since the last reset, then
+     * reset them.
+     *
+     * @param serverName The server name
+     * @return The metrics
+     * @since 21.03.09
+     */
+    public ServerMetrics collect(final String serverName) {
+        return this.visit(serverName, true);
+    }
+
+    /**
+     * Reset the metrics of a server.
+     *
+     * @param serverName The server name
+     * @since 21.03.09
+     */
+    public void reset(final String serverName) {
+        final Database database = this.database(serverName);
+        if (database != null) {
+            database.getMetaInfoManager().resetAllMetrics();
+        }
+    }
+
+    /**
+     * Get the metrics of the connections retrieved by a server, enabled
+     * with the {@code connectionMetrics} or {@code connectionLeakThreshold}
+     * settings.
+     *
+     * @param serverName The server name
+     * @return The connection metrics, or {@code null} if they are not enabled
+     * @since 21.03.21
+     */
+    public ConnectionMetrics connectionMetrics(final String serverName) {
+        return EbeanMetrics.connectionMetrics(this.serverConfig(serverName).getDataSource());
+    }
+
+    /**
+     * Get the metrics of the connections retrieved by a server from its
+     * read-only datasource.
+     *
+     * @param serverName The server name
+     * @return The connection metrics, or {@code null} if they are not enabled or there is no read-only datasource
+     * @since 21.03.21
+     */
+    public ConnectionMetrics readOnlyConnectionMetrics(final String serverName) {
+        return EbeanMetrics.connectionMetrics(this.serverConfig(serverName).getReadOnlyDataSource());
+    }
+
+    /**
+     * Get the top query metrics.
+     *
+     * @param metrics    The server metrics
+     * @param comparator The order of the metrics
+     * @param limit      The max number of metrics to return
+     * @return The query metrics
+     * @since 21.03.09
+     */
+    public static List<MetaQueryMetric> topQueries(final ServerMetrics metrics,
+                                                   final Comparator<MetaTimedMetric> comparator,
+                                                   final int limit) {
+        return metrics.getQueryMetrics()
+            .stream()
+            .sorted(comparator)
+            .limit(limit)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Render the metrics of a server as a plain text report.
+     *
+     * @param serverName The server name
+     * @param metrics    The server metrics
+     * @param limit      The max number of queries per section
+     * @return The report
+     * @since 21.03.09
+     */
+    public static String report(final String serverName, final ServerMetrics metrics, final int limit) {
+        final StringBuilder sb = new StringBuilder(4096);
+        sb.append("Ebean server '").append(serverName).append("' at ").append(Instant.now()).append("\n\n");
+
+        sb.append("Transactions\n");
+        EbeanMetrics.appendHeader(sb);
+        metrics.getTimedMetrics()
+            .stream()
+            .filter(metric -> metric.getName().startsWith("txn."))
+            .sorted(BY_COUNT)
+            .forEach(metric -> EbeanMetrics.appendMetric(sb, metric, false));
+
+        sb.append("\nSlowest queries (mean time)\n");
+        EbeanMetrics.appendHeader(sb);
+        EbeanMetrics.topQueries(metrics, BY_MEAN_TIME, limit).forEach(metric -> EbeanMetrics.appendMetric(sb, metric, true));
+
+        sb.append("\nMost expensive queries (total time)\n");
+        EbeanMetrics.appendHeader(sb);
+        EbeanMetrics.topQueries(metrics, BY_TOTAL_TIME, limit).forEach(metric -> EbeanMetrics.appendMetric(sb, metric, true));
+
+        sb.append("\nMost frequent queries\n");
+        EbeanMetrics.appendHeader(sb);
+        EbeanMetrics.topQueries(metrics, BY_COUNT, limit).forEach(metric -> EbeanMetrics.appendMetric(sb, metric, true));
+        return sb.toString();
+    }
+
+    /**
+     * Collect the metrics of a server.
+     *
+     * @param serverName The server name
+     * @param reset      Reset the metrics once collected
+     * @return The metrics
+     * @since 21.03.09
+     */
+    private ServerMetrics visit(final String serverName, final boolean reset) {
+        final BasicMetricVisitor visitor = new BasicMetricVisitor(reset, true, true, false);
+        final Database database = this.database(serverName);
+        if (database != null) {
+            database.getMetaInfoManager().visitMetrics(visitor);
+        }
+        return visitor;
+    }
+
+    /**
+     * @param dataSource The datasource of a server
+     * @return The connection metrics, or {@code null} if they are not enabled
+     * @since 21.03.21
+     */
+    private static ConnectionMetrics connectionMetrics(final DataSource dataSource) {
+        return dataSource instanceof DefaultEbeanConfig.EbeanConfigParser.WrappingDatasource
+            ? ((DefaultEbeanConfig.EbeanConfigParser.WrappingDatasource) dataSource).metrics
+            : null;
+    }
+
+    /**
+     * Get the configuration of a server.
+     *
+     * @param serverName The server name
+     * @return The server configuration
+     * @throws IllegalArgumentException If the server is not configured
+     * @since 21.03.21
+     */
+    private DatabaseConfig serverConfig(final String serverName) {
+        final DatabaseConfig serverConfig = this.ebeanConfig.serverConfigs().get(serverName);
+        if (serverConfig == null) {
+            throw new IllegalArgumentException("Unknown Ebean server '" + serverName + "'");
+        }
+        return serverConfig;
+    }
+
+    /**
+     * Get a started server.
+     *
+     * @param serverName The server name
+     * @return The server, or {@code null} if it has not been created yet
+     * @throws IllegalArgumentException If the server is not configured
+     * @since 21.03.09
+     */
+    private Database database(final String serverName) {
+        if (!this.ebeanConfig.serverConfigs().containsKey(serverName)) {
+            throw new IllegalArgumentException("Unknown Ebean server '" + serverName + "'");
+        }
+        final Database database = DB.byName(serverName);
+        return LazyDatabase.isPending(database) ? null : database;
+    }
+
+    /**
+     * @param sb The report
+     * @since 21.03.09
+     */
+    private static void appendHeader(final StringBuilder sb) {
+        sb.append(String.format("  %10s %14s %12s %12s  %s%n", "count", "total (us)", "mean (us)", "max (us)", "name"));
+    }
+
+    /**
+     * @param sb      The report
+     * @param metric  The metric to append
+     * @param details Append the location and the SQL of the query
+     * @since 21.03.09
+     */
+    private static void appendMetric(final StringBuilder sb, final MetaTimedMetric metric, final boolean details) {
+        sb.append(String.format(
+            "  %10d %14d %12d %12d  %s%n",
+            metric.getCount(),
+            metric.getTotal(),
+            metric.getMean(),
+            metric.getMax(),
+            metric.getName()
+        ));
+        if (details) {
+            if (metric.getLocation() != null) {
+                sb.append("      at ").append(metric.getLocation()).append('\n');
+            }
+            if (metric instanceof MetaQueryMetric && ((MetaQueryMetric) metric).getSql() != null) {
+                sb.append("      ").append(((MetaQueryMetric) metric).getSql()).append('\n');
+            }
+        }
+    }
+}
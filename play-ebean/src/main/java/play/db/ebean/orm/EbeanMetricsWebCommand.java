@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+package play.db.ebean.orm;
+
+import com.typesafe.config.Config;
+import io.ebean.meta.ServerMetrics;
+import play.api.mvc.RequestHeader;
+import play.api.mvc.Result;
+import play.core.BuildLink;
+import play.core.HandleWebCommandSupport;
+import play.core.WebCommands;
+import play.http.HttpEntity;
+import play.mvc.Http;
+import scala.Option;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.File;
+import java.util.Collections;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Web command displaying the Ebean metrics on {@code /@ebean/metrics} and
+ * {@code /@ebean/metrics/<server>}. Add {@code reset=true} to the query
+ * string to reset the metrics once displayed, and {@code limit=<n>} to
+ * change the number of queries per section.
+ *
+ * @since 21.03.09
+ */
+@Singleton
+public class EbeanMetricsWebCommand implements HandleWebCommandSupport {
+
+    /**
+     * @since 21.03.09
+     */
+    private static final Pattern METRICS_PATH = Pattern.compile("^/@ebean/metrics(?:/([a-zA-Z0-9_\\-]+))?/?$");
+
+    /**
+     * @since 21.03.09
+     */
+    private static final int DEFAULT_LIMIT = 10;
+
+    /**
+     * @since 21.03.09
+     */
+    private final EbeanMetrics ebeanMetrics;
+
+    /**
+     * Build a new instance.
+     *
+     * @param configuration The application configuration
+     * @param webCommands   The web commands
+     * @param ebeanMetrics  The Ebean metrics
+     * @since 21.03.09
+     */
+    @Inject
+    public EbeanMetricsWebCommand(final Config configuration, final WebCommands webCommands, final EbeanMetrics ebeanMetrics) {
+        this.ebeanMetrics = ebeanMetrics;
+        if (!configuration.hasPath("ebean.metrics.webCommand") || configuration.getBoolean("ebean.metrics.webCommand")) {
+            webCommands.addHandler(this);
+        }
+    }
+
+    @Override
+    public Option<Result> handleWebCommand(final RequestHeader request, final BuildLink buildLink, final File path) {
+        final Matcher matcher = METRICS_PATH.matcher(request.path());
+        if (!matcher.matches()) {
+            return Option.empty();
+        }
+        final boolean reset = "true".equals(request.getQueryString("reset").getOrElse(() -> "false"));
+        final int limit;
+        try {
+            limit = Integer.parseInt(request.getQueryString("limit").getOrElse(() -> String.valueOf(DEFAULT_LIMIT)));
+        } catch (final NumberFormatException ex) {
+            return EbeanMetricsWebCommand.text(Http.Status.BAD_REQUEST, "Invalid limit");
+        }
+        if (limit < 1) {
+            return EbeanMetricsWebCommand.text(Http.Status.BAD_REQUEST, "Invalid limit");
+        }
+
+        final Set<String> serverNames = matcher.group(1) == null
+            ? this.ebeanMetrics.serverNames()
+            : Collections.singleton(matcher.group(1));
+        final StringBuilder sb = new StringBuilder();
+        for (final String serverName : serverNames) {
+            if (!this.ebeanMetrics.serverNames().contains(serverName)) {
+                return EbeanMetricsWebCommand.text(Http.Status.NOT_FOUND, "Unknown Ebean server '" + serverName + "'");
+            }
+            final ServerMetrics metrics = reset
+                ? this.ebeanMetrics.collect(serverName)
+                : this.ebeanMetrics.snapshot(serverName);
+            sb.append(EbeanMetrics.report(serverName, metrics, limit)).append('\n');
+            EbeanMetricsWebCommand.appendConnections(sb, "Connections", this.ebeanMetrics.connectionMetrics(serverName), reset);
+            EbeanMetricsWebCommand.appendConnections(
+                sb,
+                "Read-only connections",
+                this.ebeanMetrics.readOnlyConnectionMetrics(serverName),
+                reset
+            );
+        }
+        return EbeanMetricsWebCommand.text(Http.Status.OK, sb.toString());
+    }
+
+    /**
+     * Append the connection metrics of a datasource, if enabled.
+     *
+     * @param sb      The report
+     * @param title   The section title
+     * @param metrics The connection metrics, or {@code null} if disabled
+     * @param reset   Reset the metrics once appended
+     * @since 21.03.21
+     */
+    private static void appendConnections(final StringBuilder sb, final String title,
+                                          final ConnectionMetrics metrics, final boolean reset) {
+        if (metrics != null) {
+            sb.append(title).append("\n  ").append(metrics).append('\n');
+            for (final ConnectionMetrics.LeakSuspect suspect : metrics.getLeakSuspects()) {
+                sb.append("  held for ")
+                    .append(suspect.getHeldFor().toMillis())
+                    .append(" ms by ")
+                    .append(suspect.getThreadName())
+                    .append('\n');
+                for (final StackTraceElement element : suspect.getStack()) {
+                    sb.append("      at ").append(element).append('\n');
+                }
+            }
+            sb.append('\n');
+            if (reset) {
+                metrics.reset();
+            }
+        }
+    }
+
+    /**
+     * Build a plain text result.
+     *
+     * @param status  The HTTP status
+     * @param content The content
+     * @return The result
+     * @since 21.03.09
+     */
+    private static Option<Result> text(final int status, final String content) {
+        return Option.apply(
+            new play.mvc.Result(status, HttpEntity.fromString(content, "utf-8")).asScala()
+        );
+    }
+}
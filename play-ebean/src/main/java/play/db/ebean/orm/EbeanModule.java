@@ -28,8 +28,20 @@ public class EbeanModule extends Module {
         this.logger.trace("Loading module PlayEbean");
         final List<Binding<?>> bindings = new ArrayList<>();
 
+        bindings.add(bindClass(EbeanStartupReport.class).toSelf());
         bindings.add(bindClass(DynamicEvolutions.class).to(EbeanDynamicEvolutions.class).eagerly());
         bindings.add(bindClass(EbeanConfig.class).toProvider(DefaultEbeanConfig.EbeanConfigParser.class).eagerly());
+        bindings.add(bindClass(EbeanMetricsWebCommand.class).toSelf().eagerly());
+        bindings.add(bindClass(EbeanWarmup.class).toSelf().eagerly());
+        if (config.hasPathOrNull("ebean.servers")) {
+            for (final String serverName : config.getConfig("ebean.servers").root().keySet()) {
+                final EbeanExecutionContextProvider provider = new EbeanExecutionContextProvider(serverName);
+                bindings.add(bindClass(EbeanExecutionContext.class).qualifiedWith(serverName).to(provider));
+                if ("default".equals(serverName)) {
+                    bindings.add(bindClass(EbeanExecutionContext.class).to(provider));
+                }
+            }
+        }
         return bindings;
     }
 }
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+package play.db.ebean.orm;
+
+import akka.Done;
+import akka.NotUsed;
+import akka.stream.javadsl.Source;
+import io.ebean.DB;
+import io.ebean.Query;
+import io.ebean.QueryIterator;
+import io.ebean.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Stream the result of an Ebean query as an Akka Streams source, without
+ * loading it in memory (ie: to render a chunked or CSV response). The
+ * rows are read with a database cursor on the execution context of the
+ * server, only when the downstream asks for them. The transaction and its
+ * connection are open when the stream starts and released when it
+ * completes, fails or is cancelled.
+ * <pre>
+ * final Source&lt;Task, NotUsed&gt; tasks = EbeanSource.from(
+ *     Task.find.query().where().eq("done", false).query(),
+ *     ebeanExecutionContext
+ * );
+ * </pre>
+ *
+ * @since 21.03.24
+ */
+public final class EbeanSource {
+
+    /**
+     * Default number of rows read from the cursor at once.
+     *
+     * @since 21.03.24
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 100;
+
+    /**
+     * @since 21.03.24
+     */
+    private EbeanSource() {
+    }
+
+    /**
+     * Build a source of the beans returned by a query, using the JDBC fetch
+     * size of the server ({@code jdbcFetchSizeFindEach} setting).
+     *
+     * @param query            The query, run on the server of the execution context
+     * @param executionContext The execution context of the server
+     * @param <T>              The type of the beans
+     * @return The source
+     * @since 21.03.24
+     */
+    public static <T> Source<T, NotUsed> from(final Query<T> query, final EbeanExecutionContext executionContext) {
+        return EbeanSource.from(query, executionContext, 0, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Build a source of the beans returned by a query.
+     *
+     * @param query            The query, run on the server of the execution context
+     * @param executionContext The execution context of the server
+     * @param fetchSize        The JDBC fetch size, 0 to use the one of the server
+     * @param chunkSize        The number of rows read from the cursor at once
+     * @param <T>              The type of the beans
+     * @return The source
+     * @since 21.03.24
+     */
+    public static <T> Source<T, NotUsed> from(final Query<T> query, final EbeanExecutionContext executionContext,
+                                              final int fetchSize, final int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be greater than 0");
+        }
+        // The query of the caller is left untouched, each materialization runs its own copy
+        final Query<T> template = query.copy();
+        return Source.<List<T>, Cursor<T>>unfoldResourceAsync(
+            () -> CompletableFuture.supplyAsync(
+                () -> Cursor.open(template.copy(), fetchSize, executionContext.getServerName()),
+                executionContext
+            ),
+            cursor -> CompletableFuture.supplyAsync(() -> cursor.read(chunkSize), executionContext),
+            cursor -> CompletableFuture.supplyAsync(cursor::close, executionContext)
+        ).mapConcat(chunk -> chunk);
+    }
+
+    /**
+     * A query iterator and the transaction holding its connection.
+     *
+     * @param <T> The type of the beans
+     * @since 21.03.24
+     */
+    private static final class Cursor<T> {
+
+        /**
+         * @since 21.03.24
+         */
+        private final Transaction transaction;
+
+        /**
+         * @since 21.03.24
+         */
+        private final QueryIterator<T> iterator;
+
+        /**
+         * @param transaction The transaction
+         * @param iterator    The query iterator
+         * @since 21.03.24
+         */
+        private Cursor(final Transaction transaction, final QueryIterator<T> iterator) {
+            this.transaction = transaction;
+            this.iterator = iterator;
+        }
+
+        /**
+         * Run the query in a new read-only transaction.
+         *
+         * @param query      The query, owned by the cursor
+         * @param fetchSize  The JDBC fetch size, 0 to use the one of the server
+         * @param serverName The server name
+         * @param <T>        The type of the beans
+         * @return The cursor
+         * @since 21.03.24
+         */
+        static <T> Cursor<T> open(final Query<T> query, final int fetchSize, final String serverName) {
+            if (fetchSize > 0) {
+                query.setBufferFetchSizeHint(fetchSize);
+            }
+            final Transaction transaction = DB.byName(serverName).createTransaction();
+            try {
+                transaction.setReadOnly(true);
+                return new Cursor<>(transaction, query.usingTransaction(transaction).findIterate());
+            } catch (final RuntimeException ex) {
+                transaction.end();
+                throw ex;
+            }
+        }
+
+        /**
+         * Read the next rows.
+         *
+         * @param chunkSize The max number of rows to read
+         * @return The rows, or nothing once all the rows have been read
+         * @since 21.03.24
+         */
+        Optional<List<T>> read(final int chunkSize) {
+            final List<T> chunk = new ArrayList<>(chunkSize);
+            while (chunk.size() < chunkSize && this.iterator.hasNext()) {
+                chunk.add(this.iterator.next());
+            }
+            return chunk.isEmpty() ? Optional.empty() : Optional.of(chunk);
+        }
+
+        /**
+         * Close the iterator and release the connection.
+         *
+         * @return Done
+         * @since 21.03.24
+         */
+        Done close() {
+            try {
+                this.iterator.close();
+            } finally {
+                this.transaction.end();
+            }
+            return Done.getInstance();
+        }
+    }
+}
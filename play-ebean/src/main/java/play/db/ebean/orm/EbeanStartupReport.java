@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+package play.db.ebean.orm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Singleton;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time spent by each Ebean server in the startup phases. It can be
+ * injected (ie: to export the timings as metrics), and is logged as a
+ * single line once the startup is complete, after the DDL generation or
+ * after the migrations when they are enabled:
+ * <pre>
+ * ebean.startup elapsed_ms=254 total_ms=412 *.clustering_ms=3 default.config_parse_ms=2 ...
+ * </pre>
+ * The {@code elapsed_ms} is the wall-clock time of the startup, while
+ * {@code total_ms} is the sum of the phases, larger when the servers
+ * start concurrently.
+ *
+ * @since 21.03.20
+ */
+@Singleton
+public class EbeanStartupReport {
+
+    /**
+     * Name under which the phases not related to a server are recorded.
+     *
+     * @since 21.03.20
+     */
+    public static final String ALL_SERVERS = "*";
+
+    /**
+     * The startup phases, in the order they run.
+     *
+     * @since 21.03.20
+     */
+    public enum Phase {
+
+        /**
+         * Initialisation of the cluster, for all the servers.
+         */
+        CLUSTERING,
+
+        /**
+         * Parsing of the server configuration and datasources.
+         */
+        CONFIG_PARSE,
+
+        /**
+         * Resolution (models index or classpath scan) and loading of the model classes.
+         */
+        MODEL_CLASSES,
+
+        /**
+         * Application of the {@code extra-config} classes.
+         */
+        EXTRA_CONFIG,
+
+        /**
+         * Creation of the server.
+         */
+        SERVER_CREATE,
+
+        /**
+         * Generation of the evolution script from the model.
+         */
+        DDL_GENERATION,
+
+        /**
+         * Check of the Ebean DB migration state.
+         */
+        MIGRATION_CHECK,
+
+        /**
+         * Application of the Ebean DB migrations.
+         */
+        MIGRATION_APPLY;
+
+        /**
+         * @return The key of the phase in the log line
+         * @since 21.03.20
+         */
+        public String key() {
+            return this.name().toLowerCase(Locale.ROOT) + "_ms";
+        }
+    }
+
+    /**
+     * @since 21.03.20
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(EbeanStartupReport.class);
+
+    /**
+     * Time spent, in nanoseconds, by server and phase.
+     *
+     * @since 21.03.20
+     */
+    private final Map<String, Map<Phase, Long>> timings = new ConcurrentHashMap<>();
+
+    /**
+     * Creation time of the report, the start of the Ebean startup.
+     *
+     * @since 21.03.20
+     */
+    private final long startedAt = System.nanoTime();
+
+    /**
+     * Wall-clock time of the startup, negative until complete.
+     *
+     * @since 21.03.20
+     */
+    private final AtomicLong elapsedNanos = new AtomicLong(-1);
+
+    /**
+     * Add the time spent by a server in a phase.
+     *
+     * @param serverName The server name, or {@link #ALL_SERVERS}
+     * @param phase      The phase
+     * @param nanos      The time spent, in nanoseconds
+     * @since 21.03.20
+     */
+    public void record(final String serverName, final Phase phase, final long nanos) {
+        this.timings
+            .computeIfAbsent(serverName, key -> new ConcurrentHashMap<>())
+            .merge(phase, nanos, Long::sum);
+    }
+
+    /**
+     * Get the time spent by each server in each phase.
+     *
+     * @return The timings, by server name and phase
+     * @since 21.03.20
+     */
+    public Map<String, Map<Phase, Duration>> getTimings() {
+        final Map<String, Map<Phase, Duration>> snapshot = new TreeMap<>();
+        this.timings.forEach((serverName, phases) -> {
+            final Map<Phase, Duration> durations = new EnumMap<>(Phase.class);
+            phases.forEach((phase, nanos) -> durations.put(phase, Duration.ofNanos(nanos)));
+            snapshot.put(serverName, Collections.unmodifiableMap(durations));
+        });
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    /**
+     * Get the time spent by a server in a phase.
+     *
+     * @param serverName The server name, or {@link #ALL_SERVERS}
+     * @param phase      The phase
+     * @return The time spent, zero if the phase did not run for this server
+     * @since 21.03.20
+     */
+    public Duration getTiming(final String serverName, final Phase phase) {
+        final Map<Phase, Long> phases = this.timings.get(serverName);
+        return phases == null ? Duration.ZERO : Duration.ofNanos(phases.getOrDefault(phase, 0L));
+    }
+
+    /**
+     * Get the total time spent in the startup phases.
+     *
+     * @return The total time spent
+     * @since 21.03.20
+     */
+    public Duration getTotal() {
+        long total = 0;
+        for (final Map<Phase, Long> phases : this.timings.values()) {
+            for (final Long nanos : phases.values()) {
+                total += nanos;
+            }
+        }
+        return Duration.ofNanos(total);
+    }
+
+    /**
+     * Get the wall-clock time of the startup.
+     *
+     * @return The time elapsed since the start, until completion if complete
+     * @since 21.03.20
+     */
+    public Duration getElapsed() {
+        final long elapsed = this.elapsedNanos.get();
+        return Duration.ofNanos(elapsed < 0 ? System.nanoTime() - this.startedAt : elapsed);
+    }
+
+    /**
+     * Check whether the startup is complete.
+     *
+     * @return {@code true} if the startup is complete
+     * @since 21.03.20
+     */
+    public boolean isComplete() {
+        return this.elapsedNanos.get() >= 0;
+    }
+
+    /**
+     * Mark the startup as complete and log the report. Only the first
+     * call has an effect.
+     *
+     * @since 21.03.20
+     */
+    public void complete() {
+        if (this.elapsedNanos.compareAndSet(-1, System.nanoTime() - this.startedAt)) {
+            this.log();
+        }
+    }
+
+    /**
+     * Log the report as a single line.
+     *
+     * @since 21.03.20
+     */
+    public void log() {
+        LOGGER.info(this.toString());
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(512);
+        sb.append("ebean.startup elapsed_ms=").append(this.getElapsed().toMillis());
+        sb.append(" total_ms=").append(this.getTotal().toMillis());
+        this.getTimings().forEach((serverName, phases) ->
+            phases.forEach((phase, duration) -> sb
+                .append(' ')
+                .append(serverName)
+                .append('.')
+                .append(phase.key())
+                .append('=')
+                .append(duration.toMillis())
+            )
+        );
+        return sb.toString();
+    }
+}
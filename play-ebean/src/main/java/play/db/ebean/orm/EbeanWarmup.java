@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+package play.db.ebean.orm;
+
+import com.typesafe.config.Config;
+import io.ebean.DB;
+import io.ebean.Database;
+import io.ebeaninternal.api.SpiEbeanServer;
+import io.ebeaninternal.server.deploy.BeanDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import play.Environment;
+import play.api.db.evolutions.ApplicationEvolutions;
+import play.db.ebean.dbmigration.MigrationStatus;
+import play.db.ebean.dbmigration.PlayInitializer;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Warm up the Ebean servers during the startup, once the evolutions and
+ * the DB migrations are applied: open pool connections, run the hot
+ * queries to build their query plans and prepare their statements, and
+ * preload the L2 cache. Each server is configured by its {@code warmup}
+ * block and warmed up within a time budget. Errors are logged and never
+ * stop the application.
+ *
+ * @since 21.03.19
+ */
+@Singleton
+public class EbeanWarmup {
+
+    /**
+     * @since 21.03.19
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(EbeanWarmup.class);
+
+    /**
+     * Number of beans loaded by query when the L2 cache is preloaded.
+     *
+     * @since 21.03.19
+     */
+    private static final int PRELOAD_PAGE_SIZE = 1000;
+
+    /**
+     * Build a new instance and warm up the servers. When the DB migrations
+     * are enabled, the warm-up waits for them: it runs right after them,
+     * on the migration thread when they run in background, and is skipped
+     * if they fail.
+     *
+     * @param ebeanConfig           The Ebean configuration
+     * @param configuration         The current Play configuration
+     * @param environment           The current Play environment
+     * @param applicationEvolutions The evolutions, applied before the warm-up
+     * @param playInitializer       The DB migrations, applied before the warm-up when enabled
+     * @param migrationStatus       The progress of the DB migrations
+     * @since 21.03.19
+     */
+    @Inject
+    public EbeanWarmup(final EbeanConfig ebeanConfig, final Config configuration, final Environment environment,
+                       final ApplicationEvolutions applicationEvolutions,
+                       final Provider<PlayInitializer> playInitializer, final MigrationStatus migrationStatus) {
+        if (EbeanDynamicEvolutions.migrationsEnabled(configuration)) {
+            // Ensure the migrations are started before waiting for them
+            playInitializer.get();
+            migrationStatus.whenFinished().thenAccept(status -> {
+                if (status.isReady()) {
+                    this.warmupServers(ebeanConfig, configuration, environment);
+                } else {
+                    LOGGER.warn("DB migrations failed, Ebean servers warm-up skipped");
+                }
+            });
+        } else {
+            this.warmupServers(ebeanConfig, configuration, environment);
+        }
+    }
+
+    /**
+     * Warm up the servers having a {@code warmup} block.
+     *
+     * @param ebeanConfig   The Ebean configuration
+     * @param configuration The current Play configuration
+     * @param environment   The current Play environment
+     * @since 21.03.19
+     */
+    private void warmupServers(final EbeanConfig ebeanConfig, final Config configuration,
+                               final Environment environment) {
+        for (final String serverName : new TreeSet<>(ebeanConfig.serverConfigs().keySet())) {
+            final String path = "ebean.servers." + serverName;
+            if (configuration.hasPath(path + ".warmup")) {
+                if (configuration.hasPath(path + ".lazy") && configuration.getBoolean(path + ".lazy")) {
+                    LOGGER.debug("Ebean server '{}' is lazy, warm-up skipped", serverName);
+                } else {
+                    this.warmup(serverName, configuration.getConfig(path + ".warmup"), environment.classLoader());
+                }
+            }
+        }
+    }
+
+    /**
+     * Warm up a server.
+     *
+     * @param serverName  The server name
+     * @param warmup      The warm-up configuration of the server
+     * @param classLoader The class loader holding the model classes
+     * @since 21.03.19
+     */
+    private void warmup(final String serverName, final Config warmup, final ClassLoader classLoader) {
+        final long startedAt = System.nanoTime();
+        final long deadline = startedAt + (warmup.hasPath("budget")
+            ? warmup.getDuration("budget", TimeUnit.NANOSECONDS)
+            : TimeUnit.SECONDS.toNanos(30));
+        final int iterations = warmup.hasPath("iterations") ? warmup.getInt("iterations") : 10;
+        final Database database = DB.byName(serverName);
+
+        final int connections = warmup.hasPath("connections")
+            ? this.openConnections(database, warmup.getInt("connections"), deadline)
+            : 0;
+
+        final Map<String, Step> queries = new LinkedHashMap<>();
+        for (final String query : EbeanWarmup.getStringList(warmup, "queries")) {
+            queries.put(query, () -> this.runNamedQuery(database, query, classLoader));
+        }
+        for (final String sql : EbeanWarmup.getStringList(warmup, "sql")) {
+            queries.put(sql, () -> database.sqlQuery(sql).findList());
+        }
+        int executions = 0;
+        for (int i = 0; i < iterations && !queries.isEmpty(); ++i) {
+            final Iterator<Map.Entry<String, Step>> iterator = queries.entrySet().iterator();
+            while (iterator.hasNext() && System.nanoTime() < deadline) {
+                final Map.Entry<String, Step> query = iterator.next();
+                if (this.run(serverName, query.getKey(), query.getValue())) {
+                    executions += 1;
+                } else {
+                    // Failing queries are not run again
+                    iterator.remove();
+                }
+            }
+        }
+
+        int cachedBeans = 0;
+        for (final String beanType : EbeanWarmup.getStringList(warmup, "l2cache")) {
+            if (System.nanoTime() >= deadline) {
+                break;
+            }
+            cachedBeans += this.preloadCache(serverName, database, beanType, classLoader, deadline);
+        }
+
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        if (System.nanoTime() >= deadline) {
+            LOGGER.warn("Ebean server '{}' warm-up stopped after {} ms, budget exhausted", serverName, elapsed);
+        }
+        LOGGER.info(
+            "Ebean server '{}' warmed up in {} ms: {} connections, {} query executions, {} beans cached",
+            serverName,
+            elapsed,
+            connections,
+            executions,
+            cachedBeans
+        );
+    }
+
+    /**
+     * Open connections at the same time so the pool keeps them.
+     *
+     * @param database The server
+     * @param count    The number of connections to open
+     * @param deadline The warm-up deadline, as returned by {@link System#nanoTime()}
+     * @return The number of connections opened
+     * @since 21.03.19
+     */
+    private int openConnections(final Database database, final int count, final long deadline) {
+        final List<Connection> connections = new ArrayList<>(count);
+        try {
+            while (connections.size() < count && System.nanoTime() < deadline) {
+                connections.add(database.getPluginApi().getDataSource().getConnection());
+            }
+        } catch (final SQLException ex) {
+            LOGGER.warn("Ebean server '{}' warm-up can't open connection: {}", database.getName(), ex.getMessage());
+        } finally {
+            for (final Connection connection : connections) {
+                try {
+                    connection.close();
+                } catch (final SQLException ignore) {
+                }
+            }
+        }
+        return connections.size();
+    }
+
+    /**
+     * Run a named query: {@code <bean class>#<query name>}.
+     *
+     * @param database    The server
+     * @param query       The named query
+     * @param classLoader The class loader holding the model classes
+     * @throws ClassNotFoundException If the bean class does not exist
+     * @since 21.03.19
+     */
+    private void runNamedQuery(final Database database, final String query,
+                               final ClassLoader classLoader) throws ClassNotFoundException {
+        final int separator = query.indexOf('#');
+        if (separator < 0) {
+            throw new IllegalArgumentException("expected <bean class>#<query name>");
+        }
+        final Class<?> beanType = Class.forName(query.substring(0, separator).trim(), false, classLoader);
+        database.createNamedQuery(beanType, query.substring(separator + 1).trim()).findList();
+    }
+
+    /**
+     * Load the beans of a type into the L2 cache, by pages, up to the
+     * size of the cache: more beans would only be evicted.
+     *
+     * @param serverName  The server name
+     * @param database    The server
+     * @param beanType    The bean class
+     * @param classLoader The class loader holding the model classes
+     * @param deadline    The warm-up deadline, as returned by {@link System#nanoTime()}
+     * @return The number of beans loaded
+     * @since 21.03.19
+     */
+    private int preloadCache(final String serverName, final Database database, final String beanType,
+                             final ClassLoader classLoader, final long deadline) {
+        final int[] count = new int[1];
+        this.run(serverName, beanType, () -> {
+            final Class<?> clazz = Class.forName(beanType.trim(), false, classLoader);
+            final BeanDescriptor<?> descriptor = ((SpiEbeanServer) database.getPluginApi()).getBeanDescriptor(clazz);
+            if (descriptor == null || !descriptor.isBeanCaching()) {
+                throw new IllegalArgumentException("not an entity with L2 bean cache enabled");
+            }
+            final int maxSize = database.getServerCacheManager().getBeanCache(clazz).getStatistics(false).getMaxSize();
+            final int limit = maxSize > 0 ? maxSize : Integer.MAX_VALUE;
+            int pageSize;
+            int loaded;
+            do {
+                pageSize = Math.min(PRELOAD_PAGE_SIZE, limit - count[0]);
+                loaded = database.find(clazz)
+                    .setLoadBeanCache(true)
+                    .orderById(true)
+                    .setFirstRow(count[0])
+                    .setMaxRows(pageSize)
+                    .findList()
+                    .size();
+                count[0] += loaded;
+            } while (loaded == pageSize && count[0] < limit && System.nanoTime() < deadline);
+        });
+        return count[0];
+    }
+
+    /**
+     * Run a warm-up step, logging its failure.
+     *
+     * @param serverName The server name
+     * @param name       The step name
+     * @param step       The step to run
+     * @return {@code true} if the step succeeded
+     * @since 21.03.19
+     */
+    private boolean run(final String serverName, final String name, final Step step) {
+        try {
+            step.run();
+            return true;
+        } catch (final Exception ex) {
+            LOGGER.warn("Ebean server '{}' warm-up of [{}] failed: {}", serverName, name, ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @param config The configuration
+     * @param key    The key to read
+     * @return The list, empty if the key is not set
+     * @since 21.03.19
+     */
+    private static List<String> getStringList(final Config config, final String key) {
+        return config.hasPath(key) ? config.getStringList(key) : Collections.emptyList();
+    }
+
+    /**
+     * A warm-up step.
+     *
+     * @since 21.03.19
+     */
+    @FunctionalInterface
+    private interface Step {
+
+        /**
+         * @throws Exception If the step fails
+         * @since 21.03.19
+         */
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+package play.db.ebean.orm;
+
+import io.ebean.Database;
+import io.ebean.DatabaseFactory;
+import io.ebean.Ebean;
+import io.ebean.config.DatabaseConfig;
+import io.ebeaninternal.api.SpiEbeanServer;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Lightweight proxy of an Ebean server. The real server is only
+ * created on the first use of the proxy. The proxy is used as a
+ * {@link Database}; it implements {@link SpiEbeanServer}, like the real
+ * servers, so it can be registered in the Ebean registry and cast by the
+ * code relying on the internal API.
+ *
+ * @since 21.03.03
+ */
+final class LazyDatabase implements InvocationHandler {
+
+    /**
+     * @since 21.03.03
+     */
+    private final DatabaseConfig serverConfig;
+
+    /**
+     * @since 21.03.03
+     */
+    private final Database proxy;
+
+    /**
+     * @since 21.03.03
+     */
+    private volatile Database server;
+
+    /**
+     * Build a new instance.
+     *
+     * @param serverConfig The server configuration
+     * @since 21.03.03
+     */
+    LazyDatabase(final DatabaseConfig serverConfig) {
+        this.serverConfig = serverConfig;
+        this.proxy = (Database) Proxy.newProxyInstance(
+            SpiEbeanServer.class.getClassLoader(),
+            new Class<?>[]{SpiEbeanServer.class},
+            this
+        );
+    }
+
+    /**
+     * Register the proxy as the Ebean server to use, so {@code DB.byName}
+     * returns the proxy until the real server is created.
+     *
+     * @since 21.03.03
+     */
+    @SuppressWarnings("deprecation")
+    void register() {
+        Ebean.register((SpiEbeanServer) this.proxy, this.serverConfig.isDefaultServer());
+    }
+
+    /**
+     * Get the proxy.
+     *
+     * @return The proxy
+     * @since 21.03.03
+     */
+    Database proxy() {
+        return this.proxy;
+    }
+
+    /**
+     * Is the real server created?
+     *
+     * @return {@code true} if the real server has been created
+     * @since 21.03.03
+     */
+    boolean isCreated() {
+        return this.server != null;
+    }
+
+    /**
+     * Check if the given server is a lazy server not created yet.
+     *
+     * @param database The server to check
+     * @return {@code true} if the server is a lazy server not created yet
+     * @since 21.03.09
+     */
+    static boolean isPending(final Database database) {
+        if (database != null && Proxy.isProxyClass(database.getClass())) {
+            final InvocationHandler handler = Proxy.getInvocationHandler(database);
+            return handler instanceof LazyDatabase && !((LazyDatabase) handler).isCreated();
+        }
+        return false;
+    }
+
+    /**
+     * Get the real server, creating it if needed. Unless the configuration
+     * disables the registration, {@code DatabaseFactory} registers the real
+     * server under the name of the proxy, so {@code DB.byName} returns the
+     * real server from then on. References to the proxy obtained before
+     * remain valid and delegate to the real server.
+     *
+     * @return The real server
+     * @since 21.03.03
+     */
+    Database get() {
+        Database current = this.server;
+        if (current == null) {
+            synchronized (this) {
+                current = this.server;
+                if (current == null) {
+                    current = DatabaseFactory.create(this.serverConfig);
+                    this.server = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "getName":
+                if (method.getParameterCount() == 0) {
+                    return this.serverConfig.getName();
+                }
+                break;
+            case "getPluginApi":
+                // The internal API is the one of the real server
+                return this.get().getPluginApi();
+            case "shutdown":
+                // Nothing to release if the server has never been used
+                if (!this.isCreated()) {
+                    return null;
+                }
+                break;
+            case "equals":
+                if (method.getParameterCount() == 1) {
+                    return proxy == args[0];
+                }
+                break;
+            case "hashCode":
+                if (method.getParameterCount() == 0) {
+                    return System.identityHashCode(proxy);
+                }
+                break;
+            case "toString":
+                if (method.getParameterCount() == 0) {
+                    return "LazyDatabase[" + this.serverConfig.getName() + (this.isCreated() ? "" : ", not created") + "]";
+                }
+                break;
+            default:
+                break;
+        }
+        try {
+            return method.invoke(this.get(), args);
+        } catch (final InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+}
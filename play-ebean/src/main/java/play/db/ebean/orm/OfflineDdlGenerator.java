@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+package play.db.ebean.orm;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import io.ebean.Database;
+import io.ebean.DatabaseFactory;
+import io.ebean.config.DatabaseConfig;
+import io.ebean.dbmigration.DbMigration;
+import io.ebeaninternal.api.SpiEbeanServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Given a classloader holding the enhanced model classes and the
+ * application base directory, generate the evolution scripts, and
+ * optionally the Ebean migration files, without starting the application.
+ * <p>
+ * This is used by the ebean sbt plugin. The servers are created offline:
+ * no connection to the database is opened, the database platform is read
+ * from {@code ebean.servers.<server>.platform} or guessed from the JDBC
+ * URL of the Play database.
+ * </p>
+ *
+ * @since 21.03.15
+ */
+public class OfflineDdlGenerator implements BiFunction<ClassLoader, File, List<File>> {
+
+    /**
+     * Ebean platform names, by JDBC sub-protocol.
+     *
+     * @since 21.03.15
+     */
+    private static final Map<String, String> PLATFORMS = new HashMap<>();
+
+    static {
+        PLATFORMS.put("h2", "h2");
+        PLATFORMS.put("hsqldb", "hsqldb");
+        PLATFORMS.put("postgresql", "postgres");
+        PLATFORMS.put("pgsql", "postgres");
+        PLATFORMS.put("mysql", "mysql");
+        PLATFORMS.put("mariadb", "mariadb");
+        PLATFORMS.put("sqlserver", "sqlserver17");
+        PLATFORMS.put("oracle", "oracle");
+        PLATFORMS.put("db2", "db2");
+        PLATFORMS.put("sqlite", "sqlite");
+        PLATFORMS.put("sqlanywhere", "sqlanywhere");
+    }
+
+    /**
+     * @since 21.03.15
+     */
+    private final boolean migrations;
+
+    /**
+     * @since 21.03.15
+     */
+    private final boolean checkOnly;
+
+    /**
+     * Build a new instance.
+     *
+     * @param migrations Also generate the Ebean migration files
+     * @param checkOnly  Do not write anything, only report the files that are not up to date
+     * @since 21.03.15
+     */
+    public OfflineDdlGenerator(final boolean migrations, final boolean checkOnly) {
+        this.migrations = migrations;
+        this.checkOnly = checkOnly;
+    }
+
+    @Override
+    public List<File> apply(final ClassLoader classLoader, final File baseDirectory) {
+        final Thread thread = Thread.currentThread();
+        final ClassLoader contextClassLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(classLoader);
+        try {
+            final Config config = ConfigFactory.load(classLoader);
+            final List<File> files = new ArrayList<>();
+            if (config.hasPathOrNull("ebean.servers")) {
+                final Config ebeanServersConfig = config.getConfig("ebean.servers");
+                for (final String serverName : new TreeSet<>(ebeanServersConfig.root().keySet())) {
+                    final Config ebeanServerConfig = ebeanServersConfig.getConfig(serverName);
+                    if (ebeanServerConfig.hasPath("enhancement")) {
+                        files.addAll(this.generate(classLoader, baseDirectory, config, serverName, ebeanServerConfig));
+                    }
+                }
+            }
+            return files;
+        } finally {
+            thread.setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    /**
+     * Generate the files of a server.
+     *
+     * @param classLoader       The class loader holding the model classes
+     * @param baseDirectory     The application base directory
+     * @param config            The application configuration
+     * @param serverName        The server name
+     * @param ebeanServerConfig The server configuration
+     * @return The files written, or out of date in check mode
+     * @since 21.03.15
+     */
+    private List<File> generate(final ClassLoader classLoader, final File baseDirectory, final Config config,
+                                final String serverName, final Config ebeanServerConfig) {
+        final DatabaseConfig serverConfig = new DatabaseConfig();
+        serverConfig.setName(serverName);
+        serverConfig.loadFromProperties();
+        serverConfig.setDefaultServer(false);
+        serverConfig.setRegister(false);
+        serverConfig.setDbOffline(true);
+        serverConfig.setDatabasePlatformName(OfflineDdlGenerator.platformName(config, serverName));
+        if (ebeanServerConfig.hasPath("settings.allQuotedIdentifiers")) {
+            serverConfig.setAllQuotedIdentifiers(ebeanServerConfig.getBoolean("settings.allQuotedIdentifiers"));
+        }
+        final List<String> enhancement = ebeanServerConfig.getStringList("enhancement")
+            .stream()
+            .map(String::trim)
+            .collect(Collectors.toList());
+        for (final String clazz : DefaultEbeanConfig.EbeanConfigParser.resolveModelClasses(classLoader, serverName, enhancement)) {
+            try {
+                serverConfig.addClass(Class.forName(clazz, false, classLoader));
+            } catch (final ClassNotFoundException ex) {
+                throw new IllegalStateException("Cannot register class [" + clazz + "] in Ebean server '" + serverName + "'", ex);
+            }
+        }
+        if (ebeanServerConfig.hasPath("extra-config")) {
+            for (final String className : ebeanServerConfig.getStringList("extra-config")) {
+                try {
+                    ((EbeanServerExtraConfig) Class.forName(className, true, classLoader).getDeclaredConstructor().newInstance())
+                        .applyExtraConfiguration(serverConfig, config);
+                } catch (final ReflectiveOperationException ex) {
+                    throw new IllegalStateException("Cannot apply extra configuration [" + className + "]", ex);
+                }
+            }
+        }
+
+        final List<File> files = new ArrayList<>();
+        final Database server = DatabaseFactory.create(serverConfig);
+        try {
+            if (!config.hasPath("play.evolutions.db." + serverName + ".enabled")
+                || config.getBoolean("play.evolutions.db." + serverName + ".enabled")) {
+                final String evolutionScript = EbeanDynamicEvolutions.generateEvolutionScript(server);
+                final File evolutions = new File(baseDirectory, "conf/evolutions/" + serverName + "/1.sql");
+                if (evolutionScript != null
+                    && EbeanDynamicEvolutions.updateEvolutionScript(evolutions, evolutionScript, !this.checkOnly)) {
+                    files.add(evolutions);
+                }
+            }
+            if (this.migrations && !this.checkOnly) {
+                files.addAll(this.generateMigration(baseDirectory, config, serverName, server));
+            }
+        } finally {
+            server.shutdown(false, false);
+        }
+        return files;
+    }
+
+    /**
+     * Generate the Ebean migration files of a server into
+     * {@code conf/<migrationPath>/<platform>/<server>}.
+     *
+     * @param baseDirectory The application base directory
+     * @param config        The application configuration
+     * @param serverName    The server name
+     * @param server        The offline server
+     * @return The migration directory, if a migration has been generated
+     * @since 21.03.15
+     */
+    private List<File> generateMigration(final File baseDirectory, final Config config, final String serverName,
+                                         final Database server) {
+        final String migrationPath = config.hasPath("ebean.dbmigration.migrationPath")
+            ? config.getString("ebean.dbmigration.migrationPath")
+            : "dbmigration";
+        final String platform = ((SpiEbeanServer) server.getPluginApi())
+            .getDatabasePlatform()
+            .getPlatform()
+            .name()
+            .toLowerCase();
+        final String path = migrationPath + (migrationPath.endsWith("/") ? "" : "/") + platform + "/" + serverName;
+        final DbMigration dbMigration = DbMigration.create();
+        dbMigration.setServer(server);
+        dbMigration.setPathToResources(new File(baseDirectory, "conf").getAbsolutePath());
+        dbMigration.setMigrationPath(path);
+        dbMigration.setLogToSystemOut(false);
+        try {
+            final String version = dbMigration.generateMigration();
+            return version == null
+                ? Collections.emptyList()
+                : Collections.singletonList(new File(baseDirectory, "conf/" + path));
+        } catch (final IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Resolve the Ebean platform name of a server.
+     *
+     * @param config     The application configuration
+     * @param serverName The server name
+     * @return The platform name
+     * @throws IllegalStateException If the platform can't be resolved
+     * @since 21.03.15
+     */
+    static String platformName(final Config config, final String serverName) {
+        if (config.hasPath("ebean.servers." + serverName + ".platform")) {
+            return config.getString("ebean.servers." + serverName + ".platform");
+        }
+        if (config.hasPath("db." + serverName + ".url")) {
+            final String[] url = config.getString("db." + serverName + ".url").split(":");
+            if (url.length > 1 && PLATFORMS.containsKey(url[1].toLowerCase())) {
+                return PLATFORMS.get(url[1].toLowerCase());
+            }
+        }
+        throw new IllegalStateException(
+            "Can't guess the database platform of Ebean server '" + serverName
+                + "', set it with 'ebean.servers." + serverName + ".platform'"
+        );
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+package play.db.ebean.orm;
+
+import io.ebean.event.BeanQueryAdapter;
+import io.ebean.event.BeanQueryRequest;
+import io.ebeaninternal.api.SpiQuery;
+
+/**
+ * Apply a default timeout to the ORM queries not defining one.
+ *
+ * @since 21.03.06
+ */
+final class QueryTimeoutAdapter implements BeanQueryAdapter {
+
+    /**
+     * @since 21.03.06
+     */
+    private final int timeoutSeconds;
+
+    /**
+     * Build a new instance.
+     *
+     * @param timeoutSeconds The default timeout in seconds
+     * @since 21.03.06
+     */
+    QueryTimeoutAdapter(final int timeoutSeconds) {
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    @Override
+    public boolean isRegisterFor(final Class<?> beanType) {
+        return true;
+    }
+
+    @Override
+    public int getExecutionOrder() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void preQuery(final BeanQueryRequest<?> request) {
+        final SpiQuery<?> query = (SpiQuery<?>) request.getQuery();
+        if (query.getTimeout() <= 0) {
+            query.setTimeout(this.timeoutSeconds);
+        }
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+package play.db.ebean.orm;
+
+import java.sql.*;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Connection delegating to the one retrieved from the pool and recording
+ * the time it is held when it is closed.
+ *
+ * @since 21.03.21
+ */
+final class TrackedConnection implements Connection {
+
+    /**
+     * @since 21.03.21
+     */
+    private final Connection connection;
+
+    /**
+     * @since 21.03.21
+     */
+    private final ConnectionMetrics metrics;
+
+    /**
+     * @since 21.03.21
+     */
+    private final ConnectionMetrics.Checkout checkout;
+
+    /**
+     * @since 21.03.21
+     */
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * Build a new instance.
+     *
+     * @param connection The connection retrieved from the pool
+     * @param metrics    The metrics to record into
+     * @param checkout   The checkout of the connection
+     * @since 21.03.21
+     */
+    TrackedConnection(final Connection connection, final ConnectionMetrics metrics,
+                      final ConnectionMetrics.Checkout checkout) {
+        this.connection = connection;
+        this.metrics = metrics;
+        this.checkout = checkout;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (this.closed.compareAndSet(false, true)) {
+            this.metrics.checkin(this.checkout);
+        }
+        this.connection.close();
+    }
+
+    @Override
+    public Statement createStatement() throws SQLException {
+        return this.connection.createStatement();
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(final String sql) throws SQLException {
+        return this.connection.prepareStatement(sql);
+    }
+
+    @Override
+    public CallableStatement prepareCall(final String sql) throws SQLException {
+        return this.connection.prepareCall(sql);
+    }
+
+    @Override
+    public String nativeSQL(final String sql) throws SQLException {
+        return this.connection.nativeSQL(sql);
+    }
+
+    @Override
+    public void setAutoCommit(final boolean autoCommit) throws SQLException {
+        this.connection.setAutoCommit(autoCommit);
+    }
+
+    @Override
+    public boolean getAutoCommit() throws SQLException {
+        return this.connection.getAutoCommit();
+    }
+
+    @Override
+    public void commit() throws SQLException {
+        this.connection.commit();
+    }
+
+    @Override
+    public void rollback() throws SQLException {
+        this.connection.rollback();
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return this.connection.isClosed();
+    }
+
+    @Override
+    public DatabaseMetaData getMetaData() throws SQLException {
+        return this.connection.getMetaData();
+    }
+
+    @Override
+    public void setReadOnly(final boolean readOnly) throws SQLException {
+        this.connection.setReadOnly(readOnly);
+    }
+
+    @Override
+    public boolean isReadOnly() throws SQLException {
+        return this.connection.isReadOnly();
+    }
+
+    @Override
+    public void setCatalog(final String catalog) throws SQLException {
+        this.connection.setCatalog(catalog);
+    }
+
+    @Override
+    public String getCatalog() throws SQLException {
+        return this.connection.getCatalog();
+    }
+
+    @Override
+    public void setTransactionIsolation(final int level) throws SQLException {
+        this.connection.setTransactionIsolation(level);
+    }
+
+    @Override
+    public int getTransactionIsolation() throws SQLException {
+        return this.connection.getTransactionIsolation();
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return this.connection.getWarnings();
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        this.connection.clearWarnings();
+    }
+
+    @Override
+    public Statement createStatement(final int resultSetType, final int resultSetConcurrency) throws SQLException {
+        return this.connection.createStatement(resultSetType, resultSetConcurrency);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final int resultSetType, final int resultSetConcurrency) throws SQLException {
+        return this.connection.prepareStatement(sql, resultSetType, resultSetConcurrency);
+    }
+
+    @Override
+    public CallableStatement prepareCall(final String sql, final int resultSetType, final int resultSetConcurrency) throws SQLException {
+        return this.connection.prepareCall(sql, resultSetType, resultSetConcurrency);
+    }
+
+    @Override
+    public Map<String, Class<?>> getTypeMap() throws SQLException {
+        return this.connection.getTypeMap();
+    }
+
+    @Override
+    public void setTypeMap(final Map<String, Class<?>> map) throws SQLException {
+        this.connection.setTypeMap(map);
+    }
+
+    @Override
+    public void setHoldability(final int holdability) throws SQLException {
+        this.connection.setHoldability(holdability);
+    }
+
+    @Override
+    public int getHoldability() throws SQLException {
+        return this.connection.getHoldability();
+    }
+
+    @Override
+    public Savepoint setSavepoint() throws SQLException {
+        return this.connection.setSavepoint();
+    }
+
+    @Override
+    public Savepoint setSavepoint(final String name) throws SQLException {
+        return this.connection.setSavepoint(name);
+    }
+
+    @Override
+    public void rollback(final Savepoint savepoint) throws SQLException {
+        this.connection.rollback(savepoint);
+    }
+
+    @Override
+    public void releaseSavepoint(final Savepoint savepoint) throws SQLException {
+        this.connection.releaseSavepoint(savepoint);
+    }
+
+    @Override
+    public Statement createStatement(final int resultSetType, final int resultSetConcurrency, final int resultSetHoldability) throws SQLException {
+        return this.connection.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final int resultSetType, final int resultSetConcurrency, final int resultSetHoldability) throws SQLException {
+        return this.connection.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+    }
+
+    @Override
+    public CallableStatement prepareCall(final String sql, final int resultSetType, final int resultSetConcurrency, final int resultSetHoldability) throws SQLException {
+        return this.connection.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final int autoGeneratedKeys) throws SQLException {
+        return this.connection.prepareStatement(sql, autoGeneratedKeys);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final int[] columnIndexes) throws SQLException {
+        return this.connection.prepareStatement(sql, columnIndexes);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final String[] columnNames) throws SQLException {
+        return this.connection.prepareStatement(sql, columnNames);
+    }
+
+    @Override
+    public Clob createClob() throws SQLException {
+        return this.connection.createClob();
+    }
+
+    @Override
+    public Blob createBlob() throws SQLException {
+        return this.connection.createBlob();
+    }
+
+    @Override
+    public NClob createNClob() throws SQLException {
+        return this.connection.createNClob();
+    }
+
+    @Override
+    public SQLXML createSQLXML() throws SQLException {
+        return this.connection.createSQLXML();
+    }
+
+    @Override
+    public boolean isValid(final int timeout) throws SQLException {
+        return this.connection.isValid(timeout);
+    }
+
+    @Override
+    public void setClientInfo(final String name, final String value) throws SQLClientInfoException {
+        this.connection.setClientInfo(name, value);
+    }
+
+    @Override
+    public void setClientInfo(final Properties properties) throws SQLClientInfoException {
+        this.connection.setClientInfo(properties);
+    }
+
+    @Override
+    public String getClientInfo(final String name) throws SQLException {
+        return this.connection.getClientInfo(name);
+    }
+
+    @Override
+    public Properties getClientInfo() throws SQLException {
+        return this.connection.getClientInfo();
+    }
+
+    @Override
+    public Array createArrayOf(final String typeName, final Object[] elements) throws SQLException {
+        return this.connection.createArrayOf(typeName, elements);
+    }
+
+    @Override
+    public Struct createStruct(final String typeName, final Object[] attributes) throws SQLException {
+        return this.connection.createStruct(typeName, attributes);
+    }
+
+    @Override
+    public void setSchema(final String schema) throws SQLException {
+        this.connection.setSchema(schema);
+    }
+
+    @Override
+    public String getSchema() throws SQLException {
+        return this.connection.getSchema();
+    }
+
+    @Override
+    public void abort(final Executor executor) throws SQLException {
+        this.connection.abort(executor);
+    }
+
+    @Override
+    public void setNetworkTimeout(final Executor executor, final int milliseconds) throws SQLException {
+        this.connection.setNetworkTimeout(executor, milliseconds);
+    }
+
+    @Override
+    public int getNetworkTimeout() throws SQLException {
+        return this.connection.getNetworkTimeout();
+    }
+
+    @Override
+    public <T> T unwrap(final Class<T> iface) throws SQLException {
+        return iface.isInstance(this) ? iface.cast(this) : this.connection.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(final Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || this.connection.isWrapperFor(iface);
+    }
+}
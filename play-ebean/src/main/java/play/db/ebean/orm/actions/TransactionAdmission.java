@@ -0,0 +1,403 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+package play.db.ebean.orm.actions;
+
+import com.typesafe.config.Config;
+import play.mvc.Http;
+import play.mvc.Result;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission control of the {@code @Transactional} actions. When enabled
+ * on a server with its {@code admission} block, the number of actions
+ * running a transaction at the same time is limited, the others wait in
+ * a bounded queue for a bounded time, without holding a thread. The actions which can't be admitted
+ * fail fast with the configured status (503 by default) and a
+ * {@code Retry-After} header, instead of piling up waiting for a
+ * connection when the database slows down.
+ *
+ * @since 21.03.22
+ */
+@Singleton
+public class TransactionAdmission {
+
+    /**
+     * @since 21.03.22
+     */
+    private static final Limiter DISABLED = new Limiter(0, 0, 0, 0, 0);
+
+    /**
+     * @since 21.03.22
+     */
+    private final Config configuration;
+
+    /**
+     * Limiters by server name, {@code null} values are not allowed so the
+     * servers without admission control hold {@link #DISABLED}.
+     *
+     * @since 21.03.22
+     */
+    private final Map<String, Limiter> limiters = new ConcurrentHashMap<>();
+
+    /**
+     * Build a new instance.
+     *
+     * @param configuration The current Play configuration
+     * @since 21.03.22
+     */
+    @Inject
+    public TransactionAdmission(final Config configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * Get the admission limiter of a server.
+     *
+     * @param serverName The server name
+     * @return The limiter, or {@code null} if the admission control is not enabled on this server
+     * @since 21.03.22
+     */
+    public Limiter limiter(final String serverName) {
+        final Limiter limiter = this.limiters.computeIfAbsent(serverName, this::createLimiter);
+        return limiter == DISABLED ? null : limiter;
+    }
+
+    /**
+     * Create the limiter of a server from its {@code admission} block.
+     *
+     * @param serverName The server name
+     * @return The limiter, or {@link #DISABLED}
+     * @since 21.03.22
+     */
+    private Limiter createLimiter(final String serverName) {
+        final String path = "ebean.servers." + serverName + ".admission";
+        if (!this.configuration.hasPath(path)) {
+            return DISABLED;
+        }
+        final Config admission = this.configuration.getConfig(path);
+        if (admission.hasPath("enabled") && !admission.getBoolean("enabled")) {
+            return DISABLED;
+        }
+        final int maxInFlight = admission.getInt("maxInFlight");
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("'" + path + ".maxInFlight' must be greater than 0");
+        }
+        return new Limiter(
+            maxInFlight,
+            admission.hasPath("maxQueued") ? admission.getInt("maxQueued") : 0,
+            admission.hasPath("queueTimeout") ? admission.getDuration("queueTimeout", TimeUnit.NANOSECONDS) : 0,
+            admission.hasPath("rejectStatus") ? admission.getInt("rejectStatus") : Http.Status.SERVICE_UNAVAILABLE,
+            admission.hasPath("retryAfter") ? admission.getDuration("retryAfter", TimeUnit.SECONDS) : 1
+        );
+    }
+
+    /**
+     * Scheduler of the queue timeouts, shared by the limiters.
+     *
+     * @since 21.03.22
+     */
+    private static final class Timeouts {
+
+        /**
+         * @since 21.03.22
+         */
+        private static final ScheduledThreadPoolExecutor SCHEDULER = Timeouts.create();
+
+        /**
+         * @return The scheduler
+         * @since 21.03.22
+         */
+        private static ScheduledThreadPoolExecutor create() {
+            final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+                final Thread thread = new Thread(runnable, "ebean-admission-timeout");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.setRemoveOnCancelPolicy(true);
+            return scheduler;
+        }
+    }
+
+    /**
+     * Admission limiter of a server. The actions waiting to be admitted
+     * do not hold a thread: they are queued futures, completed by the
+     * release of a running action or by the queue timeout.
+     *
+     * @since 21.03.22
+     */
+    public static final class Limiter {
+
+        /**
+         * @since 21.03.22
+         */
+        private final Object lock = new Object();
+
+        /**
+         * Actions waiting to be admitted, guarded by {@link #lock}.
+         *
+         * @since 21.03.22
+         */
+        private final Deque<Waiter> waiters = new ArrayDeque<>();
+
+        /**
+         * Number of actions running, guarded by {@link #lock}.
+         *
+         * @since 21.03.22
+         */
+        private int inFlight;
+
+        /**
+         * @since 21.03.22
+         */
+        private final int maxInFlight;
+
+        /**
+         * @since 21.03.22
+         */
+        private final int maxQueued;
+
+        /**
+         * @since 21.03.22
+         */
+        private final long queueTimeoutNanos;
+
+        /**
+         * @since 21.03.22
+         */
+        private final int rejectStatus;
+
+        /**
+         * @since 21.03.22
+         */
+        private final long retryAfterSeconds;
+
+        /**
+         * @since 21.03.22
+         */
+        private final LongAdder admitted = new LongAdder();
+
+        /**
+         * @since 21.03.22
+         */
+        private final LongAdder admittedAfterWait = new LongAdder();
+
+        /**
+         * @since 21.03.22
+         */
+        private final LongAdder rejectedQueueFull = new LongAdder();
+
+        /**
+         * @since 21.03.22
+         */
+        private final LongAdder rejectedTimeout = new LongAdder();
+
+        /**
+         * Build a new instance.
+         *
+         * @param maxInFlight       The max number of transactional actions running at the same time
+         * @param maxQueued         The max number of actions waiting to be admitted
+         * @param queueTimeoutNanos The max time an action waits to be admitted, in nanoseconds
+         * @param rejectStatus      The status of the result of the rejected actions
+         * @param retryAfterSeconds The {@code Retry-After} header of the rejected actions, 0 to omit it
+         * @since 21.03.22
+         */
+        Limiter(final int maxInFlight, final int maxQueued, final long queueTimeoutNanos,
+                final int rejectStatus, final long retryAfterSeconds) {
+            this.maxInFlight = maxInFlight;
+            this.maxQueued = maxQueued;
+            this.queueTimeoutNanos = queueTimeoutNanos;
+            this.rejectStatus = rejectStatus;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        /**
+         * Admit an action, queuing it if there is room left in the queue.
+         * The returned future is already completed unless the action is
+         * queued.
+         *
+         * @return A future completed with {@code true} if the action is admitted, it must then call {@link #release()}
+         * @since 21.03.22
+         */
+        CompletableFuture<Boolean> admit() {
+            final Waiter waiter;
+            synchronized (this.lock) {
+                if (this.inFlight < this.maxInFlight) {
+                    this.inFlight += 1;
+                    this.admitted.increment();
+                    return CompletableFuture.completedFuture(true);
+                }
+                if (this.waiters.size() >= this.maxQueued) {
+                    this.rejectedQueueFull.increment();
+                    return CompletableFuture.completedFuture(false);
+                }
+                if (this.queueTimeoutNanos <= 0) {
+                    this.rejectedTimeout.increment();
+                    return CompletableFuture.completedFuture(false);
+                }
+                waiter = new Waiter();
+                this.waiters.addLast(waiter);
+            }
+            waiter.timeout = Timeouts.SCHEDULER.schedule(
+                () -> this.expire(waiter),
+                this.queueTimeoutNanos,
+                TimeUnit.NANOSECONDS
+            );
+            return waiter.future;
+        }
+
+        /**
+         * Reject a queued action which waited for too long.
+         *
+         * @param waiter The queued action
+         * @since 21.03.22
+         */
+        private void expire(final Waiter waiter) {
+            synchronized (this.lock) {
+                if (!this.waiters.remove(waiter)) {
+                    return;
+                }
+            }
+            this.rejectedTimeout.increment();
+            waiter.future.complete(false);
+        }
+
+        /**
+         * Release the admission of a completed action. The admission is
+         * handed over to the first queued action, if any.
+         *
+         * @since 21.03.22
+         */
+        void release() {
+            final Waiter waiter;
+            synchronized (this.lock) {
+                waiter = this.waiters.pollFirst();
+                if (waiter == null) {
+                    this.inFlight -= 1;
+                    return;
+                }
+            }
+            final ScheduledFuture<?> timeout = waiter.timeout;
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            this.admitted.increment();
+            this.admittedAfterWait.increment();
+            waiter.future.complete(true);
+        }
+
+        /**
+         * Build the result of a rejected action.
+         *
+         * @return The result
+         * @since 21.03.22
+         */
+        Result rejected() {
+            final Result result = new Result(this.rejectStatus);
+            return this.retryAfterSeconds > 0
+                ? result.withHeader(Http.HeaderNames.RETRY_AFTER, String.valueOf(this.retryAfterSeconds))
+                : result;
+        }
+
+        /**
+         * @return The max number of transactional actions running at the same time
+         * @since 21.03.22
+         */
+        public int getMaxInFlight() {
+            return this.maxInFlight;
+        }
+
+        /**
+         * @return The number of transactional actions running
+         * @since 21.03.22
+         */
+        public int getInFlight() {
+            synchronized (this.lock) {
+                return this.inFlight;
+            }
+        }
+
+        /**
+         * @return The number of actions waiting to be admitted
+         * @since 21.03.22
+         */
+        public int getQueued() {
+            synchronized (this.lock) {
+                return this.waiters.size();
+            }
+        }
+
+        /**
+         * @return The number of actions admitted
+         * @since 21.03.22
+         */
+        public long getAdmitted() {
+            return this.admitted.sum();
+        }
+
+        /**
+         * @return The number of actions admitted after waiting in the queue
+         * @since 21.03.22
+         */
+        public long getAdmittedAfterWait() {
+            return this.admittedAfterWait.sum();
+        }
+
+        /**
+         * @return The number of actions rejected because the queue was full
+         * @since 21.03.22
+         */
+        public long getRejectedQueueFull() {
+            return this.rejectedQueueFull.sum();
+        }
+
+        /**
+         * @return The number of actions rejected after waiting in the queue for too long
+         * @since 21.03.22
+         */
+        public long getRejectedTimeout() {
+            return this.rejectedTimeout.sum();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                "inFlight=%d/%d queued=%d admitted=%d admittedAfterWait=%d rejectedQueueFull=%d rejectedTimeout=%d",
+                this.getInFlight(),
+                this.maxInFlight,
+                this.getQueued(),
+                this.getAdmitted(),
+                this.getAdmittedAfterWait(),
+                this.getRejectedQueueFull(),
+                this.getRejectedTimeout()
+            );
+        }
+
+        /**
+         * An action waiting to be admitted.
+         *
+         * @since 21.03.22
+         */
+        private static final class Waiter {
+
+            /**
+             * @since 21.03.22
+             */
+            private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+            /**
+             * @since 21.03.22
+             */
+            private volatile ScheduledFuture<?> timeout;
+        }
+    }
+}
@@ -5,6 +5,7 @@
  */
 package play.db.ebean.orm.actions;
 
+import io.ebean.annotation.TxIsolation;
 import play.mvc.With;
 
 import java.lang.annotation.ElementType;
@@ -21,4 +22,49 @@ import java.lang.annotation.Target;
 @Target({ElementType.TYPE, ElementType.METHOD})
 @Retention(RetentionPolicy.RUNTIME)
 public @interface Transactional {
+
+    /**
+     * The name of the Ebean server to use. The default server is
+     * used if empty.
+     *
+     * @return The Ebean server name
+     * @since 21.03.04
+     */
+    String server() default "";
+
+    /**
+     * The transaction isolation level.
+     *
+     * @return The isolation level
+     * @since 21.03.04
+     */
+    TxIsolation isolation() default TxIsolation.DEFAULT;
+
+    /**
+     * Is the transaction read only?
+     *
+     * @return {@code true} if the transaction is read only
+     * @since 21.03.04
+     */
+    boolean readOnly() default false;
+
+    /**
+     * The JDBC batch size. Batch mode is enabled if greater than 0.
+     *
+     * @return The batch size
+     * @since 21.03.04
+     */
+    int batchSize() default 0;
+
+    /**
+     * Keep the transaction open until the {@code CompletionStage} returned
+     * by the action completes. The action is called on the Ebean dispatcher,
+     * the transaction is committed if the stage completes normally and rolled
+     * back if it completes exceptionally. The transaction is also available
+     * with the request attribute {@link TransactionalAction#TRANSACTION}.
+     *
+     * @return {@code true} to span the whole {@code CompletionStage}
+     * @since 21.03.04
+     */
+    boolean async() default false;
 }
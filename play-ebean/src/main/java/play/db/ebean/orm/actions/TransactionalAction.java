@@ -5,12 +5,25 @@
  */
 package play.db.ebean.orm.actions;
 
+import com.typesafe.config.ConfigFactory;
 import io.ebean.DB;
+import io.ebean.Database;
+import io.ebean.Transaction;
+import io.ebean.TxScope;
+import io.ebean.annotation.PersistBatch;
+import io.ebeaninternal.api.SpiEbeanServer;
+import io.ebeaninternal.api.SpiTransaction;
+import io.ebeaninternal.api.SpiTransactionManager;
+import play.libs.concurrent.HttpExecution;
+import play.libs.typedmap.TypedKey;
 import play.mvc.Action;
 import play.mvc.Http;
 import play.mvc.Result;
 
+import javax.inject.Inject;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 
 /**
  * Wraps an action in an Ebean transaction.
@@ -19,8 +32,234 @@ import java.util.concurrent.CompletionStage;
  */
 public class TransactionalAction extends Action<Transactional> {
 
+    /**
+     * Request attribute holding the transaction of an asynchronous action.
+     *
+     * @since 21.03.04
+     */
+    public static final TypedKey<Transaction> TRANSACTION = TypedKey.create("ebeanTransaction");
+
+    /**
+     * @since 21.03.04
+     */
+    private final TransactionalExecutionContext executionContext;
+
+    /**
+     * @since 21.03.22
+     */
+    private final TransactionAdmission admission;
+
+    /**
+     * Build a new instance without admission control.
+     *
+     * @param executionContext The execution context used by asynchronous actions
+     * @since 21.03.04
+     */
+    public TransactionalAction(final TransactionalExecutionContext executionContext) {
+        this(executionContext, new TransactionAdmission(ConfigFactory.empty()));
+    }
+
+    /**
+     * Build a new instance.
+     *
+     * @param executionContext The execution context used by asynchronous actions
+     * @param admission        The admission control of the transactional actions
+     * @since 21.03.22
+     */
+    @Inject
+    public TransactionalAction(final TransactionalExecutionContext executionContext,
+                               final TransactionAdmission admission) {
+        this.executionContext = executionContext;
+        this.admission = admission;
+    }
+
     @Override
     public CompletionStage<Result> call(final Http.Request req) {
-        return DB.executeCall(() -> this.delegate.call(req));
+        final Database database = this.configuration.server().isEmpty()
+            ? DB.getDefault()
+            : DB.byName(this.configuration.server());
+        final TransactionAdmission.Limiter limiter = this.admission.limiter(database.getName());
+        if (limiter == null) {
+            return this.callTransactional(database, req);
+        }
+        final CompletableFuture<Boolean> admission = limiter.admit();
+        if (admission.isDone()) {
+            return admission.join()
+                ? this.callAdmitted(limiter, database, req)
+                : CompletableFuture.completedFuture(limiter.rejected());
+        }
+        // Queued: the action runs once admitted, on the Ebean dispatcher
+        return admission.thenComposeAsync(
+            admitted -> admitted
+                ? this.callAdmitted(limiter, database, req)
+                : CompletableFuture.completedFuture(limiter.rejected()),
+            HttpExecution.fromThread((Executor) this.executionContext)
+        );
+    }
+
+    /**
+     * Call an admitted action in a transaction, then release its
+     * admission.
+     *
+     * @param limiter  The admission limiter
+     * @param database The Ebean server to use
+     * @param req      The current request
+     * @return The result of the action
+     * @since 21.03.22
+     */
+    private CompletionStage<Result> callAdmitted(final TransactionAdmission.Limiter limiter, final Database database,
+                                                 final Http.Request req) {
+        final CompletionStage<Result> result;
+        try {
+            result = this.callTransactional(database, req);
+        } catch (final Throwable ex) {
+            limiter.release();
+            throw ex;
+        }
+        if (this.configuration.async()) {
+            // The transaction is open until the stage completes
+            return result.whenComplete((value, error) -> limiter.release());
+        }
+        limiter.release();
+        return result;
+    }
+
+    /**
+     * Call the action in a transaction.
+     *
+     * @param database The Ebean server to use
+     * @param req      The current request
+     * @return The result of the action
+     * @since 21.03.22
+     */
+    private CompletionStage<Result> callTransactional(final Database database, final Http.Request req) {
+        if (this.configuration.async()) {
+            return this.callAsync(database, req);
+        }
+        if (this.useReadOnlyDataSource(database)) {
+            return this.callReadOnly(database, req);
+        }
+        return database.executeCall(this.createTxScope(), () -> this.delegate.call(req));
+    }
+
+    /**
+     * Call the action in a transaction using the read-only datasource.
+     *
+     * @param database The Ebean server to use
+     * @param req      The current request
+     * @return The result of the action
+     * @since 21.03.05
+     */
+    private CompletionStage<Result> callReadOnly(final Database database, final Http.Request req) {
+        final SpiEbeanServer spiServer = (SpiEbeanServer) database.getPluginApi();
+        final SpiTransaction transaction = spiServer.createReadOnlyTransaction(null);
+        final SpiTransactionManager transactionManager = spiServer.getTransactionManager();
+        transactionManager.externalBeginTransaction(transaction, this.createTxScope());
+        try {
+            return this.delegate.call(req);
+        } finally {
+            transactionManager.externalRemoveTransaction();
+            transaction.end();
+        }
+    }
+
+    /**
+     * Call the action on the Ebean dispatcher and keep the transaction
+     * open until the returned stage completes.
+     *
+     * @param database The Ebean server to use
+     * @param req      The current request
+     * @return The result of the action
+     * @since 21.03.04
+     */
+    private CompletionStage<Result> callAsync(final Database database, final Http.Request req) {
+        final CompletableFuture<Result> result = new CompletableFuture<>();
+        this.executionContext.execute(() -> {
+            final Transaction transaction;
+            final CompletionStage<Result> stage;
+            try {
+                transaction = this.createTransaction(database);
+            } catch (final Throwable ex) {
+                result.completeExceptionally(ex);
+                return;
+            }
+            final SpiTransactionManager transactionManager = ((SpiEbeanServer) database.getPluginApi())
+                .getTransactionManager();
+            transactionManager.externalBeginTransaction((SpiTransaction) transaction, this.createTxScope());
+            try {
+                stage = this.delegate.call(req.addAttr(TRANSACTION, transaction));
+            } catch (final Throwable ex) {
+                transaction.end();
+                result.completeExceptionally(ex);
+                return;
+            } finally {
+                transactionManager.externalRemoveTransaction();
+            }
+            stage.whenCompleteAsync((value, error) -> {
+                try {
+                    if (error == null) {
+                        transaction.commit();
+                        result.complete(value);
+                    } else {
+                        transaction.rollback(error);
+                        result.completeExceptionally(error);
+                    }
+                } catch (final Throwable ex) {
+                    result.completeExceptionally(ex);
+                } finally {
+                    transaction.end();
+                }
+            }, this.executionContext);
+        });
+        return result;
+    }
+
+    /**
+     * Create a transaction which is not bound to the current thread.
+     *
+     * @param database The Ebean server to use
+     * @return The transaction
+     * @since 21.03.04
+     */
+    private Transaction createTransaction(final Database database) {
+        if (this.useReadOnlyDataSource(database)) {
+            return ((SpiEbeanServer) database.getPluginApi()).createReadOnlyTransaction(null);
+        }
+        final Transaction transaction = database.createTransaction(this.configuration.isolation());
+        transaction.setReadOnly(this.configuration.readOnly());
+        if (this.configuration.batchSize() > 0) {
+            transaction.setBatchMode(true);
+            transaction.setBatchSize(this.configuration.batchSize());
+        }
+        return transaction;
+    }
+
+    /**
+     * Must the transaction use the read-only datasource? This is the case
+     * if the action is read only and the server has a read-only datasource.
+     *
+     * @param database The Ebean server to use
+     * @return {@code true} if the read-only datasource must be used
+     * @since 21.03.05
+     */
+    private boolean useReadOnlyDataSource(final Database database) {
+        return this.configuration.readOnly()
+            && ((SpiEbeanServer) database.getPluginApi()).getTransactionManager().getReadOnlyDataSource() != null;
+    }
+
+    /**
+     * Create the transaction scope from the annotation attributes.
+     *
+     * @return The transaction scope
+     * @since 21.03.04
+     */
+    private TxScope createTxScope() {
+        final TxScope txScope = TxScope.required()
+            .setIsolation(this.configuration.isolation())
+            .setReadOnly(this.configuration.readOnly());
+        if (this.configuration.batchSize() > 0) {
+            txScope.setBatch(PersistBatch.ALL).setBatchSize(this.configuration.batchSize());
+        }
+        return txScope;
     }
 }
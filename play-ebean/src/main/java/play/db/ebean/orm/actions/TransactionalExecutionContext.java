@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+package play.db.ebean.orm.actions;
+
+import akka.actor.ActorSystem;
+import play.libs.concurrent.CustomExecutionContext;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Execution context used to run asynchronous transactional actions,
+ * backed by the dispatcher {@code ebean.transactional.dispatcher}.
+ *
+ * @since 21.03.04
+ */
+@Singleton
+public class TransactionalExecutionContext extends CustomExecutionContext {
+
+    /**
+     * Build a new instance.
+     *
+     * @param actorSystem The current actor system
+     * @since 21.03.04
+     */
+    @Inject
+    public TransactionalExecutionContext(final ActorSystem actorSystem) {
+        super(actorSystem, "ebean.transactional.dispatcher");
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+package play.db.ebean.orm.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.ebean.cache.QueryCacheEntry;
+import io.ebean.cache.QueryCacheEntryValidate;
+import io.ebean.cache.ServerCache;
+import io.ebean.cache.ServerCacheConfig;
+import io.ebean.cache.ServerCacheOptions;
+import io.ebean.cache.ServerCacheStatistics;
+import io.ebean.cache.TenantAwareKey;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ebean L2 cache backed by a bounded Caffeine cache.
+ *
+ * @since 21.03.07
+ */
+final class CaffeineServerCache implements ServerCache {
+
+    /**
+     * @since 21.03.07
+     */
+    private final String name;
+
+    /**
+     * @since 21.03.07
+     */
+    private final int maxSize;
+
+    /**
+     * Keep the bean data and collection ids in a compact binary form.
+     *
+     * @since 21.03.07
+     */
+    private final boolean serialized;
+
+    /**
+     * @since 21.03.07
+     */
+    private final TenantAwareKey tenantAwareKey;
+
+    /**
+     * Validate the query cache entries, {@code null} for other caches.
+     *
+     * @since 21.03.07
+     */
+    private final QueryCacheEntryValidate queryCacheEntryValidate;
+
+    /**
+     * @since 21.03.07
+     */
+    private final Cache<Object, Object> cache;
+
+    /**
+     * @since 21.03.07
+     */
+    private final LongAdder hitCount = new LongAdder();
+
+    /**
+     * @since 21.03.07
+     */
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * @since 21.03.07
+     */
+    private final LongAdder putCount = new LongAdder();
+
+    /**
+     * @since 21.03.07
+     */
+    private final LongAdder removeCount = new LongAdder();
+
+    /**
+     * @since 21.03.07
+     */
+    private final LongAdder clearCount = new LongAdder();
+
+    /**
+     * @since 21.03.07
+     */
+    private final LongAdder evictCount = new LongAdder();
+
+    /**
+     * Build a new instance.
+     *
+     * @param config     The cache configuration
+     * @param options    The cache options to use
+     * @param serialized {@code true} to keep the values in a compact binary form
+     * @since 21.03.07
+     */
+    CaffeineServerCache(final ServerCacheConfig config, final ServerCacheOptions options, final boolean serialized) {
+        this.name = config.getCacheKey();
+        this.maxSize = options.getMaxSize();
+        this.serialized = serialized;
+        this.tenantAwareKey = new TenantAwareKey(config.getTenantProvider());
+        this.queryCacheEntryValidate = config.isQueryCache() ? config.getQueryCacheEntryValidate() : null;
+
+        // The maintenance runs on the calling thread, so the size bound and
+        // the eviction counter are up to date as soon as a value is put
+        final Caffeine<Object, Object> builder = Caffeine.newBuilder()
+            .executor(Runnable::run)
+            .removalListener((key, value, cause) -> {
+                if (cause.wasEvicted()) {
+                    this.evictCount.increment();
+                }
+            });
+        if (options.getMaxSize() > 0) {
+            builder.maximumSize(options.getMaxSize());
+        }
+        if (options.getMaxSecsToLive() > 0) {
+            builder.expireAfterWrite(options.getMaxSecsToLive(), TimeUnit.SECONDS);
+        }
+        if (options.getMaxIdleSecs() > 0) {
+            builder.expireAfterAccess(options.getMaxIdleSecs(), TimeUnit.SECONDS);
+        }
+        this.cache = builder.build();
+    }
+
+    @Override
+    public Object get(final Object id) {
+        final Object key = this.tenantAwareKey.key(id);
+        Object value = this.cache.getIfPresent(key);
+        if (value instanceof CompactCachedValue) {
+            value = ((CompactCachedValue) value).read();
+            if (value == null) {
+                this.cache.invalidate(key);
+            }
+        }
+        if (value != null && this.queryCacheEntryValidate != null) {
+            final QueryCacheEntry entry = (QueryCacheEntry) value;
+            if (this.queryCacheEntryValidate.isValid(entry)) {
+                value = entry.getValue();
+            } else {
+                this.cache.invalidate(key);
+                value = null;
+            }
+        }
+        if (value == null) {
+            this.missCount.increment();
+        } else {
+            this.hitCount.increment();
+        }
+        return value;
+    }
+
+    @Override
+    public void put(final Object id, final Object value) {
+        this.putCount.increment();
+        this.cache.put(this.tenantAwareKey.key(id), this.serialized ? CompactCachedValue.of(value) : value);
+    }
+
+    @Override
+    public void remove(final Object id) {
+        this.removeCount.increment();
+        this.cache.invalidate(this.tenantAwareKey.key(id));
+    }
+
+    @Override
+    public void clear() {
+        this.clearCount.increment();
+        this.cache.invalidateAll();
+    }
+
+    @Override
+    public int size() {
+        return (int) this.cache.estimatedSize();
+    }
+
+    @Override
+    public int getHitRatio() {
+        final long hits = this.hitCount.sum();
+        final long total = hits + this.missCount.sum();
+        return total == 0 ? 0 : (int) (hits * 100 / total);
+    }
+
+    @Override
+    public ServerCacheStatistics getStatistics(final boolean reset) {
+        final ServerCacheStatistics statistics = new ServerCacheStatistics();
+        statistics.setCacheName(this.name);
+        statistics.setMaxSize(this.maxSize);
+        statistics.setSize(this.size());
+        statistics.setHitCount(reset ? this.hitCount.sumThenReset() : this.hitCount.sum());
+        statistics.setMissCount(reset ? this.missCount.sumThenReset() : this.missCount.sum());
+        statistics.setPutCount(reset ? this.putCount.sumThenReset() : this.putCount.sum());
+        statistics.setRemoveCount(reset ? this.removeCount.sumThenReset() : this.removeCount.sum());
+        statistics.setClearCount(reset ? this.clearCount.sumThenReset() : this.clearCount.sum());
+        statistics.setEvictCount(reset ? this.evictCount.sumThenReset() : this.evictCount.sum());
+        return statistics;
+    }
+}
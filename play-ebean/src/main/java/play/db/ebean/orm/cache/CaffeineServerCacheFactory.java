@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+package play.db.ebean.orm.cache;
+
+import io.ebean.cache.ServerCache;
+import io.ebean.cache.ServerCacheConfig;
+import io.ebean.cache.ServerCacheFactory;
+import io.ebean.cache.ServerCacheNotify;
+import io.ebean.cache.ServerCacheOptions;
+import io.ebean.cache.ServerCacheType;
+
+import java.util.Map;
+
+/**
+ * Create the Caffeine backed caches of an Ebean server.
+ *
+ * @since 21.03.07
+ */
+final class CaffeineServerCacheFactory implements ServerCacheFactory {
+
+    /**
+     * @since 21.03.07
+     */
+    private final Map<String, ServerCacheOptions> beanOptions;
+
+    /**
+     * @since 21.03.07
+     */
+    private final Map<String, ServerCacheOptions> queryOptions;
+
+    /**
+     * @since 21.03.07
+     */
+    private final boolean serialized;
+
+    /**
+     * Build a new instance.
+     *
+     * @param beanOptions  The bean cache options, by bean class name
+     * @param queryOptions The query cache options, by bean class name
+     * @param serialized   {@code true} to keep the cached beans in a compact binary form
+     * @since 21.03.07
+     */
+    CaffeineServerCacheFactory(final Map<String, ServerCacheOptions> beanOptions,
+                               final Map<String, ServerCacheOptions> queryOptions,
+                               final boolean serialized) {
+        this.beanOptions = beanOptions;
+        this.queryOptions = queryOptions;
+        this.serialized = serialized;
+    }
+
+    @Override
+    public ServerCache createCache(final ServerCacheConfig config) {
+        final String beanName = CaffeineServerCacheFactory.beanName(config);
+        final ServerCacheOptions override = config.isQueryCache()
+            ? this.queryOptions.get(beanName)
+            : this.beanOptions.get(beanName);
+        final ServerCacheOptions options = override == null
+            ? config.getCacheOptions()
+            : override.copy().applyDefaults(config.getCacheOptions());
+        return new CaffeineServerCache(config, options, this.serialized && !config.isQueryCache());
+    }
+
+    @Override
+    public ServerCacheNotify createCacheNotify(final ServerCacheNotify listener) {
+        // Caches are local: the table modifications are given back to Ebean,
+        // which invalidates the query caches. Remote invalidation is handled
+        // by the Ebean clustering
+        return listener;
+    }
+
+    /**
+     * Get the bean class name from the cache key. Keys are built as
+     * {@code <bean class>[.<property>]<type code>}.
+     *
+     * @param config The cache configuration
+     * @return The bean class name
+     * @since 21.03.07
+     */
+    private static String beanName(final ServerCacheConfig config) {
+        final String cacheKey = config.getCacheKey();
+        final String name = cacheKey.endsWith(config.getType().code())
+            ? cacheKey.substring(0, cacheKey.length() - config.getType().code().length())
+            : cacheKey;
+        if (config.getType() == ServerCacheType.COLLECTION_IDS) {
+            final int idx = name.lastIndexOf('.');
+            return idx > 0 ? name.substring(0, idx) : name;
+        }
+        return name;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+package play.db.ebean.orm.cache;
+
+import io.ebean.BackgroundExecutor;
+import io.ebean.cache.ServerCacheFactory;
+import io.ebean.cache.ServerCacheOptions;
+import io.ebean.cache.ServerCachePlugin;
+import io.ebean.config.DatabaseConfig;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * L2 cache plugin backed by Caffeine. Caches are bounded and evicted
+ * using the W-TinyLFU policy. The size and the expiration of each cache
+ * can be overridden per bean type.
+ *
+ * @since 21.03.07
+ */
+public class CaffeineServerCachePlugin implements ServerCachePlugin {
+
+    /**
+     * Bean cache options, by bean class name.
+     *
+     * @since 21.03.07
+     */
+    private final Map<String, ServerCacheOptions> beanOptions;
+
+    /**
+     * Query cache options, by bean class name.
+     *
+     * @since 21.03.07
+     */
+    private final Map<String, ServerCacheOptions> queryOptions;
+
+    /**
+     * Keep the cached beans in a compact binary form.
+     *
+     * @since 21.03.07
+     */
+    private final boolean serialized;
+
+    /**
+     * Build a new instance.
+     *
+     * @param beanOptions  The bean cache options, by bean class name
+     * @param queryOptions The query cache options, by bean class name
+     * @param serialized   {@code true} to keep the cached beans in a compact binary form
+     * @since 21.03.07
+     */
+    public CaffeineServerCachePlugin(final Map<String, ServerCacheOptions> beanOptions,
+                                     final Map<String, ServerCacheOptions> queryOptions,
+                                     final boolean serialized) {
+        this.beanOptions = Collections.unmodifiableMap(new HashMap<>(beanOptions));
+        this.queryOptions = Collections.unmodifiableMap(new HashMap<>(queryOptions));
+        this.serialized = serialized;
+    }
+
+    @Override
+    public ServerCacheFactory create(final DatabaseConfig config, final BackgroundExecutor executor) {
+        return new CaffeineServerCacheFactory(this.beanOptions, this.queryOptions, this.serialized);
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+package play.db.ebean.orm.cache;
+
+import io.ebeaninternal.server.cache.CachedBeanData;
+import io.ebeaninternal.server.cache.CachedManyIds;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Bean cache value kept in a compact binary form. The bean data and the
+ * collection ids are written with their own {@code Externalizable}
+ * methods into a plain {@link DataOutput}: no stream header nor class
+ * descriptor, and a one byte tag before the usual cached values (strings,
+ * numbers, UUID). Other values fall back to the Java serialization.
+ *
+ * @since 21.03.07
+ */
+final class CompactCachedValue {
+
+    /**
+     * Logger.
+     *
+     * @since 21.03.07
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompactCachedValue.class);
+
+    /**
+     * @since 21.03.07
+     */
+    private static final byte TAG_NULL = 0;
+
+    /**
+     * @since 21.03.07
+     */
+    private static final byte TAG_STRING = 1;
+
+    /**
+     * @since 21.03.07
+     */
+    private static final byte TAG_LONG_STRING = 2;
+
+    /**
+     * @since 21.03.07
+     */
+    private static final byte TAG_LONG = 3;
+
+    /**
+     * @since 21.03.07
+     */
+    private static final byte TAG_INTEGER = 4;
+
+    /**
+     * @since 21.03.07
+     */
+    private static final byte TAG_BOOLEAN = 5;
+
+    /**
+     * @since 21.03.07
+     */
+    private static final byte TAG_DOUBLE = 6;
+
+    /**
+     * @since 21.03.07
+     */
+    private static final byte TAG_DECIMAL = 7;
+
+    /**
+     * @since 21.03.07
+     */
+    private static final byte TAG_UUID = 8;
+
+    /**
+     * @since 21.03.07
+     */
+    private static final byte TAG_SERIALIZED = 9;
+
+    /**
+     * {@code true} for a {@link CachedManyIds}, {@code false} for a
+     * {@link CachedBeanData}.
+     *
+     * @since 21.03.07
+     */
+    private final boolean manyIds;
+
+    /**
+     * @since 21.03.07
+     */
+    private final byte[] bytes;
+
+    /**
+     * Build a new instance.
+     *
+     * @param manyIds {@code true} if the value is a {@link CachedManyIds}
+     * @param bytes   The encoded value
+     * @since 21.03.07
+     */
+    private CompactCachedValue(final boolean manyIds, final byte[] bytes) {
+        this.manyIds = manyIds;
+        this.bytes = bytes;
+    }
+
+    /**
+     * Encode the given value. Values other than bean data and collection
+     * ids, or that can't be encoded, are returned as is.
+     *
+     * @param value The value to encode
+     * @return The value to cache
+     * @since 21.03.07
+     */
+    static Object of(final Object value) {
+        if (!(value instanceof CachedBeanData) && !(value instanceof CachedManyIds)) {
+            return value;
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (final CompactOutput output = new CompactOutput(bytes)) {
+            ((Externalizable) value).writeExternal(output);
+        } catch (final IOException ex) {
+            LOGGER.debug("Can't encode cached value of type {}", value.getClass().getName(), ex);
+            return value;
+        }
+        return new CompactCachedValue(value instanceof CachedManyIds, bytes.toByteArray());
+    }
+
+    /**
+     * Decode the value.
+     *
+     * @return The value, or {@code null} if it can't be decoded
+     * @since 21.03.07
+     */
+    Object read() {
+        final Externalizable value = this.manyIds ? new CachedManyIds() : new CachedBeanData();
+        try (final CompactInput input = new CompactInput(new ByteArrayInputStream(this.bytes))) {
+            value.readExternal(input);
+            return value;
+        } catch (final IOException | ClassNotFoundException ex) {
+            LOGGER.warn("Can't decode cached value, entry discarded", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Object output writing the usual cached values with a one byte tag.
+     *
+     * @since 21.03.07
+     */
+    private static final class CompactOutput extends DataOutputStream implements ObjectOutput {
+
+        /**
+         * Build a new instance.
+         *
+         * @param out The stream to write to
+         * @since 21.03.07
+         */
+        private CompactOutput(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void writeObject(final Object obj) throws IOException {
+            if (obj == null) {
+                this.writeByte(TAG_NULL);
+            } else if (obj instanceof String) {
+                final String value = (String) obj;
+                if (value.length() < 0x5555) {
+                    // At most 3 bytes by char, under the writeUTF limit
+                    this.writeByte(TAG_STRING);
+                    this.writeUTF(value);
+                } else {
+                    final byte[] data = value.getBytes(StandardCharsets.UTF_8);
+                    this.writeByte(TAG_LONG_STRING);
+                    this.writeInt(data.length);
+                    this.write(data);
+                }
+            } else if (obj instanceof Long) {
+                this.writeByte(TAG_LONG);
+                this.writeLong((Long) obj);
+            } else if (obj instanceof Integer) {
+                this.writeByte(TAG_INTEGER);
+                this.writeInt((Integer) obj);
+            } else if (obj instanceof Boolean) {
+                this.writeByte(TAG_BOOLEAN);
+                this.writeBoolean((Boolean) obj);
+            } else if (obj instanceof Double) {
+                this.writeByte(TAG_DOUBLE);
+                this.writeDouble((Double) obj);
+            } else if (obj instanceof BigDecimal) {
+                this.writeByte(TAG_DECIMAL);
+                this.writeUTF(obj.toString());
+            } else if (obj instanceof UUID) {
+                this.writeByte(TAG_UUID);
+                this.writeLong(((UUID) obj).getMostSignificantBits());
+                this.writeLong(((UUID) obj).getLeastSignificantBits());
+            } else {
+                final ByteArrayOutputStream data = new ByteArrayOutputStream(128);
+                try (final ObjectOutputStream oos = new ObjectOutputStream(data)) {
+                    oos.writeObject(obj);
+                }
+                this.writeByte(TAG_SERIALIZED);
+                this.writeInt(data.size());
+                data.writeTo(this);
+            }
+        }
+    }
+
+    /**
+     * Object input reading the values written by {@link CompactOutput}.
+     *
+     * @since 21.03.07
+     */
+    private static final class CompactInput extends DataInputStream implements ObjectInput {
+
+        /**
+         * Build a new instance.
+         *
+         * @param in The stream to read from
+         * @since 21.03.07
+         */
+        private CompactInput(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public Object readObject() throws ClassNotFoundException, IOException {
+            final byte tag = this.readByte();
+            switch (tag) {
+                case TAG_NULL:
+                    return null;
+                case TAG_STRING:
+                    return this.readUTF();
+                case TAG_LONG_STRING:
+                    return new String(this.readBytes(), StandardCharsets.UTF_8);
+                case TAG_LONG:
+                    return this.readLong();
+                case TAG_INTEGER:
+                    return this.readInt();
+                case TAG_BOOLEAN:
+                    return this.readBoolean();
+                case TAG_DOUBLE:
+                    return this.readDouble();
+                case TAG_DECIMAL:
+                    return new BigDecimal(this.readUTF());
+                case TAG_UUID:
+                    return new UUID(this.readLong(), this.readLong());
+                case TAG_SERIALIZED:
+                    try (final ObjectInputStream ois = new ContextObjectInputStream(new ByteArrayInputStream(this.readBytes()))) {
+                        return ois.readObject();
+                    }
+                default:
+                    throw new StreamCorruptedException("Unknown cached value tag " + tag);
+            }
+        }
+
+        /**
+         * Read a length prefixed byte array.
+         *
+         * @return The bytes read
+         * @throws IOException If the bytes can't be read
+         * @since 21.03.07
+         */
+        private byte[] readBytes() throws IOException {
+            final byte[] data = new byte[this.readInt()];
+            this.readFully(data);
+            return data;
+        }
+    }
+
+    /**
+     * Object input stream resolving the classes with the context class loader,
+     * so the application classes are found in development mode.
+     *
+     * @since 21.03.07
+     */
+    private static final class ContextObjectInputStream extends ObjectInputStream {
+
+        /**
+         * Build a new instance.
+         *
+         * @param in The input stream to read from
+         * @throws IOException If the stream header can't be read
+         * @since 21.03.07
+         */
+        private ContextObjectInputStream(final InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(final ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+            if (classLoader != null) {
+                try {
+                    return Class.forName(desc.getName(), false, classLoader);
+                } catch (final ClassNotFoundException ignore) {
+                    // Fallback to the default resolution
+                }
+            }
+            return super.resolveClass(desc);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+
+/**
+ * Provides a bounded in-process L2 cache backend for Ebean.
+ *
+ * @since 21.03.07
+ */
+package play.db.ebean.orm.cache;
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+package play.db.ebean.orm.cluster;
+
+/**
+ * Snapshot of the cluster transport counters.
+ *
+ * @since 21.03.08
+ */
+public final class ClusterStatistics {
+
+    /**
+     * @since 21.03.08
+     */
+    private final long eventsBroadcast;
+
+    /**
+     * @since 21.03.08
+     */
+    private final long messagesSent;
+
+    /**
+     * @since 21.03.08
+     */
+    private final long bytesSent;
+
+    /**
+     * @since 21.03.08
+     */
+    private final long messagesReceived;
+
+    /**
+     * @since 21.03.08
+     */
+    private final long bytesReceived;
+
+    /**
+     * @since 21.03.08
+     */
+    private final long lastLagMillis;
+
+    /**
+     * @since 21.03.08
+     */
+    private final long maxLagMillis;
+
+    /**
+     * Build a new instance.
+     *
+     * @param eventsBroadcast  The number of transaction events to broadcast
+     * @param messagesSent     The number of messages sent to the other members
+     * @param bytesSent        The number of bytes sent to the other members
+     * @param messagesReceived The number of messages received from the other members
+     * @param bytesReceived    The number of bytes received from the other members
+     * @param lastLagMillis    The lag of the last message received
+     * @param maxLagMillis     The highest lag observed
+     * @since 21.03.08
+     */
+    ClusterStatistics(final long eventsBroadcast, final long messagesSent, final long bytesSent,
+                      final long messagesReceived, final long bytesReceived,
+                      final long lastLagMillis, final long maxLagMillis) {
+        this.eventsBroadcast = eventsBroadcast;
+        this.messagesSent = messagesSent;
+        this.bytesSent = bytesSent;
+        this.messagesReceived = messagesReceived;
+        this.bytesReceived = bytesReceived;
+        this.lastLagMillis = lastLagMillis;
+        this.maxLagMillis = maxLagMillis;
+    }
+
+    /**
+     * Get the number of transaction events to broadcast, before coalescing.
+     *
+     * @return The number of events
+     * @since 21.03.08
+     */
+    public long getEventsBroadcast() {
+        return this.eventsBroadcast;
+    }
+
+    /**
+     * Get the number of messages sent, all members included.
+     *
+     * @return The number of messages
+     * @since 21.03.08
+     */
+    public long getMessagesSent() {
+        return this.messagesSent;
+    }
+
+    /**
+     * Get the number of bytes sent, all members included.
+     *
+     * @return The number of bytes
+     * @since 21.03.08
+     */
+    public long getBytesSent() {
+        return this.bytesSent;
+    }
+
+    /**
+     * Get the number of messages received.
+     *
+     * @return The number of messages
+     * @since 21.03.08
+     */
+    public long getMessagesReceived() {
+        return this.messagesReceived;
+    }
+
+    /**
+     * Get the number of bytes received.
+     *
+     * @return The number of bytes
+     * @since 21.03.08
+     */
+    public long getBytesReceived() {
+        return this.bytesReceived;
+    }
+
+    /**
+     * Get the delay between the sending and the reception of the last
+     * message received. Relies on the clocks of the members.
+     *
+     * @return The lag in milliseconds
+     * @since 21.03.08
+     */
+    public long getLastLagMillis() {
+        return this.lastLagMillis;
+    }
+
+    /**
+     * Get the highest delay between the sending and the reception of a
+     * message. Relies on the clocks of the members.
+     *
+     * @return The lag in milliseconds
+     * @since 21.03.08
+     */
+    public long getMaxLagMillis() {
+        return this.maxLagMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ClusterStatistics[eventsBroadcast=" + this.eventsBroadcast
+            + ", messagesSent=" + this.messagesSent
+            + ", bytesSent=" + this.bytesSent
+            + ", messagesReceived=" + this.messagesReceived
+            + ", bytesReceived=" + this.bytesReceived
+            + ", lastLagMillis=" + this.lastLagMillis
+            + ", maxLagMillis=" + this.maxLagMillis + "]";
+    }
+}
@@ -0,0 +1,564 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+package play.db.ebean.orm.cluster;
+
+import io.ebeaninternal.api.TransactionEventTable;
+import io.ebeaninternal.server.cache.RemoteCacheEvent;
+import io.ebeaninternal.server.cluster.BinaryTransactionEventReader;
+import io.ebeaninternal.server.cluster.ClusterBroadcast;
+import io.ebeaninternal.server.cluster.ServerLookup;
+import io.ebeaninternal.server.core.PersistRequest;
+import io.ebeaninternal.server.deploy.BeanDescriptor;
+import io.ebeaninternal.server.transaction.BeanPersistIds;
+import io.ebeaninternal.server.transaction.DeleteByIdMap;
+import io.ebeaninternal.server.transaction.RemoteTableMod;
+import io.ebeaninternal.server.transaction.RemoteTransactionEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Socket based cluster transport. Transaction events are buffered and
+ * sent every flush interval, or as soon as the max batch size is
+ * reached. Buffered events of the same server are merged in a single
+ * message, the modifications of a table being reported only once.
+ *
+ * @since 21.03.08
+ */
+public class CoalescingClusterBroadcast implements ClusterBroadcast {
+
+    /**
+     * Logger.
+     *
+     * @since 21.03.08
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(CoalescingClusterBroadcast.class);
+
+    /**
+     * Connection timeout to the other members.
+     *
+     * @since 21.03.08
+     */
+    private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+
+    /**
+     * Max size of a received message. Larger or negative sizes are
+     * considered as a corrupted stream and close the connection.
+     *
+     * @since 21.03.08
+     */
+    static final int MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * The deletions by id of an event, not exposed by Ebean.
+     *
+     * @since 21.03.08
+     */
+    private static final Field DELETE_BY_ID_MAP;
+
+    static {
+        try {
+            DELETE_BY_ID_MAP = RemoteTransactionEvent.class.getDeclaredField("deleteByIdMap");
+            DELETE_BY_ID_MAP.setAccessible(true);
+        } catch (final NoSuchFieldException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    /**
+     * The started instance.
+     *
+     * @since 21.03.08
+     */
+    private static volatile CoalescingClusterBroadcast current;
+
+    /**
+     * @since 21.03.08
+     */
+    private final BinaryTransactionEventReader reader;
+
+    /**
+     * @since 21.03.08
+     */
+    private final InetSocketAddress localAddress;
+
+    /**
+     * @since 21.03.08
+     */
+    private final List<InetSocketAddress> members;
+
+    /**
+     * @since 21.03.08
+     */
+    private final long flushIntervalMillis;
+
+    /**
+     * @since 21.03.08
+     */
+    private final int maxBatchSize;
+
+    /**
+     * @since 21.03.08
+     */
+    private final Object lock = new Object();
+
+    /**
+     * @since 21.03.08
+     */
+    private List<RemoteTransactionEvent> pending = new ArrayList<>();
+
+    /**
+     * @since 21.03.08
+     */
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    /**
+     * Outgoing connections, only used by the flush thread.
+     *
+     * @since 21.03.08
+     */
+    private final Map<InetSocketAddress, DataOutputStream> outgoing = new HashMap<>();
+
+    /**
+     * @since 21.03.08
+     */
+    private final Set<Socket> incoming = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @since 21.03.08
+     */
+    private final LongAdder eventsBroadcast = new LongAdder();
+
+    /**
+     * @since 21.03.08
+     */
+    private final LongAdder messagesSent = new LongAdder();
+
+    /**
+     * @since 21.03.08
+     */
+    private final LongAdder bytesSent = new LongAdder();
+
+    /**
+     * @since 21.03.08
+     */
+    private final LongAdder messagesReceived = new LongAdder();
+
+    /**
+     * @since 21.03.08
+     */
+    private final LongAdder bytesReceived = new LongAdder();
+
+    /**
+     * @since 21.03.08
+     */
+    private final AtomicLong lastLagMillis = new AtomicLong();
+
+    /**
+     * @since 21.03.08
+     */
+    private final AtomicLong maxLagMillis = new AtomicLong();
+
+    /**
+     * @since 21.03.08
+     */
+    private ScheduledExecutorService flushExecutor;
+
+    /**
+     * @since 21.03.08
+     */
+    private ServerSocket serverSocket;
+
+    /**
+     * @since 21.03.08
+     */
+    private volatile boolean running;
+
+    /**
+     * Build a new instance.
+     *
+     * @param serverLookup        The lookup of the servers targeted by the received events
+     * @param localAddress        The address to listen on
+     * @param members             The addresses of all the members, the current one included
+     * @param flushIntervalMillis The flush interval, 0 to send the events immediately
+     * @param maxBatchSize        The max number of events merged in a single message
+     * @since 21.03.08
+     */
+    public CoalescingClusterBroadcast(final ServerLookup serverLookup, final InetSocketAddress localAddress,
+                                      final List<InetSocketAddress> members, final long flushIntervalMillis,
+                                      final int maxBatchSize) {
+        this.reader = new BinaryTransactionEventReader(serverLookup);
+        this.localAddress = localAddress;
+        this.members = new ArrayList<>(members);
+        this.members.remove(localAddress);
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    /**
+     * Get the started instance, if any.
+     *
+     * @return The started instance
+     * @since 21.03.08
+     */
+    public static Optional<CoalescingClusterBroadcast> current() {
+        return Optional.ofNullable(CoalescingClusterBroadcast.current);
+    }
+
+    @Override
+    public void startup() {
+        final AtomicInteger readerCount = new AtomicInteger();
+        try {
+            this.serverSocket = new ServerSocket();
+            this.serverSocket.setReuseAddress(true);
+            this.serverSocket.bind(this.localAddress);
+        } catch (final IOException ex) {
+            throw new UncheckedIOException("Can't listen on " + this.localAddress, ex);
+        }
+        this.running = true;
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "ebean-cluster-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (this.flushIntervalMillis > 0) {
+            this.flushExecutor.scheduleWithFixedDelay(
+                this::flush,
+                this.flushIntervalMillis,
+                this.flushIntervalMillis,
+                TimeUnit.MILLISECONDS
+            );
+        }
+        final Thread listener = new Thread(() -> {
+            while (this.running) {
+                try {
+                    final Socket socket = this.serverSocket.accept();
+                    final Thread thread = new Thread(
+                        () -> this.receive(socket),
+                        "ebean-cluster-reader-" + readerCount.incrementAndGet()
+                    );
+                    thread.setDaemon(true);
+                    thread.start();
+                } catch (final IOException ex) {
+                    if (this.running) {
+                        LOGGER.warn("Can't accept cluster connection", ex);
+                    }
+                }
+            }
+        }, "ebean-cluster-listener");
+        listener.setDaemon(true);
+        listener.start();
+        CoalescingClusterBroadcast.current = this;
+        LOGGER.info(
+            "Cluster listening on {}, flush interval {} ms, max batch size {}",
+            this.localAddress,
+            this.flushIntervalMillis,
+            this.maxBatchSize
+        );
+    }
+
+    @Override
+    public void shutdown() {
+        if (!this.running) {
+            return;
+        }
+        try {
+            this.flushExecutor.submit(this::flush).get(5, TimeUnit.SECONDS);
+        } catch (final Exception ex) {
+            LOGGER.warn("Can't flush the pending cluster messages", ex);
+        }
+        this.running = false;
+        this.flushExecutor.shutdownNow();
+        try {
+            this.flushExecutor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        CoalescingClusterBroadcast.closeQuietly(this.serverSocket);
+        this.incoming.forEach(CoalescingClusterBroadcast::closeQuietly);
+        this.outgoing.values().forEach(CoalescingClusterBroadcast::closeQuietly);
+        this.outgoing.clear();
+        if (CoalescingClusterBroadcast.current == this) {
+            CoalescingClusterBroadcast.current = null;
+        }
+    }
+
+    @Override
+    public void broadcast(final RemoteTransactionEvent event) {
+        final int size;
+        synchronized (this.lock) {
+            this.pending.add(event);
+            size = this.pending.size();
+        }
+        this.eventsBroadcast.increment();
+        if ((this.flushIntervalMillis <= 0 || size >= this.maxBatchSize)
+            && this.running && this.flushRequested.compareAndSet(false, true)) {
+            this.flushExecutor.execute(() -> {
+                this.flushRequested.set(false);
+                this.flush();
+            });
+        }
+    }
+
+    /**
+     * Get a snapshot of the counters.
+     *
+     * @return The counters
+     * @since 21.03.08
+     */
+    public ClusterStatistics getStatistics() {
+        return new ClusterStatistics(
+            this.eventsBroadcast.sum(),
+            this.messagesSent.sum(),
+            this.bytesSent.sum(),
+            this.messagesReceived.sum(),
+            this.bytesReceived.sum(),
+            this.lastLagMillis.get(),
+            this.maxLagMillis.get()
+        );
+    }
+
+    /**
+     * Send the pending events to the other members.
+     *
+     * @since 21.03.08
+     */
+    private void flush() {
+        final List<RemoteTransactionEvent> events;
+        synchronized (this.lock) {
+            if (this.pending.isEmpty()) {
+                return;
+            }
+            events = this.pending;
+            this.pending = new ArrayList<>();
+        }
+        final List<byte[]> messages = new ArrayList<>();
+        final Map<String, List<RemoteTransactionEvent>> eventsByServer = new LinkedHashMap<>();
+        events.forEach(event -> eventsByServer.computeIfAbsent(event.getServerName(), k -> new ArrayList<>()).add(event));
+        eventsByServer.forEach((serverName, serverEvents) -> {
+            for (int idx = 0; idx < serverEvents.size(); idx += this.maxBatchSize) {
+                final List<RemoteTransactionEvent> batch = serverEvents.subList(
+                    idx,
+                    Math.min(idx + this.maxBatchSize, serverEvents.size())
+                );
+                try {
+                    final byte[] message = this.merge(serverName, batch).writeBinaryAsBytes(1024);
+                    if (message.length > MAX_MESSAGE_SIZE) {
+                        LOGGER.error(
+                            "Cluster message for server '{}' is too large ({} bytes), reduce the max batch size",
+                            serverName,
+                            message.length
+                        );
+                    } else {
+                        messages.add(message);
+                    }
+                } catch (final IOException | RuntimeException ex) {
+                    LOGGER.error("Can't write cluster message for server '{}'", serverName, ex);
+                }
+            }
+        });
+        final long sentAt = System.currentTimeMillis();
+        for (final InetSocketAddress member : this.members) {
+            this.send(member, messages, sentAt);
+        }
+    }
+
+    /**
+     * Merge the events of a server in a single event. The modifications
+     * of a table are reported once, and the persisted ids are reported
+     * once per bean type.
+     *
+     * @param serverName The server name
+     * @param events     The events to merge
+     * @return The merged event
+     * @since 21.03.08
+     */
+    private RemoteTransactionEvent merge(final String serverName, final List<RemoteTransactionEvent> events) {
+        if (events.size() == 1) {
+            return events.get(0);
+        }
+        final RemoteTransactionEvent merged = new RemoteTransactionEvent(serverName);
+        final Map<String, TransactionEventTable.TableIUD> tables = new LinkedHashMap<>();
+        final Map<String, BeanDescriptor<?>> descriptors = new LinkedHashMap<>();
+        final Map<String, Set<Object>> ids = new HashMap<>();
+        final Set<String> modifiedTables = new LinkedHashSet<>();
+        final Set<String> clearCaches = new LinkedHashSet<>();
+        boolean cacheEvent = false;
+        boolean clearAll = false;
+        for (final RemoteTransactionEvent event : events) {
+            if (event.getTableIUDList() != null) {
+                event.getTableIUDList().forEach(table -> tables.merge(
+                    table.getTableName(),
+                    table,
+                    (a, b) -> new TransactionEventTable.TableIUD(
+                        a.getTableName(),
+                        a.isInsert() || b.isInsert(),
+                        a.isUpdate() || b.isUpdate(),
+                        a.isDelete() || b.isDelete()
+                    )
+                ));
+            }
+            for (final BeanPersistIds persistIds : CoalescingClusterBroadcast.persistIds(event)) {
+                final BeanDescriptor<?> descriptor = persistIds.getBeanDescriptor();
+                descriptors.putIfAbsent(descriptor.getFullName(), descriptor);
+                final Set<Object> beanIds = ids.computeIfAbsent(descriptor.getFullName(), k -> new LinkedHashSet<>());
+                if (persistIds.getIds() != null) {
+                    beanIds.addAll(persistIds.getIds());
+                }
+            }
+            if (event.getRemoteTableMod() != null) {
+                modifiedTables.addAll(event.getRemoteTableMod().getTables());
+            }
+            final RemoteCacheEvent remoteCacheEvent = event.getRemoteCacheEvent();
+            if (remoteCacheEvent != null) {
+                cacheEvent = true;
+                clearAll |= remoteCacheEvent.isClearAll();
+                if (remoteCacheEvent.getClearCaches() != null) {
+                    clearCaches.addAll(remoteCacheEvent.getClearCaches());
+                }
+            }
+        }
+        tables.values().forEach(merged::addTableIUD);
+        descriptors.forEach((name, descriptor) -> {
+            final BeanPersistIds persistIds = new BeanPersistIds(descriptor);
+            ids.get(name).forEach(id -> persistIds.addId(PersistRequest.Type.UPDATE, id));
+            merged.addBeanPersistIds(persistIds);
+        });
+        if (!modifiedTables.isEmpty()) {
+            merged.addRemoteTableMod(new RemoteTableMod(modifiedTables));
+        }
+        if (cacheEvent) {
+            merged.addRemoteCacheEvent(new RemoteCacheEvent(clearAll, new ArrayList<>(clearCaches)));
+        }
+        return merged;
+    }
+
+    /**
+     * Get the persisted ids of an event, the deletions by id included.
+     * Ebean does not expose the deletions by id of an event, they are read
+     * from its private field.
+     *
+     * @param event The event
+     * @return The persisted ids, by bean type
+     * @since 21.03.08
+     */
+    private static List<BeanPersistIds> persistIds(final RemoteTransactionEvent event) {
+        final List<BeanPersistIds> persistIds = new ArrayList<>(event.getBeanPersistList());
+        try {
+            final DeleteByIdMap deleteByIdMap = (DeleteByIdMap) DELETE_BY_ID_MAP.get(event);
+            if (deleteByIdMap != null) {
+                persistIds.addAll(deleteByIdMap.values());
+            }
+        } catch (final IllegalAccessException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return persistIds;
+    }
+
+    /**
+     * Send messages to a member. Messages which can't be delivered are
+     * dropped, the connection being opened again on the next flush.
+     *
+     * @param member   The member
+     * @param messages The messages to send
+     * @param sentAt   The sending time
+     * @since 21.03.08
+     */
+    private void send(final InetSocketAddress member, final List<byte[]> messages, final long sentAt) {
+        try {
+            DataOutputStream out = this.outgoing.get(member);
+            if (out == null) {
+                final Socket socket = new Socket();
+                socket.setTcpNoDelay(true);
+                socket.connect(member, CONNECT_TIMEOUT_MILLIS);
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                this.outgoing.put(member, out);
+            }
+            for (final byte[] message : messages) {
+                out.writeLong(sentAt);
+                out.writeInt(message.length);
+                out.write(message);
+                this.messagesSent.increment();
+                this.bytesSent.add(message.length);
+            }
+            out.flush();
+        } catch (final IOException ex) {
+            LOGGER.warn("Can't send {} cluster message(s) to {}", messages.size(), member, ex);
+            CoalescingClusterBroadcast.closeQuietly(this.outgoing.remove(member));
+        }
+    }
+
+    /**
+     * Read and apply the messages sent by a member.
+     *
+     * @param socket The connection of the member
+     * @since 21.03.08
+     */
+    private void receive(final Socket socket) {
+        this.incoming.add(socket);
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            while (this.running) {
+                final long sentAt = in.readLong();
+                final int length = in.readInt();
+                if (length < 0 || length > MAX_MESSAGE_SIZE) {
+                    throw new IOException("Invalid cluster message length " + length + " from " + socket.getRemoteSocketAddress());
+                }
+                final byte[] message = new byte[length];
+                in.readFully(message);
+                final long lag = Math.max(0, System.currentTimeMillis() - sentAt);
+                this.messagesReceived.increment();
+                this.bytesReceived.add(message.length);
+                this.lastLagMillis.set(lag);
+                this.maxLagMillis.accumulateAndGet(lag, Math::max);
+                try {
+                    this.reader.read(message).run();
+                } catch (final RuntimeException ex) {
+                    LOGGER.error("Can't apply cluster message", ex);
+                }
+            }
+        } catch (final EOFException | SocketException ignore) {
+            // Connection closed
+        } catch (final IOException ex) {
+            if (this.running) {
+                LOGGER.warn("Can't read cluster message", ex);
+            }
+        } finally {
+            this.incoming.remove(socket);
+            CoalescingClusterBroadcast.closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Close a resource, ignoring errors.
+     *
+     * @param closeable The resource to close, can be {@code null}
+     * @since 21.03.08
+     */
+    private static void closeQuietly(final Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (final IOException ignore) {
+                // Nothing to do
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+package play.db.ebean.orm.cluster;
+
+import io.ebean.config.ContainerConfig;
+import io.ebeaninternal.server.cluster.ClusterBroadcast;
+import io.ebeaninternal.server.cluster.ClusterBroadcastFactory;
+import io.ebeaninternal.server.cluster.ClusterManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Create the coalescing cluster transport from the container properties.
+ * This factory is registered as a service, it has to be the only cluster
+ * transport found by Ebean, the ebean-cluster module being used as a
+ * delegate when the coalescing is not enabled.
+ *
+ * @since 21.03.08
+ */
+public class CoalescingClusterBroadcastFactory implements ClusterBroadcastFactory {
+
+    /**
+     * Logger.
+     *
+     * @since 21.03.08
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(CoalescingClusterBroadcastFactory.class);
+
+    /**
+     * Property holding the address of the current node.
+     *
+     * @since 21.03.08
+     */
+    public static final String LOCAL_HOST_PORT = "ebean.cluster.localHostPort";
+
+    /**
+     * Property holding the comma separated addresses of all the members.
+     *
+     * @since 21.03.08
+     */
+    public static final String MEMBERS = "ebean.cluster.members";
+
+    /**
+     * Property holding the flush interval in milliseconds.
+     *
+     * @since 21.03.08
+     */
+    public static final String FLUSH_INTERVAL = "ebean.cluster.coalescing.flushInterval";
+
+    /**
+     * Property holding the max number of events merged in a single message.
+     *
+     * @since 21.03.08
+     */
+    public static final String MAX_BATCH_SIZE = "ebean.cluster.coalescing.maxBatchSize";
+
+    /**
+     * Property enabling the coalescing transport. When not enabled, the
+     * cluster transport is created by the other factory found on the
+     * classpath, usually the one of the ebean-cluster module.
+     *
+     * @since 21.03.08
+     */
+    public static final String ENABLED = "ebean.cluster.coalescing.enabled";
+
+    @Override
+    public ClusterBroadcast create(final ClusterManager manager, final ContainerConfig config) {
+        final Properties properties = config.getProperties();
+        if (!Boolean.parseBoolean(properties.getProperty(ENABLED, "false"))) {
+            final Optional<ClusterBroadcastFactory> delegate = CoalescingClusterBroadcastFactory.delegate();
+            if (!delegate.isPresent()) {
+                // Same as Ebean without any cluster transport
+                LOGGER.warn("No cluster transport found, add the ebean-cluster module or enable the coalescing");
+                return null;
+            }
+            return delegate.get().create(manager, config);
+        }
+        final String localHostPort = properties.getProperty(LOCAL_HOST_PORT);
+        if (localHostPort == null) {
+            throw new IllegalStateException("Property '" + LOCAL_HOST_PORT + "' is required by the cluster transport");
+        }
+        final List<InetSocketAddress> members = Arrays.stream(properties.getProperty(MEMBERS, "").split(","))
+            .map(String::trim)
+            .filter(member -> !member.isEmpty())
+            .map(CoalescingClusterBroadcastFactory::parseAddress)
+            .collect(Collectors.toList());
+        return new CoalescingClusterBroadcast(
+            manager,
+            CoalescingClusterBroadcastFactory.parseAddress(localHostPort),
+            members,
+            Long.parseLong(properties.getProperty(FLUSH_INTERVAL, "50")),
+            Integer.parseInt(properties.getProperty(MAX_BATCH_SIZE, "500"))
+        );
+    }
+
+    /**
+     * Find the other cluster transport available on the classpath.
+     *
+     * @return The cluster transport factory, if any
+     * @since 21.03.08
+     */
+    private static Optional<ClusterBroadcastFactory> delegate() {
+        for (final ClusterBroadcastFactory factory : ServiceLoader.load(ClusterBroadcastFactory.class)) {
+            if (!(factory instanceof CoalescingClusterBroadcastFactory)) {
+                return Optional.of(factory);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Parse an address formatted as {@code host:port}.
+     *
+     * @param hostPort The address to parse
+     * @return The address
+     * @since 21.03.08
+     */
+    static InetSocketAddress parseAddress(final String hostPort) {
+        final int idx = hostPort.lastIndexOf(':');
+        if (idx < 1) {
+            throw new IllegalArgumentException("Invalid cluster member address '" + hostPort + "', expected host:port");
+        }
+        return new InetSocketAddress(hostPort.substring(0, idx).trim(), Integer.parseInt(hostPort.substring(idx + 1).trim()));
+    }
+}
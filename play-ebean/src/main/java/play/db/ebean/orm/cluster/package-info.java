@@ -0,0 +1,12 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+
+/**
+ * Provides a cluster transport coalescing the L2 cache invalidation messages.
+ *
+ * @since 21.03.08
+ */
+package play.db.ebean.orm.cluster;
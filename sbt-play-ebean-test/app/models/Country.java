@@ -0,0 +1,20 @@
+package models;
+
+import io.ebean.Finder;
+import io.ebean.Model;
+import io.ebean.annotation.Cache;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+@Cache(enableQueryCache = true)
+@Entity
+public class Country extends Model {
+
+    public static Finder<String, Country> find = new Finder<>(Country.class);
+
+    @Id
+    public String code;
+
+    public String name;
+}
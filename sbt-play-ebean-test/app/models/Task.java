@@ -2,6 +2,7 @@ package models;
 
 import io.ebean.Finder;
 import io.ebean.Model;
+import io.ebean.annotation.Cache;
 import io.ebean.annotation.WhoCreated;
 import io.ebean.annotation.WhoModified;
 import play.data.format.Formats;
@@ -11,6 +12,7 @@ import javax.persistence.Entity;
 import javax.persistence.Id;
 import java.util.Date;
 
+@Cache
 @Entity
 public class Task extends Model {
 
@@ -0,0 +1,37 @@
+package models;
+
+import io.ebean.Finder;
+import io.ebean.Model;
+import io.ebean.annotation.WhenCreated;
+
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.Version;
+import java.time.Instant;
+
+@Entity
+public class Ticket extends Model {
+
+    public static Finder<Long, Ticket> find = new Finder<>(Ticket.class);
+
+    public enum Priority {
+        LOW,
+        HIGH
+    }
+
+    @Id
+    public Long id;
+
+    public String title;
+
+    @Enumerated(EnumType.STRING)
+    public Priority priority;
+
+    @Version
+    public Long version;
+
+    @WhenCreated
+    public Instant createdAt;
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+
+package ebean;
+
+import org.junit.Assert;
+import org.junit.Test;
+import play.Application;
+import play.db.ebean.dbmigration.MigrationStatus;
+import play.inject.guice.GuiceApplicationBuilder;
+import play.test.Helpers;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+
+/**
+ * The type Background migration test.
+ */
+public class BackgroundMigrationTest {
+
+    /**
+     * The application stop waits for the background migration to exit.
+     */
+    @Test(timeout = 60000)
+    public void stopWaitsForMigration() throws Exception {
+        final Path rootPath = Files.createTempDirectory("dbmigration");
+        final Path folder = rootPath.resolve("conf/dbmigration/default");
+        Files.createDirectories(folder);
+        Files.write(
+            folder.resolve("1.0__slow.sql"),
+            ("CREATE TABLE slow_migration AS SELECT COUNT(*) AS total FROM SYSTEM_RANGE(1, 2000000) a, SYSTEM_RANGE(1, 2) b;\n")
+                .getBytes(StandardCharsets.UTF_8)
+        );
+        try (final URLClassLoader classLoader = new URLClassLoader(
+            new URL[]{rootPath.resolve("conf").toUri().toURL()},
+            this.getClass().getClassLoader()
+        )) {
+            final Application app = new GuiceApplicationBuilder()
+                .in(rootPath.toFile())
+                .in(classLoader)
+                .configure("ebean.servers.default.enhancement", Collections.singletonList("models.*"))
+                .configure(new HashMap<>(Helpers.inMemoryDatabase()))
+                .configure("ebean.dbmigration.autoApply", true)
+                .configure("ebean.dbmigration.mode", "background")
+                .configure("ebean.dbmigration.stopTimeout", "20 seconds")
+                .build();
+            Helpers.start(app);
+            final MigrationStatus migrationStatus = app.injector().instanceOf(MigrationStatus.class);
+            try {
+                while (migrationStatus.getServer() == null) {
+                    Thread.sleep(10);
+                }
+                Assert.assertFalse(migrationStatus.isReady());
+            } finally {
+                Helpers.stop(app);
+            }
+            Assert.assertFalse(Thread.getAllStackTraces()
+                .keySet()
+                .stream()
+                .anyMatch(thread -> "ebean-dbmigration-background".equals(thread.getName())));
+            Assert.assertTrue(migrationStatus.isReady() || migrationStatus.getFailure() != null);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+
+package ebean;
+
+import com.typesafe.config.Config;
+import io.ebean.DB;
+import io.ebean.cache.ServerCache;
+import io.ebean.cache.ServerCacheConfig;
+import io.ebean.cache.ServerCacheOptions;
+import io.ebean.cache.ServerCacheStatistics;
+import io.ebean.cache.ServerCacheType;
+import io.ebean.config.DatabaseConfig;
+import io.ebeaninternal.server.cache.CachedBeanData;
+import models.Country;
+import org.junit.Assert;
+import org.junit.Test;
+import play.db.ebean.orm.EbeanServerExtraConfig;
+import play.db.ebean.orm.cache.CaffeineServerCachePlugin;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The type Caffeine server cache test.
+ */
+public class CaffeineServerCacheTest extends WithEbeanApplication {
+
+    @Override
+    protected void configure(final Map<String, Object> appConfig) {
+        appConfig.put("ebean.servers.default.cache.maxSize", 100);
+        appConfig.put("ebean.servers.default.cache.beans.\"models.Country\".maxSize", 2);
+        appConfig.put("ebean.servers.default.extra-config", Collections.singletonList(ForegroundL2Cache.class.getName()));
+    }
+
+    /**
+     * A query cache hit is invalidated by an insert in the table, and by
+     * an update query.
+     */
+    @Test
+    public void queryCacheInvalidatedOnInsert() {
+        this.country("fr", "France").save();
+        Assert.assertEquals(1, Country.find.query().setUseQueryCache(true).findList().size());
+        Assert.assertEquals(1, Country.find.query().setUseQueryCache(true).findList().size());
+        Assert.assertEquals(1, this.queryCacheStatistics().getHitCount());
+
+        this.country("de", "Germany").save();
+        Assert.assertEquals(2, Country.find.query().setUseQueryCache(true).findList().size());
+        Assert.assertEquals(2, Country.find.query().setUseQueryCache(true).findList().size());
+        Assert.assertEquals(2, this.queryCacheStatistics().getHitCount());
+
+        Assert.assertEquals(1, this.named("Germany"));
+        Assert.assertEquals(1, this.named("Germany"));
+        Assert.assertEquals(3, this.queryCacheStatistics().getHitCount());
+        DB.update(Country.class).set("name", "Deutschland").where().idEq("de").update();
+        Assert.assertEquals(0, this.named("Germany"));
+        Assert.assertEquals(3, this.queryCacheStatistics().getHitCount());
+    }
+
+    /**
+     * The bean cache is bounded by the size configured for the bean type.
+     */
+    @Test
+    public void perBeanSizing() {
+        final String[] codes = {"fr", "de", "it", "es", "pt"};
+        for (final String code : codes) {
+            this.country(code, code.toUpperCase()).save();
+        }
+        for (final String code : codes) {
+            Assert.assertEquals(code.toUpperCase(), Country.find.byId(code).name);
+        }
+
+        final ServerCacheStatistics statistics = DB.getDefault()
+            .getServerCacheManager()
+            .getBeanCache(Country.class)
+            .getStatistics(false);
+        Assert.assertEquals(2, statistics.getMaxSize());
+        Assert.assertEquals(2, statistics.getSize());
+        Assert.assertEquals(5, statistics.getPutCount());
+        Assert.assertEquals(3, statistics.getEvictCount());
+    }
+
+    /**
+     * The bean data kept in the compact binary form is read back as
+     * cached, and takes less heap than the plain bean data.
+     */
+    @Test
+    public void serializedHeapPerEntry() {
+        final int entries = 20000;
+        final ServerCache plain = this.beanCache(false);
+        final ServerCache serialized = this.beanCache(true);
+
+        final CachedBeanData expected = this.beanData(42);
+        serialized.put(42, expected);
+        final CachedBeanData actual = (CachedBeanData) serialized.get(42);
+        Assert.assertEquals(expected.getVersion(), actual.getVersion());
+        Assert.assertEquals(expected.getWhenCreated(), actual.getWhenCreated());
+        Assert.assertEquals(expected.getData(), actual.getData());
+        serialized.clear();
+
+        final long plainHeap = this.heapUsedBy(() -> {
+            for (int idx = 0; idx < entries; ++idx) {
+                plain.put(idx, this.beanData(idx));
+            }
+        });
+        final long serializedHeap = this.heapUsedBy(() -> {
+            for (int idx = 0; idx < entries; ++idx) {
+                serialized.put(idx, this.beanData(idx));
+            }
+        });
+        Assert.assertEquals(entries, plain.size());
+        Assert.assertEquals(entries, serialized.size());
+        Assert.assertTrue(
+            "Serialized " + serializedHeap / entries + " bytes per entry, plain " + plainHeap / entries,
+            serializedHeap < plainHeap * 0.6
+        );
+    }
+
+    /**
+     * Apply the L2 cache changes before the end of the commit, so they are
+     * visible to the next query.
+     */
+    public static class ForegroundL2Cache implements EbeanServerExtraConfig {
+
+        @Override
+        public void applyExtraConfiguration(final DatabaseConfig serverConfig, final Config playConfig) {
+            serverConfig.setNotifyL2CacheInForeground(true);
+        }
+    }
+
+    /**
+     * Count the countries with the given name, using the query cache.
+     *
+     * @param name The country name
+     * @return The number of countries
+     */
+    private int named(final String name) {
+        return Country.find.query().setUseQueryCache(true).where().eq("name", name).findList().size();
+    }
+
+    /**
+     * @return The statistics of the country query cache
+     */
+    private ServerCacheStatistics queryCacheStatistics() {
+        return DB.getDefault()
+            .getServerCacheManager()
+            .getQueryCache(Country.class)
+            .getStatistics(false);
+    }
+
+    /**
+     * Build a bean cache with the Caffeine plugin.
+     *
+     * @param serialized {@code true} to keep the cached beans in a compact binary form
+     * @return The bean cache
+     */
+    private ServerCache beanCache(final boolean serialized) {
+        final ServerCacheOptions options = new ServerCacheOptions();
+        options.setMaxSize(100000);
+        return new CaffeineServerCachePlugin(Collections.emptyMap(), Collections.emptyMap(), serialized)
+            .create(new DatabaseConfig(), null)
+            .createCache(new ServerCacheConfig(ServerCacheType.BEAN, "models.CountryB", "CountryB", options, null, null));
+    }
+
+    /**
+     * Build the cached data of a bean, as Ebean does for a country.
+     *
+     * @param id The bean identifier
+     * @return The cached data
+     */
+    private CachedBeanData beanData(final int id) {
+        final Map<String, Object> data = new HashMap<>();
+        data.put("code", String.format("c%05d", id));
+        data.put("name", "Country " + id);
+        data.put("population", String.valueOf(id * 1000L));
+        data.put("capital", "Capital " + id);
+        return new CachedBeanData(null, null, data, id);
+    }
+
+    /**
+     * Measure the heap retained by the objects created by an action.
+     *
+     * @param action The action to run
+     * @return The heap growth, in bytes
+     */
+    private long heapUsedBy(final Runnable action) {
+        final long before = this.usedHeap();
+        action.run();
+        return this.usedHeap() - before;
+    }
+
+    /**
+     * @return The heap in use after a garbage collection
+     */
+    private long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int idx = 0; idx < 3; ++idx) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Build a country.
+     *
+     * @param code The country code
+     * @param name The country name
+     * @return The country
+     */
+    private Country country(final String code, final String name) {
+        final Country country = new Country();
+        country.code = code;
+        country.name = name;
+        return country;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+
+package ebean;
+
+import io.ebean.DB;
+import io.ebean.EbeanServer;
+import io.ebean.cache.ServerCache;
+import io.ebeaninternal.api.SpiEbeanServer;
+import io.ebeaninternal.api.TransactionEventTable;
+import io.ebeaninternal.server.cluster.BinaryTransactionEventReader;
+import io.ebeaninternal.server.core.PersistRequest;
+import io.ebeaninternal.server.transaction.BeanPersistIds;
+import io.ebeaninternal.server.transaction.RemoteTransactionEvent;
+import models.Country;
+import org.junit.Assert;
+import org.junit.Test;
+import play.db.ebean.orm.cluster.ClusterStatistics;
+import play.db.ebean.orm.cluster.CoalescingClusterBroadcast;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The type Cluster coalescing test.
+ */
+public class ClusterCoalescingTest extends WithEbeanApplication {
+
+    /**
+     * Events broadcast by a node are coalesced and invalidate the cache
+     * of the other nodes.
+     */
+    @Test
+    public void coalesceOnLoopback() throws Exception {
+        final EbeanServer server = (EbeanServer) DB.getDefault();
+        final Country country = new Country();
+        country.code = "fr";
+        country.name = "France";
+        country.save();
+        Assert.assertEquals("France", Country.find.byId("fr").name);
+        final ServerCache beanCache = server.getServerCacheManager().getBeanCache(Country.class);
+        Assert.assertEquals(1, beanCache.size());
+
+        final List<InetSocketAddress> members = new ArrayList<>();
+        for (int idx = 0; idx < 3; ++idx) {
+            members.add(new InetSocketAddress("127.0.0.1", freePort()));
+        }
+        final List<CoalescingClusterBroadcast> nodes = new ArrayList<>();
+        for (final InetSocketAddress member : members) {
+            final CoalescingClusterBroadcast node = new CoalescingClusterBroadcast(name -> server, member, members, 100, 1000);
+            node.startup();
+            nodes.add(node);
+        }
+        try {
+            for (int idx = 0; idx < 200; ++idx) {
+                nodes.get(0).broadcast(this.countryUpdated(server, "fr"));
+            }
+
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (System.currentTimeMillis() < deadline
+                && (nodes.get(1).getStatistics().getMessagesReceived() == 0
+                || nodes.get(2).getStatistics().getMessagesReceived() == 0
+                || beanCache.size() > 0)) {
+                Thread.sleep(20);
+            }
+
+            final ClusterStatistics sender = nodes.get(0).getStatistics();
+            Assert.assertEquals(200, sender.getEventsBroadcast());
+            Assert.assertTrue(sender.getMessagesSent() < 200);
+            Assert.assertTrue(nodes.get(1).getStatistics().getMessagesReceived() > 0);
+            Assert.assertTrue(nodes.get(2).getStatistics().getMessagesReceived() > 0);
+            Assert.assertEquals(0, nodes.get(0).getStatistics().getMessagesReceived());
+            Assert.assertEquals(0, beanCache.size());
+        } finally {
+            nodes.forEach(CoalescingClusterBroadcast::shutdown);
+        }
+    }
+
+    /**
+     * The table modifications and the persisted ids are reported once
+     * in a merged message.
+     */
+    @Test
+    public void mergeTablesAndIds() throws Exception {
+        final EbeanServer server = (EbeanServer) DB.getDefault();
+        try (final ServerSocket member = new ServerSocket(0)) {
+            final InetSocketAddress local = new InetSocketAddress("127.0.0.1", freePort());
+            final InetSocketAddress remote = new InetSocketAddress("127.0.0.1", member.getLocalPort());
+            final CoalescingClusterBroadcast node = new CoalescingClusterBroadcast(
+                name -> server, local, Arrays.asList(local, remote), 60000, 3
+            );
+            node.startup();
+            try {
+                final RemoteTransactionEvent inserted = new RemoteTransactionEvent(server.getName());
+                inserted.addTableIUD(new TransactionEventTable.TableIUD("country", true, false, false));
+                node.broadcast(inserted);
+                node.broadcast(this.countryUpdated(server, "fr"));
+                node.broadcast(this.countryUpdated(server, "fr"));
+
+                member.setSoTimeout(5000);
+                try (final Socket socket = member.accept();
+                     final DataInputStream in = new DataInputStream(socket.getInputStream())) {
+                    in.readLong();
+                    final byte[] message = new byte[in.readInt()];
+                    in.readFully(message);
+                    final RemoteTransactionEvent merged = new BinaryTransactionEventReader(name -> server).read(message);
+
+                    Assert.assertEquals(1, merged.getTableIUDList().size());
+                    final TransactionEventTable.TableIUD table = merged.getTableIUDList().get(0);
+                    Assert.assertTrue(table.isInsert());
+                    Assert.assertTrue(table.isUpdate());
+                    Assert.assertFalse(table.isDelete());
+                    Assert.assertEquals(1, merged.getBeanPersistList().size());
+                    Assert.assertEquals(1, merged.getBeanPersistList().get(0).getIds().size());
+                }
+            } finally {
+                node.shutdown();
+            }
+        }
+    }
+
+    /**
+     * A message announcing an invalid length closes the connection.
+     */
+    @Test
+    public void rejectInvalidLength() throws Exception {
+        final EbeanServer server = (EbeanServer) DB.getDefault();
+        final InetSocketAddress local = new InetSocketAddress("127.0.0.1", freePort());
+        final CoalescingClusterBroadcast node = new CoalescingClusterBroadcast(
+            name -> server, local, Arrays.asList(local), 0, 1
+        );
+        node.startup();
+        try (final Socket socket = new Socket(local.getAddress(), local.getPort())) {
+            socket.setSoTimeout(5000);
+            final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(-1);
+            out.flush();
+            Assert.assertEquals(-1, socket.getInputStream().read());
+            Assert.assertEquals(0, node.getStatistics().getMessagesReceived());
+        } finally {
+            node.shutdown();
+        }
+    }
+
+    /**
+     * Build the event of a country update.
+     *
+     * @param server The server
+     * @param code   The updated country code
+     * @return The event
+     */
+    private RemoteTransactionEvent countryUpdated(final EbeanServer server, final String code) {
+        final RemoteTransactionEvent event = new RemoteTransactionEvent(server.getName());
+        event.addTableIUD(new TransactionEventTable.TableIUD("country", false, true, false));
+        final BeanPersistIds persistIds = new BeanPersistIds(((SpiEbeanServer) server).getBeanDescriptor(Country.class));
+        persistIds.addId(PersistRequest.Type.UPDATE, code);
+        event.addBeanPersistIds(persistIds);
+        return event;
+    }
+
+    /**
+     * Find a free port on the loopback interface.
+     *
+     * @return A free port
+     * @throws IOException If no port is available
+     */
+    private static int freePort() throws IOException {
+        try (final ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+
+package ebean;
+
+import io.ebean.DB;
+import io.ebean.Transaction;
+import models.Country;
+import org.h2.jdbc.JdbcConnection;
+import org.junit.Assert;
+import org.junit.Test;
+import play.db.ebean.orm.ConnectionMetrics;
+import play.db.ebean.orm.EbeanMetrics;
+
+import java.sql.Connection;
+import java.util.Map;
+
+/**
+ * The type Connection metrics test.
+ */
+public class ConnectionMetricsTest extends WithEbeanApplication {
+
+    @Override
+    protected void configure(final Map<String, Object> appConfig) {
+        appConfig.put("ebean.servers.default.settings.connectionMetrics", true);
+    }
+
+    /**
+     * Each connection retrieved by the server is counted when it is
+     * released, and the driver connection can still be unwrapped.
+     */
+    @Test
+    public void recordHeldConnections() throws Exception {
+        final ConnectionMetrics metrics = this.app.injector().instanceOf(EbeanMetrics.class).connectionMetrics("default");
+        Assert.assertNotNull(metrics);
+        metrics.reset();
+
+        Assert.assertEquals(0, Country.find.query().findCount());
+        try (final Transaction transaction = DB.beginTransaction()) {
+            final Connection connection = transaction.getConnection();
+            Assert.assertEquals(1, metrics.getActive());
+            Assert.assertTrue(connection.isWrapperFor(JdbcConnection.class));
+            Assert.assertNotNull(connection.unwrap(JdbcConnection.class));
+            Assert.assertFalse(connection.getAutoCommit());
+        }
+        Assert.assertEquals(0, metrics.getActive());
+        Assert.assertEquals(1, metrics.getPeakActive());
+        Assert.assertEquals(2, metrics.getHoldTime().getCount());
+        Assert.assertEquals(2, metrics.getAcquireTime().getCount());
+    }
+}
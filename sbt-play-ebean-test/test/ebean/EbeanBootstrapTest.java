@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+
+package ebean;
+
+import io.ebean.DB;
+import models.Task;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+
+/**
+ * The type Ebean bootstrap test.
+ */
+public class EbeanBootstrapTest extends WithEbeanApplication {
+
+    @Override
+    protected void configure(final Map<String, Object> appConfig) {
+        appConfig.put("ebean.bootstrap.parallel", true);
+        appConfig.put("ebean.bootstrap.poolSize", 1);
+    }
+
+    /**
+     * The servers are built concurrently, even on a single thread pool.
+     */
+    @Test(timeout = 60000)
+    public void parallelBootstrap() {
+        Assert.assertEquals("default", DB.getDefault().getName());
+        Assert.assertEquals("secondary", DB.byName("secondary").getName());
+
+        final Task task = new Task();
+        task.id = 1L;
+        task.name = "Bootstrap";
+        DB.byName("secondary").save(task);
+        Assert.assertEquals("Bootstrap", DB.byName("secondary").find(Task.class, 1L).name);
+        Assert.assertNull(Task.find.byId(1L));
+    }
+}
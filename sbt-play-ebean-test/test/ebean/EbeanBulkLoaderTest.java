@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+
+package ebean;
+
+import io.ebean.DB;
+import io.ebean.Database;
+import io.ebean.cache.ServerCache;
+import models.Task;
+import models.Ticket;
+import org.junit.Assert;
+import org.junit.Test;
+import play.db.ebean.orm.EbeanBulkLoader;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * The type Ebean bulk loader test.
+ */
+public class EbeanBulkLoaderTest extends WithEbeanApplication {
+
+    @Override
+    protected void configure(final Map<String, Object> appConfig) {
+        appConfig.put("ebean.servers.default.bulk.batchSize", 100);
+        appConfig.put("ebean.servers.default.bulk.chunkSize", 1000);
+    }
+
+    /**
+     * Insert in chunks, then update the existing rows with an upsert.
+     */
+    @Test
+    public void insertThenUpsert() {
+        final EbeanBulkLoader loader = this.app.injector().instanceOf(EbeanBulkLoader.class);
+        final Database database = DB.getDefault();
+        final List<EbeanBulkLoader.Report> progress = new ArrayList<>();
+
+        final EbeanBulkLoader.Report inserted = loader.load(
+            database,
+            IntStream.rangeClosed(1, 2500).mapToObj(i -> this.task(i, "Task " + i)),
+            loader.options("default").progress(progress::add)
+        );
+        Assert.assertEquals(2500, inserted.getRows());
+        Assert.assertEquals(3, inserted.getChunks());
+        Assert.assertEquals(3, progress.size());
+        Assert.assertTrue(inserted.isDone());
+        Assert.assertEquals(2500, Task.find.query().findCount());
+
+        final EbeanBulkLoader.Report upserted = loader.upsert(
+            database,
+            IntStream.rangeClosed(2001, 3000).mapToObj(i -> this.task(i, "Updated " + i)).iterator()
+        );
+        Assert.assertEquals(1000, upserted.getRows());
+        Assert.assertEquals(3000, Task.find.query().findCount());
+        Assert.assertEquals("Task 2000", Task.find.byId(2000L).name);
+        Assert.assertEquals("Updated 2001", Task.find.byId(2001L).name);
+        Assert.assertEquals("Updated 3000", Task.find.byId(3000L).name);
+    }
+
+    /**
+     * Load CSV rows with quoted fields.
+     */
+    @Test
+    public void loadCsv() {
+        final EbeanBulkLoader loader = this.app.injector().instanceOf(EbeanBulkLoader.class);
+        final String csv = "id;name\n1;Plain\n\n2;\"Quoted; \"\"with\"\" separator\"\r\n3;\"Multi\nline\"";
+
+        final EbeanBulkLoader.Report report = loader.loadCsv(
+            DB.getDefault(),
+            new StringReader(csv),
+            ';',
+            true,
+            row -> this.task(Integer.parseInt(row[0]), row[1]),
+            loader.options("default")
+        );
+        Assert.assertEquals(3, report.getRows());
+        Assert.assertEquals("Plain", Task.find.byId(1L).name);
+        Assert.assertEquals("Quoted; \"with\" separator", Task.find.byId(2L).name);
+        Assert.assertEquals("Multi\nline", Task.find.byId(3L).name);
+    }
+
+    /**
+     * The L2 cache of the table is invalidated once per load, not once
+     * per chunk.
+     */
+    @Test
+    public void invalidateCacheOnce() {
+        final EbeanBulkLoader loader = this.app.injector().instanceOf(EbeanBulkLoader.class);
+        this.task(1, "Cached").save();
+        Assert.assertEquals("Cached", Task.find.byId(1L).name);
+        final ServerCache beanCache = DB.getDefault().getServerCacheManager().getBeanCache(Task.class);
+        Assert.assertEquals(1, beanCache.size());
+        beanCache.getStatistics(true);
+
+        final EbeanBulkLoader.Report upserted = loader.upsert(
+            DB.getDefault(),
+            IntStream.rangeClosed(1, 2500).mapToObj(i -> this.task(i, "Updated " + i)).iterator()
+        );
+        Assert.assertEquals(3, upserted.getChunks());
+        Assert.assertEquals(1, beanCache.getStatistics(false).getClearCount());
+        Assert.assertEquals("Updated 1", Task.find.byId(1L).name);
+    }
+
+    /**
+     * The values are bound with the scalar types of Ebean, the version of
+     * the updated rows is incremented and their creation time is kept.
+     */
+    @Test
+    public void upsertVersionedBeans() {
+        final EbeanBulkLoader loader = this.app.injector().instanceOf(EbeanBulkLoader.class);
+        this.ticket(1, "Created", Ticket.Priority.HIGH).save();
+        final Ticket created = Ticket.find.byId(1L);
+        Assert.assertEquals(Long.valueOf(1), created.version);
+
+        loader.upsert(
+            DB.getDefault(),
+            Arrays.asList(this.ticket(1, "Updated", Ticket.Priority.LOW), this.ticket(2, "New", Ticket.Priority.HIGH))
+                .iterator()
+        );
+        final Ticket updated = Ticket.find.byId(1L);
+        Assert.assertEquals("Updated", updated.title);
+        Assert.assertEquals(Ticket.Priority.LOW, updated.priority);
+        Assert.assertEquals(Long.valueOf(2), updated.version);
+        Assert.assertEquals(created.createdAt, updated.createdAt);
+        final Ticket inserted = Ticket.find.byId(2L);
+        Assert.assertEquals(Ticket.Priority.HIGH, inserted.priority);
+        Assert.assertEquals(Long.valueOf(1), inserted.version);
+        Assert.assertNotNull(inserted.createdAt);
+        Assert.assertEquals(1, Ticket.find.query().where().eq("priority", Ticket.Priority.HIGH).findCount());
+    }
+
+    /**
+     * Build a task.
+     *
+     * @param id   The task id
+     * @param name The task name
+     * @return The task
+     */
+    private Task task(final long id, final String name) {
+        final Task task = new Task();
+        task.id = id;
+        task.name = name;
+        return task;
+    }
+
+    /**
+     * Build a ticket.
+     *
+     * @param id       The ticket id
+     * @param title    The ticket title
+     * @param priority The ticket priority
+     * @return The ticket
+     */
+    private Ticket ticket(final long id, final String title, final Ticket.Priority priority) {
+        final Ticket ticket = new Ticket();
+        ticket.id = id;
+        ticket.title = title;
+        ticket.priority = priority;
+        return ticket;
+    }
+}
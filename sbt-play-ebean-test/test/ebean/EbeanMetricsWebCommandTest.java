@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+
+package ebean;
+
+import org.junit.Assert;
+import org.junit.Test;
+import play.api.mvc.Result;
+import play.db.ebean.orm.EbeanMetricsWebCommand;
+import play.mvc.Http;
+
+/**
+ * The type Ebean metrics web command test.
+ */
+public class EbeanMetricsWebCommandTest extends WithEbeanApplication {
+
+    /**
+     * The limit of the slowest queries must be positive.
+     */
+    @Test
+    public void rejectInvalidLimit() {
+        Assert.assertEquals(Http.Status.BAD_REQUEST, this.status("/@ebean/metrics?limit=0"));
+        Assert.assertEquals(Http.Status.BAD_REQUEST, this.status("/@ebean/metrics?limit=-1"));
+        Assert.assertEquals(Http.Status.BAD_REQUEST, this.status("/@ebean/metrics?limit=abc"));
+        Assert.assertEquals(Http.Status.OK, this.status("/@ebean/metrics/default?limit=1"));
+        Assert.assertEquals(Http.Status.NOT_FOUND, this.status("/@ebean/metrics/unknown"));
+    }
+
+    /**
+     * Call the web command.
+     *
+     * @param uri The requested URI
+     * @return The response status
+     */
+    private int status(final String uri) {
+        final Result result = this.app.injector()
+            .instanceOf(EbeanMetricsWebCommand.class)
+            .handleWebCommand(new Http.RequestBuilder().uri(uri).build().asScala(), null, null)
+            .get();
+        return result.header().status();
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+
+package ebean;
+
+import akka.stream.Attributes;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.SinkQueueWithCancel;
+import akka.stream.javadsl.Source;
+import com.zaxxer.hikari.HikariDataSource;
+import io.ebean.Query;
+import io.ebeaninternal.api.SpiQuery;
+import models.Country;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import play.db.DBApi;
+import play.db.ebean.orm.EbeanExecutionContext;
+import play.db.ebean.orm.EbeanSource;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The type Ebean source test.
+ */
+public class EbeanSourceTest extends WithEbeanApplication {
+
+    /**
+     * Insert the streamed countries.
+     */
+    @Before
+    public void insertCountries() {
+        for (int idx = 0; idx < 50; ++idx) {
+            final Country country = new Country();
+            country.code = String.format("c%02d", idx);
+            country.name = "Country " + idx;
+            country.save();
+        }
+    }
+
+    /**
+     * The rows are read when the downstream asks for them, and the
+     * connection is released when the stream is cancelled.
+     */
+    @Test
+    public void readOnDemandAndReleaseOnCancel() throws Exception {
+        final EbeanExecutionContext executionContext = this.app.injector().instanceOf(EbeanExecutionContext.class);
+        final Query<Country> query = Country.find.query().orderBy("code");
+        final Source<Country, ?> source = EbeanSource.from(query, executionContext, 5, 10);
+        Assert.assertEquals(0, this.activeConnections());
+
+        final long tasksBefore = executionContext.getCompleted();
+        final SinkQueueWithCancel<Country> queue = source
+            .toMat(Sink.queue(), Keep.right())
+            .withAttributes(Attributes.inputBuffer(1, 1))
+            .run(this.app.injector().instanceOf(Materializer.class));
+        final Optional<Country> first = queue.pull().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        Assert.assertEquals("c00", first.map(country -> country.code).orElse(null));
+        Thread.sleep(200);
+        // Open the cursor and read a chunk or two, not the 5 chunks of the result
+        Assert.assertTrue(executionContext.getCompleted() - tasksBefore <= 3);
+        Assert.assertEquals(1, this.activeConnections());
+
+        queue.cancel();
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (this.activeConnections() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, this.activeConnections());
+    }
+
+    /**
+     * The query of the caller is not modified and the source can be
+     * materialized more than once.
+     */
+    @Test
+    public void leaveQueryUntouched() throws Exception {
+        final EbeanExecutionContext executionContext = this.app.injector().instanceOf(EbeanExecutionContext.class);
+        final Materializer materializer = this.app.injector().instanceOf(Materializer.class);
+        final Query<Country> query = Country.find.query().orderBy("code");
+        final Source<Country, ?> source = EbeanSource.from(query, executionContext, 5, 10);
+
+        for (int run = 0; run < 2; ++run) {
+            final List<Country> countries = source.runWith(Sink.seq(), materializer)
+                .toCompletableFuture()
+                .get(10, TimeUnit.SECONDS);
+            Assert.assertEquals(50, countries.size());
+            Assert.assertEquals("c49", countries.get(49).code);
+        }
+        Assert.assertEquals(0, ((SpiQuery<Country>) query).getBufferFetchSizeHint());
+        Assert.assertEquals(50, query.findCount());
+    }
+
+    /**
+     * @return The number of connections in use in the pool of the default database
+     * @throws SQLException If the pool can't be reached
+     */
+    private int activeConnections() throws SQLException {
+        return this.app.injector()
+            .instanceOf(DBApi.class)
+            .getDatabase("default")
+            .getDataSource()
+            .unwrap(HikariDataSource.class)
+            .getHikariPoolMXBean()
+            .getActiveConnections();
+    }
+}
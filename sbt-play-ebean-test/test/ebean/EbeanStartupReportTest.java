@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+
+package ebean;
+
+import org.junit.Assert;
+import org.junit.Test;
+import play.db.ebean.orm.EbeanStartupReport;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * The type Ebean startup report test.
+ */
+public class EbeanStartupReportTest extends WithEbeanApplication {
+
+    @Override
+    protected void configure(final Map<String, Object> appConfig) {
+        appConfig.put("ebean.dbmigration.enabled", false);
+    }
+
+    /**
+     * Without migrations, the startup is complete once the evolutions are
+     * generated, and the wall-clock time is reported apart from the phases.
+     */
+    @Test
+    public void completeWithoutMigrations() throws Exception {
+        final EbeanStartupReport startupReport = this.app.injector().instanceOf(EbeanStartupReport.class);
+        Assert.assertTrue(startupReport.isComplete());
+        final Duration elapsed = startupReport.getElapsed();
+        Assert.assertTrue(elapsed.compareTo(Duration.ZERO) > 0);
+        Assert.assertTrue(startupReport.getTiming("default", EbeanStartupReport.Phase.SERVER_CREATE).compareTo(elapsed) <= 0);
+        Thread.sleep(20);
+        Assert.assertEquals(elapsed, startupReport.getElapsed());
+        Assert.assertTrue(startupReport.toString().startsWith("ebean.startup elapsed_ms=" + elapsed.toMillis() + " total_ms="));
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+
+package ebean;
+
+import io.ebean.DB;
+import org.junit.Assert;
+import org.junit.Test;
+import play.api.Environment;
+import play.api.Mode;
+import play.db.ebean.dbmigration.EbeanToolbox;
+import play.db.ebean.dbmigration.MigrationLock;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * The type Ebean toolbox test.
+ */
+public class EbeanToolboxTest extends WithEbeanApplication {
+
+    /**
+     * Migration table, unique to each run as the in-memory database outlives the test.
+     */
+    private final String metaTable = "migration_" + Long.toHexString(System.nanoTime());
+
+    /**
+     * Migrations are recorded in the configured table, and the up to date
+     * state is persisted in the application directory until a migration
+     * resource changes.
+     */
+    @Test
+    public void checkStateWithCustomTable() throws Exception {
+        final Path rootPath = Files.createTempDirectory("dbmigration");
+        final Path folder = rootPath.resolve("conf/dbmigration/default");
+        Files.createDirectories(folder);
+        Files.write(folder.resolve("1.0__init.sql"), "CREATE TABLE toolbox_test (id INT);".getBytes(StandardCharsets.UTF_8));
+        final File states = rootPath.resolve("target/play-ebean-dbmigration").toFile();
+        try (final URLClassLoader classLoader = new URLClassLoader(
+            new URL[]{rootPath.resolve("conf").toUri().toURL()},
+            this.getClass().getClassLoader()
+        )) {
+            final Environment environment = new Environment(rootPath.toFile(), classLoader, Mode.Test$.MODULE$);
+
+            Assert.assertEquals(1, this.check(environment).size());
+            EbeanToolbox.migrateEbeanServer(null, "dbmigration", environment, "default", null, false, this.metaTable);
+            Assert.assertTrue(MigrationLock.isApplied(DB.getDefault().getPluginApi().getDataSource(), "1.0", this.metaTable));
+            Assert.assertFalse(MigrationLock.isApplied(DB.getDefault().getPluginApi().getDataSource(), "1.0", "db_migration"));
+
+            Assert.assertEquals(0, this.count(states));
+            Assert.assertTrue(this.check(environment).isEmpty());
+            Assert.assertEquals(1, this.count(states));
+            Assert.assertTrue(this.check(environment).isEmpty());
+
+            // A state that is not well-formed is ignored and replaced
+            final File state = Objects.requireNonNull(states.listFiles())[0];
+            final String recorded = new String(Files.readAllBytes(state.toPath()), StandardCharsets.UTF_8);
+            Files.write(state.toPath(), "tampered".getBytes(StandardCharsets.UTF_8));
+            Assert.assertTrue(this.check(environment).isEmpty());
+            Assert.assertEquals(recorded, new String(Files.readAllBytes(state.toPath()), StandardCharsets.UTF_8));
+
+            Files.write(folder.resolve("1.1__add.sql"), "ALTER TABLE toolbox_test ADD name VARCHAR(10);".getBytes(StandardCharsets.UTF_8));
+            Assert.assertEquals(1, this.check(environment).size());
+        }
+    }
+
+    /**
+     * Check the migration state of the default server.
+     *
+     * @param environment The environment holding the migration resources
+     * @return The migration resources to run
+     */
+    private scala.collection.Iterable<?> check(final Environment environment) {
+        return EbeanToolbox.checkEbeanServerState(null, "dbmigration", environment, "default", this.metaTable);
+    }
+
+    /**
+     * Count the recorded states.
+     *
+     * @param states The directory of the recorded states
+     * @return The number of recorded states
+     */
+    private int count(final File states) {
+        return states.isDirectory() ? Objects.requireNonNull(states.list()).length : 0;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+
+package ebean;
+
+import io.ebean.DB;
+import io.ebean.cache.ServerCacheStatistics;
+import models.Country;
+import org.junit.Assert;
+import org.junit.Test;
+import play.Application;
+import play.db.ebean.dbmigration.MigrationStatus;
+import play.inject.guice.GuiceApplicationBuilder;
+import play.test.Helpers;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The type Ebean warmup test.
+ */
+public class EbeanWarmupTest {
+
+    /**
+     * The L2 cache is preloaded with the rows inserted by the migrations,
+     * up to the size of the cache.
+     */
+    @Test(timeout = 60000)
+    public void preloadAfterMigrations() throws Exception {
+        this.withApplication("synchronous", app -> {
+            Assert.assertTrue(app.injector().instanceOf(MigrationStatus.class).isReady());
+            Assert.assertEquals(3, this.countryCacheStatistics().getSize());
+            Assert.assertEquals(3, this.countryCacheStatistics().getPutCount());
+        });
+    }
+
+    /**
+     * The L2 cache is preloaded once the background migrations are applied.
+     */
+    @Test(timeout = 60000)
+    public void preloadAfterBackgroundMigrations() throws Exception {
+        this.withApplication("background", app -> {
+            app.injector()
+                .instanceOf(MigrationStatus.class)
+                .whenFinished()
+                .toCompletableFuture()
+                .get(30, TimeUnit.SECONDS);
+            while (this.countryCacheStatistics().getSize() < 3) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(3, this.countryCacheStatistics().getPutCount());
+        });
+    }
+
+    /**
+     * Run a test against an application whose migrations create and fill
+     * the country table, and preloading the country L2 cache.
+     *
+     * @param mode The migration mode
+     * @param test The test to run
+     * @throws Exception If the test fails
+     */
+    private void withApplication(final String mode, final ApplicationTest test) throws Exception {
+        final Path rootPath = Files.createTempDirectory("warmup");
+        final Path folder = rootPath.resolve("conf/dbmigration/default");
+        Files.createDirectories(folder);
+        Files.write(
+            folder.resolve("1.0__countries.sql"),
+            ("CREATE TABLE \"Country\" (\"code\" VARCHAR(255) NOT NULL PRIMARY KEY, \"name\" VARCHAR(255));\n"
+                + "INSERT INTO \"Country\" (\"code\", \"name\") VALUES "
+                + "('de', 'Germany'), ('es', 'Spain'), ('fr', 'France'), ('it', 'Italy'), ('pt', 'Portugal');\n")
+                .getBytes(StandardCharsets.UTF_8)
+        );
+        try (final URLClassLoader classLoader = new URLClassLoader(
+            new URL[]{rootPath.resolve("conf").toUri().toURL()},
+            this.getClass().getClassLoader()
+        )) {
+            final Application app = new GuiceApplicationBuilder()
+                .in(rootPath.toFile())
+                .in(classLoader)
+                .configure("ebean.servers.default.enhancement", Collections.singletonList("models.*"))
+                .configure(new HashMap<>(Helpers.inMemoryDatabase()))
+                .configure("play.evolutions.enabled", false)
+                .configure("ebean.dbmigration.autoApply", true)
+                .configure("ebean.dbmigration.mode", mode)
+                .configure("ebean.servers.default.cache.beans.\"models.Country\".maxSize", 3)
+                .configure("ebean.servers.default.warmup.l2cache", Collections.singletonList("models.Country"))
+                .build();
+            Helpers.start(app);
+            try {
+                test.run(app);
+            } finally {
+                Helpers.stop(app);
+            }
+        }
+    }
+
+    /**
+     * @return The statistics of the country bean cache
+     */
+    private ServerCacheStatistics countryCacheStatistics() {
+        return DB.getDefault()
+            .getServerCacheManager()
+            .getBeanCache(Country.class)
+            .getStatistics(false);
+    }
+
+    /**
+     * A test run against an application.
+     */
+    @FunctionalInterface
+    private interface ApplicationTest {
+
+        /**
+         * @param app The started application
+         * @throws Exception If the test fails
+         */
+        void run(Application app) throws Exception;
+    }
+}
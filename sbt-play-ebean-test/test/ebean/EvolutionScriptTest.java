@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+
+package ebean;
+
+import io.ebean.DB;
+import org.junit.Assert;
+import org.junit.Test;
+import play.db.ebean.orm.EbeanDynamicEvolutions;
+import play.db.ebean.orm.OfflineDdlGenerator;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The type Evolution script test.
+ */
+public class EvolutionScriptTest extends WithEbeanApplication {
+
+    /**
+     * Generated scripts checked out with LF line endings are up to date.
+     */
+    @Test
+    public void ignoreLineEndings() throws Exception {
+        final File evolutions = this.app.environment().getFile("conf/evolutions/default/1.sql");
+        final String generated = new String(Files.readAllBytes(evolutions.toPath()), StandardCharsets.UTF_8);
+        Assert.assertTrue(generated.contains("\r\n"));
+        final String checkedOut = generated.replace("\r\n", "\n");
+        Files.write(evolutions.toPath(), checkedOut.getBytes(StandardCharsets.UTF_8));
+        try {
+            this.app.injector().instanceOf(EbeanDynamicEvolutions.class).create();
+            Assert.assertEquals(checkedOut, new String(Files.readAllBytes(evolutions.toPath()), StandardCharsets.UTF_8));
+
+            final Path baseDirectory = Files.createTempDirectory("evolutions");
+            for (final String server : new String[]{"default", "secondary"}) {
+                final Path script = baseDirectory.resolve("conf/evolutions/" + server + "/1.sql");
+                Files.createDirectories(script.getParent());
+                Files.write(script, new String(
+                    Files.readAllBytes(this.app.environment().getFile("conf/evolutions/" + server + "/1.sql").toPath()),
+                    StandardCharsets.UTF_8
+                ).replace("\r\n", "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            Assert.assertTrue(
+                new OfflineDdlGenerator(false, true).apply(this.getClass().getClassLoader(), baseDirectory.toFile()).isEmpty()
+            );
+        } finally {
+            Files.write(evolutions.toPath(), generated.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * The fingerprint recorded in the generated script is the one of the
+     * mapping of the server, and doesn't change from one computation to
+     * the next.
+     */
+    @Test
+    public void fingerprintOfMapping() throws Exception {
+        final String fingerprint = EbeanDynamicEvolutions.modelFingerprint(DB.getDefault());
+        Assert.assertEquals(64, fingerprint.length());
+        Assert.assertEquals(fingerprint, EbeanDynamicEvolutions.modelFingerprint(DB.getDefault()));
+        Assert.assertNotEquals(fingerprint, EbeanDynamicEvolutions.modelFingerprint(DB.byName("secondary")));
+
+        final File evolutions = this.app.environment().getFile("conf/evolutions/default/1.sql");
+        final String generated = new String(Files.readAllBytes(evolutions.toPath()), StandardCharsets.UTF_8);
+        Assert.assertTrue(generated.contains("# Model fingerprint: " + fingerprint + "\r\n"));
+    }
+}
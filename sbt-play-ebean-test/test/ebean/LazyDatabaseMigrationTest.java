@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+
+package ebean;
+
+import org.junit.Assert;
+import org.junit.Test;
+import play.Application;
+import play.inject.guice.GuiceApplicationBuilder;
+import play.test.Helpers;
+
+import java.util.Collections;
+import java.util.HashMap;
+
+/**
+ * The type Lazy database migration test.
+ */
+public class LazyDatabaseMigrationTest {
+
+    /**
+     * The application refuses to start when db-migration is enabled with
+     * a lazy server, before any server is created.
+     */
+    @Test
+    public void refusedWithMigration() {
+        final Application app;
+        try {
+            app = new GuiceApplicationBuilder()
+                .configure("ebean.servers.default.enhancement", Collections.singletonList("models.*"))
+                .configure(new HashMap<>(Helpers.inMemoryDatabase()))
+                .configure("ebean.servers.secondary.lazy", true)
+                .configure("ebean.dbmigration.enabled", true)
+                .build();
+        } catch (final RuntimeException ex) {
+            Throwable cause = ex;
+            while (cause.getCause() != null && !String.valueOf(cause.getMessage()).contains("is lazy")) {
+                cause = cause.getCause();
+            }
+            Assert.assertTrue(cause.getMessage(), cause.getMessage().contains("Ebean server 'secondary' is lazy"));
+            return;
+        }
+        Helpers.stop(app);
+        Assert.fail("The application should not start");
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+
+package ebean;
+
+import io.ebean.DB;
+import io.ebean.Database;
+import io.ebeaninternal.api.SpiEbeanServer;
+import io.ebeaninternal.dbmigration.model.CurrentModel;
+import models.Task;
+import org.junit.Assert;
+import org.junit.Test;
+import play.db.ebean.orm.EbeanBulkLoader;
+
+import java.util.Map;
+import java.util.stream.LongStream;
+
+/**
+ * The type Lazy database test.
+ */
+public class LazyDatabaseTest extends WithEbeanApplication {
+
+    @Override
+    protected void configure(final Map<String, Object> appConfig) {
+        appConfig.put("ebean.servers.secondary.lazy", true);
+        appConfig.put("ebean.dbmigration.enabled", false);
+    }
+
+    /**
+     * A lazy server is not built by the application startup, only on its
+     * first use.
+     */
+    @Test
+    public void createdOnFirstUse() {
+        final Database secondary = DB.byName("secondary");
+        Assert.assertEquals("secondary", secondary.getName());
+        Assert.assertTrue(secondary.toString().contains("not created"));
+
+        Assert.assertNotNull(secondary.getPluginApi());
+        Assert.assertFalse(secondary.toString().contains("not created"));
+        Assert.assertNotSame(secondary, DB.byName("secondary"));
+        Assert.assertEquals("default", DB.getDefault().getName());
+    }
+
+    /**
+     * Queries and bulk loads run through the proxy of a lazy server,
+     * including the code relying on the internal API.
+     */
+    @Test
+    public void queryAndBulkLoad() throws Exception {
+        final Database secondary = DB.byName("secondary");
+        Assert.assertTrue(secondary instanceof SpiEbeanServer);
+        final SpiEbeanServer server = (SpiEbeanServer) secondary.getPluginApi();
+        final CurrentModel currentModel = new CurrentModel(server);
+        secondary.script().runScript("drop", currentModel.getDropAllDdl(), false);
+        secondary.script().runScript("create", currentModel.getCreateDdl(), false);
+
+        Assert.assertEquals(0, secondary.find(Task.class).findCount());
+        try {
+            final EbeanBulkLoader loader = this.app.injector().instanceOf(EbeanBulkLoader.class);
+            final EbeanBulkLoader.Report report = loader.insert(
+                secondary,
+                LongStream.rangeClosed(1, 10).mapToObj(id -> {
+                    final Task task = new Task();
+                    task.id = id;
+                    task.name = "Lazy " + id;
+                    return task;
+                }).iterator()
+            );
+            Assert.assertEquals(10, report.getRows());
+            Assert.assertEquals(10, secondary.find(Task.class).findCount());
+            Assert.assertEquals("Lazy 3", secondary.find(Task.class, 3L).name);
+            Assert.assertEquals(0, Task.find.query().findCount());
+        } finally {
+            // The in-memory database outlives the application
+            secondary.find(Task.class).delete();
+        }
+    }
+}
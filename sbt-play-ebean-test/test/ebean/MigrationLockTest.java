@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+
+package ebean;
+
+import io.ebean.DB;
+import org.junit.Assert;
+import org.junit.Test;
+import play.db.ebean.dbmigration.MigrationLock;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * The type Migration lock test.
+ */
+public class MigrationLockTest extends WithEbeanApplication {
+
+    /**
+     * A single node acquires the lock, the others get it once released.
+     */
+    @Test
+    public void singleOwner() throws Exception {
+        final DataSource dataSource = DB.getDefault().getPluginApi().getDataSource();
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Boolean>> attempts = new ArrayList<>();
+            for (int idx = 0; idx < 4; ++idx) {
+                final String owner = "node-" + idx;
+                attempts.add(executor.submit(() -> MigrationLock.tryAcquire(dataSource, "default", owner, 60000)));
+            }
+            int acquired = 0;
+            String winner = null;
+            for (int idx = 0; idx < attempts.size(); ++idx) {
+                if (attempts.get(idx).get(10, TimeUnit.SECONDS)) {
+                    acquired += 1;
+                    winner = "node-" + idx;
+                }
+            }
+            Assert.assertEquals(1, acquired);
+
+            MigrationLock.release(dataSource, "default", "someone-else");
+            Assert.assertFalse(MigrationLock.tryAcquire(dataSource, "default", "late-node", 60000));
+            MigrationLock.release(dataSource, "default", winner);
+            Assert.assertTrue(MigrationLock.tryAcquire(dataSource, "default", "late-node", 60000));
+            MigrationLock.release(dataSource, "default", "late-node");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A lock older than its lease is taken over.
+     */
+    @Test
+    public void staleLock() throws Exception {
+        final DataSource dataSource = DB.getDefault().getPluginApi().getDataSource();
+        Assert.assertTrue(MigrationLock.tryAcquire(dataSource, "default", "crashed-node", 60000));
+        Thread.sleep(50);
+        Assert.assertFalse(MigrationLock.tryAcquire(dataSource, "default", "new-node", 60000));
+        Assert.assertTrue(MigrationLock.tryAcquire(dataSource, "default", "new-node", 10));
+        MigrationLock.release(dataSource, "default", "new-node");
+    }
+
+    /**
+     * A renewed lock is not taken over, and only its owner can renew it.
+     */
+    @Test
+    public void renewedLock() throws Exception {
+        final DataSource dataSource = DB.getDefault().getPluginApi().getDataSource();
+        Assert.assertTrue(MigrationLock.tryAcquire(dataSource, "default", "busy-node", 60000));
+        Thread.sleep(300);
+        Assert.assertTrue(MigrationLock.renew(dataSource, "default", "busy-node"));
+        Assert.assertFalse(MigrationLock.renew(dataSource, "default", "other-node"));
+        Assert.assertFalse(MigrationLock.tryAcquire(dataSource, "default", "new-node", 200));
+        MigrationLock.release(dataSource, "default", "busy-node");
+        Assert.assertFalse(MigrationLock.renew(dataSource, "default", "busy-node"));
+    }
+
+    /**
+     * Only a lock already held is reported as not acquired, the other
+     * errors are thrown.
+     */
+    @Test(expected = SQLException.class)
+    public void rethrowOtherErrors() throws Exception {
+        final DataSource dataSource = DB.getDefault().getPluginApi().getDataSource();
+        MigrationLock.tryAcquire(dataSource, String.join("", Collections.nCopies(300, "x")), "node", 60000);
+    }
+}
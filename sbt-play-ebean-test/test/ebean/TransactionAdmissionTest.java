@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+
+package ebean;
+
+import org.junit.Assert;
+import org.junit.Test;
+import play.db.ebean.orm.actions.TransactionAdmission;
+import play.db.ebean.orm.actions.Transactional;
+import play.db.ebean.orm.actions.TransactionalAction;
+import play.mvc.Action;
+import play.mvc.Http;
+import play.mvc.Result;
+import play.mvc.Results;
+
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * The type Transaction admission test.
+ */
+public class TransactionAdmissionTest extends WithEbeanApplication {
+
+    @Override
+    protected void configure(final Map<String, Object> appConfig) {
+        appConfig.put("ebean.servers.default.admission.maxInFlight", 1);
+        appConfig.put("ebean.servers.default.admission.maxQueued", 1);
+        appConfig.put("ebean.servers.default.admission.queueTimeout", "1 second");
+        appConfig.put("ebean.servers.default.admission.retryAfter", "2 seconds");
+    }
+
+    /**
+     * Actions beyond the in-flight limit wait in the queue without
+     * blocking the caller, then are admitted or rejected.
+     */
+    @Test
+    public void rejectWhenSaturated() throws Exception {
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final TransactionalAction blocking = this.action(new Action.Simple() {
+            @Override
+            public CompletionStage<Result> call(final Http.Request req) {
+                running.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (final InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                return CompletableFuture.completedFuture(Results.ok());
+            }
+        });
+        final TransactionalAction immediate = this.action(new Action.Simple() {
+            @Override
+            public CompletionStage<Result> call(final Http.Request req) {
+                return CompletableFuture.completedFuture(Results.ok());
+            }
+        });
+        final Http.Request request = new Http.RequestBuilder().build();
+        final TransactionAdmission.Limiter limiter = this.app.injector()
+            .instanceOf(TransactionAdmission.class)
+            .limiter("default");
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<Result> first = executor.submit(() -> blocking.call(request).toCompletableFuture().join());
+            Assert.assertTrue(running.await(10, TimeUnit.SECONDS));
+
+            // The queued action does not block the caller
+            final CompletableFuture<Result> timedOut = immediate.call(request).toCompletableFuture();
+            Assert.assertFalse(timedOut.isDone());
+            Assert.assertEquals(1, limiter.getQueued());
+
+            final Result rejected = immediate.call(request).toCompletableFuture().join();
+            Assert.assertEquals(Http.Status.SERVICE_UNAVAILABLE, rejected.status());
+            Assert.assertEquals("2", rejected.headers().get(Http.HeaderNames.RETRY_AFTER));
+            Assert.assertEquals(Http.Status.SERVICE_UNAVAILABLE, timedOut.get(10, TimeUnit.SECONDS).status());
+            Assert.assertEquals(0, limiter.getQueued());
+
+            // The release of the running action admits the queued one
+            final CompletableFuture<Result> queued = immediate.call(request).toCompletableFuture();
+            Assert.assertFalse(queued.isDone());
+            release.countDown();
+            Assert.assertEquals(Http.Status.OK, first.get(10, TimeUnit.SECONDS).status());
+            Assert.assertEquals(Http.Status.OK, queued.get(10, TimeUnit.SECONDS).status());
+
+            Assert.assertEquals(0, limiter.getInFlight());
+            Assert.assertEquals(0, limiter.getQueued());
+            Assert.assertEquals(1, limiter.getRejectedQueueFull());
+            Assert.assertEquals(1, limiter.getRejectedTimeout());
+            Assert.assertEquals(2, limiter.getAdmitted());
+            Assert.assertEquals(1, limiter.getAdmittedAfterWait());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Build a transactional action wrapping an action.
+     *
+     * @param delegate The wrapped action
+     * @return The transactional action
+     */
+    private TransactionalAction action(final Action<?> delegate) throws NoSuchMethodException {
+        final TransactionalAction action = this.app.injector().instanceOf(TransactionalAction.class);
+        action.configuration = TransactionAdmissionTest.class
+            .getDeclaredMethod("transactional")
+            .getAnnotation(Transactional.class);
+        action.delegate = delegate;
+        return action;
+    }
+
+    @Transactional
+    private void transactional() {
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2014 - 2021 PayinTech, SAS - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+
+package ebean;
+
+import play.Application;
+import play.test.Helpers;
+import play.test.WithApplication;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Base class of the tests running against an application with an
+ * in-memory default database.
+ */
+public abstract class WithEbeanApplication extends WithApplication {
+
+    @Override
+    protected Application provideApplication() {
+        final Map<String, Object> appConfig = new HashMap<>();
+        appConfig.put("ebean.servers.default.enhancement", Collections.singletonList("models.*"));
+        appConfig.putAll(Helpers.inMemoryDatabase());
+        this.configure(appConfig);
+        return Helpers.fakeApplication(appConfig);
+    }
+
+    /**
+     * Add the settings specific to a test to the application configuration.
+     *
+     * @param appConfig The application configuration
+     */
+    protected void configure(final Map<String, Object> appConfig) {
+    }
+}
@@ -1,7 +1,8 @@
 package play.ebean.sbt
 
 import io.ebean.enhance.Transformer
-import io.ebean.enhance.ant.OfflineFileTransform
+import io.ebean.enhance.common.InputStreamTransform
+import io.ebean.enhance.entity.MessageOutput
 
 import sbt._
 import sbt.Keys._
@@ -23,9 +24,13 @@ object PlayEbean extends AutoPlugin {
 
   object autoImport {
     val playEbeanModels = taskKey[Seq[String]]("The packages that should be searched for ebean models to enhance.")
+    val playEbeanModelsByServer = taskKey[Map[String, Seq[String]]]("The packages that should be searched for ebean models, by Ebean server.")
     val playEbeanVersion = settingKey[String]("The version of Play ebean that should be added to the library dependencies.")
     val playEbeanDebugLevel = settingKey[Int]("The debug level to use for the ebean agent. The higher, the more debug is output, with 9 being the most. -1 turns debugging off.")
     val playEbeanAgentArgs = taskKey[Map[String, String]]("The arguments to pass to the agent.")
+    val playEbeanMigrations = settingKey[Boolean]("Whether playEbeanGenerateDdl also generates the Ebean migration files.")
+    val playEbeanGenerateDdl = taskKey[Seq[File]]("Generates the evolution scripts, and optionally the Ebean migration files, from the compiled models.")
+    val playEbeanCheckDdl = taskKey[Unit]("Fails if the evolution scripts are not up to date with the compiled models.")
   }
 
   import autoImport._
@@ -38,12 +43,29 @@ object PlayEbean extends AutoPlugin {
   override def projectSettings = inConfig(Compile)(scopedSettings) ++ unscopedSettings
 
   def scopedSettings = Seq(
-    playEbeanModels := configuredEbeanModels.value,
-    manipulateBytecode := ebeanEnhance.value
+    playEbeanModelsByServer := configuredEbeanModels.value,
+    playEbeanModels := {
+      val models = playEbeanModelsByServer.value.values.flatten.toSeq.distinct
+      if (models.isEmpty) Seq("models.*") else models
+    },
+    manipulateBytecode := ebeanEnhance.value,
+    playEbeanGenerateDdl := {
+      val log = streams.value.log
+      val files = offlineDdl(checkOnly = false).value
+      files.foreach(file => log.info(s"Generated $file"))
+      files
+    },
+    playEbeanCheckDdl := {
+      val outdated = offlineDdl(checkOnly = true).value
+      if (outdated.nonEmpty) {
+        sys.error(s"Evolution scripts not up to date with the models, run playEbeanGenerateDdl: ${outdated.mkString(", ")}")
+      }
+    }
   )
 
   def unscopedSettings = Seq(
     playEbeanDebugLevel := -1,
+    playEbeanMigrations := false,
     playEbeanAgentArgs := Map("debug" -> playEbeanDebugLevel.value.toString),
     playEbeanVersion := readResourceProperty("play-ebean.version.properties", "play-ebean.version"),
     libraryDependencies += "com.payintech" %% "play-ebean" % playEbeanVersion.value
@@ -59,34 +81,35 @@ object PlayEbean extends AutoPlugin {
     val result = manipulateBytecode.value
     val agentArgs = playEbeanAgentArgs.value
     val analysis = result.analysis.asInstanceOf[sbt.internal.inc.Analysis]
+    val previousAnalysis = Option(previousCompile.value.analysis.orElse(null))
+      .map(_.asInstanceOf[sbt.internal.inc.Analysis])
 
     val agentArgsString = agentArgs map { case (key, value) => s"$key=$value" } mkString ";"
 
-    val originalContextClassLoader = Thread.currentThread.getContextClassLoader
-
-    try {
-
-      val classpath = deps.map(_.data.toURI.toURL).toArray :+ classes.toURI.toURL
-
-      val classLoader = new java.net.URLClassLoader(classpath, null)
-
-      Thread.currentThread.setContextClassLoader(classLoader)
-
-      val transformer = new Transformer(classLoader, agentArgsString)
+    // Only the class files written by the compiler since the last run need to be enhanced, the other ones still
+    // carry the stamp recorded once they were enhanced by the previous run
+    val modelDirectories = playEbeanModels.value.map(modelPath)
+    val candidates = analysis.relations.allProducts.toSeq.filter { classFile =>
+      IO.relativize(classes, classFile).exists(path => modelDirectories.exists(isModelClassFile(path, _)))
+    }.filter { classFile =>
+      previousAnalysis.map(_.stamps.product(classFile)).filterNot(_.writeStamp == notPresent) match {
+        case Some(previousStamp) => !sbt.internal.inc.Stamp.equivStamp.equiv(previousStamp, analysis.stamps.product(classFile))
+        case None => true
+      }
+    }
 
-      val fileTransform = new OfflineFileTransform(transformer, classLoader, classes.getAbsolutePath)
+    val log = streams.value.log
 
+    val enhanced = if (candidates.isEmpty) Seq.empty else {
+      val classLoader = new URLClassLoader(Array(classes.toURI.toURL), dependencyClassLoader(deps.map(_.data)))
       try {
-        fileTransform.process(playEbeanModels.value.mkString(","))
-      } catch {
-        case NonFatal(_) =>
+        enhanceClassFiles(classes, candidates, classLoader, agentArgsString, log)
+      } finally {
+        classLoader.close()
       }
-
-    } finally {
-      Thread.currentThread.setContextClassLoader(originalContextClassLoader)
     }
 
-    val allProducts = analysis.relations.allProducts
+    writeModelsIndex(classes, deps.map(_.data), playEbeanModelsByServer.value)
 
     /**
       * Updates stamp of product (class file) by preserving the type of a passed stamp.
@@ -97,10 +120,10 @@ object PlayEbean extends AutoPlugin {
       case _: LastModified => Stamper.forLastModified(classFile)
       case _: Hash => Stamper.forHash(classFile)
     }
-    // Since we may have modified some of the products of the incremental compiler, that is, the compiled template
-    // classes and compiled Java sources, we need to update their timestamps in the incremental compiler, otherwise
-    // the incremental compiler will see that they've changed since it last compiled them, and recompile them.
-    val updatedAnalysis = analysis.copy(stamps = allProducts.foldLeft(analysis.stamps) { (stamps, classFile) =>
+    // Since we have modified some of the products of the incremental compiler, we need to update their timestamps in
+    // the incremental compiler, otherwise the incremental compiler will see that they've changed since it last
+    // compiled them, and recompile them.
+    val updatedAnalysis = analysis.copy(stamps = enhanced.foldLeft(analysis.stamps) { (stamps, classFile) =>
       val existingStamp = stamps.product(classFile)
       if (existingStamp.writeStamp == notPresent) {
         throw new java.io.IOException("Tried to update a stamp for class file that is not recorded as "
@@ -112,46 +135,309 @@ object PlayEbean extends AutoPlugin {
     result.withAnalysis(updatedAnalysis)
   }
 
+  /**
+    * Dependency classloaders, keyed by the dependency files, their size and last modification time. Opening and
+    * indexing the jars of a large classpath is the costly part of the enhancement setup, so the classloader is reused
+    * across compiles as long as the dependency classpath does not change. Only the most recently used classloaders are
+    * kept, the evicted ones are closed to release their jars.
+    */
+  private val dependencyClassLoaderCache =
+    new java.util.LinkedHashMap[Seq[(File, Long, Long)], URLClassLoader](16, 0.75f, true) {
+      override def removeEldestEntry(eldest: java.util.Map.Entry[Seq[(File, Long, Long)], URLClassLoader]): Boolean = {
+        val evict = size > MaxDependencyClassLoaders
+        if (evict) {
+          eldest.getValue.close()
+        }
+        evict
+      }
+    }
+
+  /**
+    * Maximum number of cached dependency classloaders, one per project being usually enough.
+    */
+  private final val MaxDependencyClassLoaders = 8
+
+  private def dependencyClassLoader(deps: Seq[File]): URLClassLoader = dependencyClassLoaderCache.synchronized {
+    val key = deps.map(dep => (dep, dep.length, dep.lastModified))
+    Option(dependencyClassLoaderCache.get(key)).getOrElse {
+      val classLoader = new URLClassLoader(deps.map(_.toURI.toURL).toArray, null)
+      dependencyClassLoaderCache.put(key, classLoader)
+      classLoader
+    }
+  }
 
-  private def configuredEbeanModels = Def.task {
-    import collection.JavaConverters._
-    import java.util.{ Map => JMap, List => JList }
+  /**
+    * Replaces a class file with its enhanced bytes. The bytes are written to a temporary file moved over the class
+    * file, so that the other enhancement workers, reading the class files to resolve the class hierarchies, never see
+    * a partially written class.
+    */
+  private def writeClassFile(bytes: Array[Byte], classFile: File): Unit = {
+    import java.nio.file.{ AtomicMoveNotSupportedException, Files, StandardCopyOption }
 
-    // Creates a classloader with all the dependencies and all the resources, from there we can use the play ebean
-    // code to load the config as it would be loaded in production
-    def withClassLoader[T](block: ClassLoader => T): T = {
-      val classpath = unmanagedResourceDirectories.value.map(_.toURI.toURL) ++ dependencyClasspath.value.map(_.data.toURI.toURL)
-      val classLoader = new URLClassLoader(classpath.toArray, null)
+    val tempFile = java.io.File.createTempFile(classFile.getName, ".tmp", classFile.getParentFile).toPath
+    try {
+      Files.write(tempFile, bytes)
       try {
-        block(classLoader)
+        Files.move(tempFile, classFile.toPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
       } catch {
-        case e: Exception =>
-          // Since we're about to close the classloader, we can't risk any classloading that the thrown exception may
-          // do when we later interogate it, so instead we create a new exception here, with the old exceptions message
-          // and stack trace
-          def clone(t: Throwable): RuntimeException = {
-            val cloned = new RuntimeException(s"${t.getClass.getName}: ${t.getMessage}")
-            cloned.setStackTrace(t.getStackTrace)
-            if (t.getCause != null) {
-              cloned.initCause(clone(t.getCause))
+        case _: AtomicMoveNotSupportedException =>
+          Files.move(tempFile, classFile.toPath, StandardCopyOption.REPLACE_EXISTING)
+      }
+    } finally {
+      Files.deleteIfExists(tempFile)
+    }
+  }
+
+  /**
+    * Enhances the given class files in parallel and returns the ones that have been rewritten. Each worker uses its own
+    * transformer: the transformer caches the metadata of the classes it reads, this cache is not thread safe and
+    * would be stale on the next compile, while creating a transformer is cheap once the dependency classloader is
+    * cached. Failures are reported and fail the task, instead of leaving unenhanced models behind.
+    */
+  private def enhanceClassFiles(classes: File, classFiles: Seq[File], classLoader: ClassLoader, agentArgs: String,
+                                log: Logger): Seq[File] = {
+    case class Outcome(classFile: File, className: String, enhanced: Boolean, nanos: Long, error: Option[Throwable])
+
+    def enhanceAll(chunk: Seq[File]): Seq[Outcome] = {
+      val thread = Thread.currentThread
+      val originalContextClassLoader = thread.getContextClassLoader
+      thread.setContextClassLoader(classLoader)
+      try {
+        val transformer = new Transformer(classLoader, agentArgs)
+        transformer.getEnhanceContext.setThrowOnError(true)
+        transformer.setLogout(new MessageOutput {
+          override def println(message: String): Unit = log.info(message)
+        })
+        val inputStreamTransform = new InputStreamTransform(transformer, classLoader)
+        // The transformer returns null for the classes that are not entities, or that are already enhanced
+        chunk.map { classFile =>
+          val className = IO.relativize(classes, classFile).get.stripSuffix(".class").replace('\\', '/')
+          val start = System.nanoTime
+          try {
+            val bytes = inputStreamTransform.transform(className, classFile)
+            if (bytes != null) {
+              writeClassFile(bytes, classFile)
             }
-            cloned
+            Outcome(classFile, className, bytes != null, System.nanoTime - start, None)
+          } catch {
+            case NonFatal(e) => Outcome(classFile, className, enhanced = false, System.nanoTime - start, Some(e))
           }
-          throw clone(e)
+        }
       } finally {
-        classLoader.close()
+        thread.setContextClassLoader(originalContextClassLoader)
       }
     }
 
-    withClassLoader { classLoader =>
-      val configLoader = classLoader.loadClass("play.db.ebean.orm.ModelsConfigLoader").
-        asSubclass(classOf[java.util.function.Function[ClassLoader, JMap[String, JList[String]]]])
-      val config = configLoader.newInstance().apply(classLoader)
+    val start = System.nanoTime
+    val workers = math.max(1, math.min(java.lang.Runtime.getRuntime.availableProcessors, classFiles.size / MinClassFilesPerWorker))
+    val outcomes = if (workers == 1) {
+      enhanceAll(classFiles)
+    } else {
+      val executor = java.util.concurrent.Executors.newFixedThreadPool(workers)
+      try {
+        classFiles.grouped((classFiles.size + workers - 1) / workers).toList.map { chunk =>
+          executor.submit(new java.util.concurrent.Callable[Seq[Outcome]] {
+            override def call(): Seq[Outcome] = enhanceAll(chunk)
+          })
+        }.flatMap(_.get)
+      } finally {
+        executor.shutdown()
+      }
+    }
+
+    outcomes.foreach { outcome =>
+      val millis = outcome.nanos / 1000000.0
+      outcome.error match {
+        case Some(e) =>
+          log.error(f"Ebean enhancement of ${outcome.className} failed after $millis%.1f ms: $e")
+          log.trace(e)
+        case None if outcome.enhanced =>
+          log.debug(f"Ebean enhanced ${outcome.className} in $millis%.1f ms")
+        case None =>
+          log.debug(f"Ebean enhancement not required for ${outcome.className} ($millis%.1f ms)")
+      }
+    }
+    val enhanced = outcomes.filter(_.enhanced).map(_.classFile)
+    log.debug(f"Ebean enhanced ${enhanced.size} of ${classFiles.size} class files in ${(System.nanoTime - start) / 1000000.0}%.1f ms using $workers thread(s)")
+
+    val failures = outcomes.count(_.error.isDefined)
+    if (failures > 0) {
+      sys.error(s"Ebean enhancement failed for $failures class file(s)")
+    }
+    enhanced
+  }
+
+  /**
+    * Minimum number of class files handled by an enhancement worker, below which the cost of an additional thread and
+    * transformer is not worth it.
+    */
+  private final val MinClassFilesPerWorker = 8
+
+  /**
+    * Converts an enhancement pattern, such as `models.*`, `models.**` or `models.User`, to the path of the matching
+    * package or class, relative to the classes directory.
+    */
+  private def modelPath(pattern: String): String =
+    pattern.trim.stripSuffix("*").stripSuffix("*").stripSuffix(".").replace('.', '/')
+
+  /**
+    * Checks whether a class file, given by its path relative to the classes directory, belongs to a model package or
+    * is a model class (or one of its inner classes).
+    */
+  private def isModelClassFile(path: String, modelPath: String): Boolean = {
+    val normalized = path.replace('\\', '/')
+    normalized.endsWith(".class") && (
+      modelPath.isEmpty ||
+        normalized.startsWith(modelPath + "/") ||
+        normalized == modelPath + ".class" ||
+        normalized.startsWith(modelPath + "$"))
+  }
 
-      if (config.isEmpty) {
-        Seq("models.*")
+  /**
+    * Models configuration, by resource directories, with the fingerprint of the files it has been loaded from.
+    */
+  private val modelsConfigCache = new java.util.concurrent.ConcurrentHashMap[Seq[File], (Seq[Any], Map[String, Seq[String]])]()
+
+  /**
+    * Fingerprint of the files the configuration can be loaded from: the configuration files of the resource
+    * directories, including the files they include, the dependencies holding the `reference.conf` files, and the
+    * system properties overriding the configuration file.
+    */
+  private def modelsConfigFingerprint(resourceDirectories: Seq[File], deps: Seq[File]): Seq[Any] = {
+    val configFiles = resourceDirectories.flatMap { directory =>
+      (directory ** ("*.conf" || "*.json" || "*.properties")).get
+    } ++ sys.props.get("config.file").map(file)
+    val overrides = Seq("config.resource", "config.file", "config.url").map(sys.props.get)
+    overrides ++ (configFiles ++ deps).map(f => (f, f.length, f.lastModified))
+  }
+
+  private def configuredEbeanModels = Def.task {
+    import collection.JavaConverters._
+    import java.util.{ Map => JMap, List => JList }
+
+    val resourceDirectories = unmanagedResourceDirectories.value
+    val deps = dependencyClasspath.value.map(_.data)
+
+    // The configuration is only loaded again when one of the files it can be loaded from has changed
+    val fingerprint = modelsConfigFingerprint(resourceDirectories, deps)
+    val cached = modelsConfigCache.get(resourceDirectories)
+    if (cached != null && cached._1 == fingerprint) {
+      cached._2
+    } else {
+      // Creates a classloader with all the dependencies and all the resources
+      val models = withClassLoader(resourceDirectories ++ deps) { classLoader =>
+        val configLoader = classLoader.loadClass("play.db.ebean.orm.ModelsConfigLoader").
+          asSubclass(classOf[java.util.function.Function[ClassLoader, JMap[String, JList[String]]]])
+        val config = configLoader.newInstance().apply(classLoader)
+
+        config.asScala.map { case (server, models) => server -> models.asScala.map(_.trim).toSeq }.toMap
+      }
+      modelsConfigCache.put(resourceDirectories, fingerprint -> models)
+      models
+    }
+  }
+
+  /**
+    * Runs a block with a classloader over the given classpath, from there we can use the play ebean code to load the
+    * config as it would be loaded in production.
+    */
+  private def withClassLoader[T](classpath: Seq[File])(block: ClassLoader => T): T = {
+    val classLoader = new URLClassLoader(classpath.map(_.toURI.toURL).toArray, null)
+    try {
+      block(classLoader)
+    } catch {
+      case e: Exception =>
+        // Since we're about to close the classloader, we can't risk any classloading that the thrown exception may
+        // do when we later interogate it, so instead we create a new exception here, with the old exceptions message
+        // and stack trace
+        def clone(t: Throwable): RuntimeException = {
+          val cloned = new RuntimeException(s"${t.getClass.getName}: ${t.getMessage}")
+          cloned.setStackTrace(t.getStackTrace)
+          if (t.getCause != null) {
+            cloned.initCause(clone(t.getCause))
+          }
+          cloned
+        }
+        throw clone(e)
+    } finally {
+      classLoader.close()
+    }
+  }
+
+  /**
+    * Generates the evolution scripts, and the Ebean migration files if enabled, from the compiled and enhanced models,
+    * using the play ebean code in a classloader over the full classpath. In check mode, nothing is written and the
+    * scripts that are not up to date are returned.
+    */
+  private def offlineDdl(checkOnly: Boolean) = Def.task {
+    import collection.JavaConverters._
+    import java.util.{ List => JList }
+
+    val classpath = fullClasspath.value.map(_.data)
+    val base = baseDirectory.value
+    val migrations = playEbeanMigrations.value && !checkOnly
+
+    withClassLoader(classpath) { classLoader =>
+      val generator = classLoader.loadClass("play.db.ebean.orm.OfflineDdlGenerator")
+        .getConstructor(java.lang.Boolean.TYPE, java.lang.Boolean.TYPE)
+        .newInstance(Boolean.box(migrations), Boolean.box(checkOnly))
+        .asInstanceOf[java.util.function.BiFunction[ClassLoader, File, JList[File]]]
+      generator.apply(classLoader, base).asScala.toList
+    }
+  }
+
+  /**
+    * Classes contained by each dependency jar, keyed by jar file and last
+    * modification time, to avoid listing the same jars on every compile.
+    */
+  private val jarClassesCache = new java.util.concurrent.ConcurrentHashMap[(File, Long), Seq[String]]()
+
+  /**
+    * Writes, for each Ebean server, the index of the model classes matching the
+    * server enhancement patterns. The index is read at runtime by play-ebean to
+    * avoid scanning the classpath on application startup.
+    */
+  private def writeModelsIndex(classes: File, deps: Seq[File], modelsByServer: Map[String, Seq[String]]): Unit = {
+    def classNames(root: File): Seq[String] = {
+      if (root.isDirectory) {
+        (root ** "*.class").get.flatMap(f => IO.relativize(root, f)).map(toClassName)
+      } else if (root.isFile && root.getName.endsWith(".jar")) {
+        val key = (root, root.lastModified)
+        Option(jarClassesCache.get(key)).getOrElse {
+          val jar = new java.util.zip.ZipFile(root)
+          val names = try {
+            import collection.JavaConverters._
+            jar.entries.asScala.map(_.getName).filter(_.endsWith(".class")).map(toClassName).toVector
+          } finally {
+            jar.close()
+          }
+          jarClassesCache.put(key, names)
+          names
+        }
       } else {
-        config.asScala.flatMap(_._2.asScala).toSeq.distinct
+        Seq.empty
+      }
+    }
+
+    def toClassName(path: String): String = path.stripSuffix(".class").replace('/', '.').replace('\\', '.')
+
+    lazy val available = (classes +: deps).flatMap(classNames)
+      .filterNot(name => name.endsWith("package-info") || name.endsWith("module-info"))
+
+    modelsByServer.foreach { case (server, patterns) =>
+      val models = patterns.flatMap { pattern =>
+        if (pattern.endsWith(".*")) {
+          val prefix = pattern.stripSuffix("*")
+          available.filter(_.startsWith(prefix))
+        } else {
+          Seq(pattern)
+        }
+      }.distinct.sorted
+      val content = ("# Generated by sbt-play-ebean, do not edit" +: s"enhancement=${patterns.mkString(",")}" +: models)
+        .mkString("", "\n", "\n")
+      val index = classes / "play-ebean" / "models" / s"$server.idx"
+      if (!index.exists || IO.read(index) != content) {
+        IO.write(index, content)
       }
     }
   }